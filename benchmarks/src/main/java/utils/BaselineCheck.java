@@ -0,0 +1,177 @@
+package utils;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Compares a JMH JSON result file with the checked-in baseline. Allocation per operation ({@code
+ * gc.alloc.rate.norm}) is close to deterministic, so a benchmark that allocates more than the
+ * tolerance above its baseline fails the check. Timings depend on the machine and are only
+ * reported.
+ *
+ * <p>Usage: {@code java -cp benchmarks.jar utils.BaselineCheck <baseline.json> <result.json>
+ * [allocTolerance] [timeTolerance]}, where the tolerances are fractions (default 0.10 and 0.50).
+ * {@code BaselineCheck --trim <result.json> <baseline.json>} writes a new baseline with only the
+ * scores the check reads and the heap the snapshot benchmarks retain, leaving out the raw samples
+ * and the machine's JVM path.
+ */
+public final class BaselineCheck {
+  private static final String ALLOC = "gc.alloc.rate.norm";
+  private static final String RETAINED = "retainedBytes";
+  private static final String PRIMARY = "primaryMetric";
+  private static final String SECONDARY = "secondaryMetrics";
+  // Allocation measurements below this many bytes are noise from the profiler itself
+  private static final double ALLOC_SLACK_BYTES = 64;
+
+  private BaselineCheck() {}
+
+  /**
+   * Runs the comparison and exits with status 1 if any allocation regressed.
+   *
+   * @param args The baseline file, the result file and optionally the two tolerances.
+   * @throws IOException If a file cannot be read.
+   */
+  public static void main(String[] args) throws IOException {
+    if (args.length == 3 && args[0].equals("--trim")) {
+      trim(args[1], args[2]);
+      return;
+    }
+    if (args.length < 2) {
+      System.err.println(
+          "Usage: BaselineCheck <baseline.json> <result.json> [allocTolerance] [timeTolerance]\n"
+              + "       BaselineCheck --trim <result.json> <baseline.json>");
+      System.exit(2);
+    }
+    double allocTolerance = args.length > 2 ? Double.parseDouble(args[2]) : 0.10;
+    double timeTolerance = args.length > 3 ? Double.parseDouble(args[3]) : 0.50;
+    Map<String, JsonObject> baseline = read(args[0]);
+    Map<String, JsonObject> current = read(args[1]);
+
+    int regressions = 0;
+    for (Map.Entry<String, JsonObject> entry : new TreeMap<>(current).entrySet()) {
+      JsonObject before = baseline.get(entry.getKey());
+      if (before == null) {
+        System.out.printf("NEW   %s%n", entry.getKey());
+        continue;
+      }
+      JsonObject after = entry.getValue();
+      String unit = after.getAsJsonObject(PRIMARY).get("scoreUnit").getAsString();
+      double time = change(score(before, null), score(after, null));
+      double beforeAlloc = score(before, ALLOC);
+      double afterAlloc = score(after, ALLOC);
+      boolean allocRegressed =
+          afterAlloc - beforeAlloc > Math.max(ALLOC_SLACK_BYTES, beforeAlloc * allocTolerance);
+      String status = allocRegressed ? "FAIL " : time > timeTolerance ? "SLOW " : "ok   ";
+      System.out.printf(
+          "%s %-60s %12.3f -> %12.3f %-6s (%+.0f%%)  %10.0f -> %10.0f B/op%n",
+          status,
+          entry.getKey(),
+          score(before, null),
+          score(after, null),
+          unit,
+          time * 100,
+          beforeAlloc,
+          afterAlloc);
+      if (allocRegressed) {
+        regressions++;
+      }
+    }
+    if (regressions > 0) {
+      System.out.printf("%d benchmark(s) allocate more than the baseline%n", regressions);
+      System.exit(1);
+    }
+  }
+
+  /**
+   * Writes a baseline holding only the identity, mode and scores of each benchmark.
+   *
+   * @param resultFile The JMH JSON result file.
+   * @param baselineFile The baseline file to write.
+   * @throws IOException If a file cannot be read or written.
+   */
+  private static void trim(String resultFile, String baselineFile) throws IOException {
+    JsonArray trimmed = new JsonArray();
+    for (JsonObject result : read(resultFile).values()) {
+      JsonObject entry = new JsonObject();
+      entry.add("benchmark", result.get("benchmark"));
+      entry.add("mode", result.get("mode"));
+      if (result.has("params")) {
+        entry.add("params", result.get("params"));
+      }
+      entry.add(PRIMARY, metric(result.getAsJsonObject(PRIMARY)));
+      JsonObject secondary = result.getAsJsonObject(SECONDARY);
+      JsonObject metrics = new JsonObject();
+      for (String name : new String[] {ALLOC, RETAINED}) {
+        if (secondary != null && secondary.has(name)) {
+          metrics.add(name, metric(secondary.getAsJsonObject(name)));
+        }
+      }
+      if (metrics.size() > 0) {
+        entry.add(SECONDARY, metrics);
+      }
+      trimmed.add(entry);
+    }
+    try (Writer writer = Files.newBufferedWriter(Paths.get(baselineFile), StandardCharsets.UTF_8)) {
+      new GsonBuilder().setPrettyPrinting().create().toJson(trimmed, writer);
+      writer.write(System.lineSeparator());
+    }
+    System.out.printf("Wrote %d benchmark(s) to %s%n", trimmed.size(), baselineFile);
+  }
+
+  private static JsonObject metric(JsonObject metric) {
+    JsonObject trimmed = new JsonObject();
+    for (String field : new String[] {"score", "scoreError", "scoreUnit"}) {
+      if (metric.has(field)) {
+        trimmed.add(field, metric.get(field));
+      }
+    }
+    return trimmed;
+  }
+
+  private static Map<String, JsonObject> read(String file) throws IOException {
+    Map<String, JsonObject> results = new LinkedHashMap<>();
+    try (Reader reader = Files.newBufferedReader(Paths.get(file), StandardCharsets.UTF_8)) {
+      for (JsonElement element : JsonParser.parseReader(reader).getAsJsonArray()) {
+        JsonObject result = element.getAsJsonObject();
+        StringBuilder key = new StringBuilder(result.get("benchmark").getAsString());
+        JsonObject params = result.getAsJsonObject("params");
+        if (params != null) {
+          new TreeMap<>(params.asMap())
+              .forEach(
+                  (name, value) ->
+                      key.append(' ').append(name).append('=').append(value.getAsString()));
+        }
+        results.put(key.toString(), result);
+      }
+    }
+    return results;
+  }
+
+  private static double score(JsonObject result, String secondary) {
+    JsonObject metric =
+        secondary == null
+            ? result.getAsJsonObject(PRIMARY)
+            : result.getAsJsonObject(SECONDARY).getAsJsonObject(secondary);
+    if (metric == null) {
+      return 0;
+    }
+    double score = metric.get("score").getAsDouble();
+    return Double.isNaN(score) ? 0 : score;
+  }
+
+  private static double change(double before, double after) {
+    return before > 0 ? (after - before) / before : 0;
+  }
+}
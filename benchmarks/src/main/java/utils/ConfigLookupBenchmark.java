@@ -0,0 +1,106 @@
+package utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Config lookups as done on every session and wait: through the resolved {@link ConfigSnapshot},
+ * and through the JSON tree as the original ConfigReader did, resolving environment variables and
+ * re-parsing string values on every call. The legacy methods are kept here only for comparison.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class ConfigLookupBenchmark {
+  private ConfigReader reader;
+  private JsonObject tree;
+
+  /**
+   * Loads config.json both ways.
+   *
+   * @throws IOException If config.json cannot be read.
+   */
+  @Setup
+  public void load() throws IOException {
+    reader = ConfigReader.getInstance();
+    try (Reader file =
+        Files.newBufferedReader(
+            Paths.get(System.getProperty("configFile", "config/config.json")),
+            StandardCharsets.UTF_8)) {
+      tree = JsonParser.parseReader(file).getAsJsonObject();
+    }
+  }
+
+  @Benchmark
+  public int implicitWait() {
+    return reader.getImplicitWait();
+  }
+
+  @Benchmark
+  public int legacyImplicitWait() {
+    return legacyCapability("testSettings", "implicitWait").getAsInt();
+  }
+
+  @Benchmark
+  public String appiumUrl() {
+    return reader.getAppiumUrl();
+  }
+
+  @Benchmark
+  public String legacyAppiumUrl() {
+    JsonObject appium = tree.getAsJsonObject("appiumServer");
+    String host = ConfigSection.resolveEnvironmentVariable(appium.get("host").getAsString());
+    String port = ConfigSection.resolveEnvironmentVariable(appium.get("port").getAsString());
+    return String.format("http://%s:%s", host, port);
+  }
+
+  @Benchmark
+  public String platformCapability() {
+    return reader.getPlatformCapability("android", "platformVersion");
+  }
+
+  @Benchmark
+  public String legacyPlatformCapability() {
+    return legacyCapability("android", "platformVersion").getAsString();
+  }
+
+  @Benchmark
+  public double sectionLookup() {
+    return reader.getSnapshot().getSection("polling").getDouble("multiplier", 1.5);
+  }
+
+  private JsonElement legacyCapability(String section, String key) {
+    JsonElement element = tree.getAsJsonObject(section).get(key);
+    if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isString()) {
+      String resolved = ConfigSection.resolveEnvironmentVariable(element.getAsString());
+      try {
+        return JsonParser.parseString(resolved);
+      } catch (JsonSyntaxException e) {
+        return new JsonPrimitive(resolved);
+      }
+    }
+    return element;
+  }
+}
@@ -0,0 +1,57 @@
+package utils;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.interactions.Sequence;
+
+/**
+ * Building W3C action sequences for gestures, on its own and as part of a full {@link
+ * GestureHelper} swipe sent to a {@link StubSession}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class GestureBenchmark {
+  private static final Duration STEP = Duration.ofMillis(300);
+  private static final Point CENTER = new Point(540, 960);
+  private static final Point TOP = new Point(540, 400);
+
+  @Benchmark
+  public List<Sequence> buildChain(StubSession session) {
+    return chain(session).build();
+  }
+
+  @Benchmark
+  public List<Sequence> buildPinch(StubSession session) {
+    return GestureChain.on(session.getDriver()).pinch(CENTER, 400, 100, STEP).build();
+  }
+
+  @Benchmark
+  public String toJson(StubSession session) {
+    return chain(session).toJson();
+  }
+
+  @Benchmark
+  public void swipeUp(StubSession session) {
+    GestureHelper.swipeUp(session.getDriver());
+  }
+
+  private static GestureChain chain(StubSession session) {
+    return GestureChain.on(session.getDriver())
+        .tap(CENTER)
+        .swipe(CENTER, TOP, STEP)
+        .pause(STEP)
+        .longPress(TOP, STEP);
+  }
+}
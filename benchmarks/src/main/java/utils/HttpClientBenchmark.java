@@ -0,0 +1,72 @@
+package utils;
+
+import io.appium.java_client.AppiumDriver;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.remote.http.HttpClient;
+
+/**
+ * Per-command and per-session overhead of the HTTP transport, with the {@link
+ * SharedHttpClientFactory} used by {@link DriverManager} and with Selenium's default factory, which
+ * builds a new client for every session.
+ *
+ * <p>On JDK 17 a discarded client keeps its connection open until it is garbage collected, so the
+ * default factory leaves hundreds of idle connections on the stub server between collections. The
+ * forks raise the server's idle connection limit, which otherwise makes it close connections that
+ * are still in use.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(value = 3, jvmArgsAppend = "-Dsun.net.httpserver.maxIdleConnections=10000")
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class HttpClientBenchmark {
+  @Param({"shared", "default"})
+  public String client;
+
+  private HttpClient.Factory factory;
+  private AppiumDriver driver;
+
+  /**
+   * Opens a session with the client under test, which the stub session quits at the end of the
+   * trial.
+   *
+   * @param session The stub server.
+   */
+  @Setup
+  public void setUp(StubSession session) {
+    factory =
+        "shared".equals(client)
+            ? SharedHttpClientFactory.getInstance()
+            : HttpClient.Factory.createDefault();
+    driver = session.openTrialSession(factory);
+  }
+
+  @Benchmark
+  public WebElement findElement() {
+    return driver.findElement(By.id("title"));
+  }
+
+  @Benchmark
+  public String getText() {
+    return driver.findElement(By.id("title")).getText();
+  }
+
+  @Benchmark
+  public void newSession(StubSession session) {
+    session.openSession(factory).quit();
+  }
+}
@@ -0,0 +1,103 @@
+package utils;
+
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * What a test thread pays for reporting: queuing result records for the {@link ResultsSink} writer
+ * thread, and recording command latencies in {@link LatencyHistogram}s directly and through {@link
+ * CommandMetrics}, which is on the path of every command.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class ReportingBenchmark {
+  private static final Path SCREENSHOT = Paths.get("reports/screenshots/objects/0a1b2c.png");
+
+  private Path file;
+  private ResultsSink sink;
+  private LatencyHistogram histogram;
+  private CommandMetrics.Target metrics;
+  private long nanos;
+
+  /**
+   * Creates a sink writing to a temporary file and empty histograms.
+   *
+   * @throws IOException If the temporary file cannot be created.
+   */
+  @Setup
+  public void setUp() throws IOException {
+    file = Files.createTempFile("results", ".jsonl");
+    sink = new ResultsSink(file);
+    histogram = new LatencyHistogram();
+    metrics = new CommandMetrics(null).target("android", "bench");
+  }
+
+  /** Lets the writer catch up, so the queue does not grow from one iteration to the next. */
+  @TearDown(Level.Iteration)
+  public void drain() {
+    sink.drain(Duration.ofSeconds(30));
+  }
+
+  /**
+   * Deletes the temporary results file.
+   *
+   * @throws IOException If the file cannot be deleted.
+   */
+  @TearDown
+  public void tearDown() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Benchmark
+  public void emitScreenshot() {
+    sink.screenshot("tests.LoginTest.testLogin", SCREENSHOT);
+  }
+
+  @Benchmark
+  public void emitTestRecord() {
+    JsonObject record = new JsonObject();
+    record.addProperty("event", "end");
+    record.addProperty("test", "tests.LoginTest.testLogin");
+    record.addProperty("status", "PASS");
+    record.addProperty("durationMs", 1234);
+    record.addProperty("device", "Pixel 7");
+    sink.emit(record);
+  }
+
+  @Benchmark
+  public void histogramRecord() {
+    histogram.record(nextLatency());
+  }
+
+  @Benchmark
+  public void metricsRecord() {
+    metrics.record("findElement", nextLatency());
+  }
+
+  /** Latencies between 0.1 and 34 ms, so the records spread over many buckets. */
+  private long nextLatency() {
+    nanos = (nanos + 104_729) & ((1 << 25) - 1);
+    return 100_000 + nanos;
+  }
+}
@@ -0,0 +1,199 @@
+package utils;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+
+/**
+ * Evaluating locators against page sources of different sizes: the first query on a new {@link
+ * PageSnapshot}, a memoized repeat, a streaming find that stops at the first match, and the
+ * fallback XPath that needs a DOM. The largest hierarchy has 10k elements with the attributes
+ * UiAutomator2 reports, a page source of several MB.
+ *
+ * <p>The {@code retained*} benchmarks report, as {@code retainedBytes}, the heap per snapshot still
+ * in use after a full GC while snapshots are being queried: the source bytes and the matches when
+ * the query is streamed, and the source bytes plus the DOM when it falls back to XPath.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class SnapshotBenchmark {
+  private static final By LAST_ITEM = By.id("item");
+  private static final By DOM_XPATH = By.xpath("//android.widget.TextView[last()]");
+
+  /** The number of elements in the hierarchy; each list row is a layout and a text view. */
+  @Param({"100", "1000", "10000"})
+  public int nodes;
+
+  private String source;
+  private byte[] bytes;
+  private PageSnapshot snapshot;
+  private HierarchyReader.ElementMatcher firstMatcher;
+
+  /** Generates a list screen with the given number of elements and queries it once. */
+  @Setup
+  public void setUp() {
+    StringBuilder xml =
+        new StringBuilder(
+            "<hierarchy><android.widget.FrameLayout bounds=\"[0,0][1080,1920]\">"
+                + "<android.widget.ListView resource-id=\"com.example.app:id/list\""
+                + " bounds=\"[0,0][1080,1920]\">");
+    int rows = Math.max(1, nodes / 2);
+    for (int i = 0; i < rows; i++) {
+      String bounds = "[0," + i * 100 + "][1080," + (i * 100 + 100) + "]";
+      xml.append("<android.widget.LinearLayout")
+          .append(attributes(2 * i, "android.widget.LinearLayout", "", "", bounds))
+          .append("><android.widget.TextView")
+          .append(
+              attributes(
+                  2 * i + 1,
+                  "android.widget.TextView",
+                  "com.example.app:id/" + (i == rows - 1 ? "item" : "row"),
+                  "Row " + i,
+                  bounds))
+          .append("/></android.widget.LinearLayout>");
+    }
+    source =
+        xml.append("</android.widget.ListView></android.widget.FrameLayout></hierarchy>")
+            .toString();
+    bytes = source.getBytes(StandardCharsets.UTF_8);
+    snapshot = PageSnapshot.parse(source);
+    snapshot.find(LAST_ITEM);
+    firstMatcher = HierarchyReader.matcherFor(By.id("row"));
+  }
+
+  @Benchmark
+  public List<SnapshotNode> firstQuery() {
+    return PageSnapshot.parse(source).find(LAST_ITEM);
+  }
+
+  @Benchmark
+  public List<SnapshotNode> memoizedQuery() {
+    return snapshot.find(LAST_ITEM);
+  }
+
+  @Benchmark
+  public List<SnapshotNode> streamFirstMatch() {
+    return HierarchyReader.find(bytes, firstMatcher, 1);
+  }
+
+  @Benchmark
+  public int count() {
+    return HierarchyReader.count(bytes);
+  }
+
+  @Benchmark
+  public List<SnapshotNode> domXPath() {
+    return PageSnapshot.parse(source).find(DOM_XPATH);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @Warmup(iterations = 1)
+  @Measurement(iterations = 1)
+  public Object[] retainedStreaming(RetainedHeap heap) {
+    long before = RetainedHeap.usedAfterGc();
+    Object[] held = new Object[2 * heap.snapshots];
+    for (int i = 0; i < heap.snapshots; i++) {
+      PageSnapshot streamed = PageSnapshot.parse(source);
+      held[2 * i] = streamed;
+      held[2 * i + 1] = streamed.find(LAST_ITEM);
+    }
+    heap.retainedBytes = (RetainedHeap.usedAfterGc() - before) / heap.snapshots;
+    return held;
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @Warmup(iterations = 1)
+  @Measurement(iterations = 1)
+  public Object[] retainedDom(RetainedHeap heap) {
+    long before = RetainedHeap.usedAfterGc();
+    Object[] held = new Object[2 * heap.snapshots];
+    for (int i = 0; i < heap.snapshots; i++) {
+      PageSnapshot parsed = PageSnapshot.parse(source);
+      held[2 * i] = parsed;
+      held[2 * i + 1] = parsed.document();
+    }
+    heap.retainedBytes = (RetainedHeap.usedAfterGc() - before) / heap.snapshots;
+    return held;
+  }
+
+  private static String attributes(
+      int index, String className, String resourceId, String text, String bounds) {
+    boolean clickable = !resourceId.isEmpty();
+    return " index=\""
+        + index
+        + "\" package=\"com.example.app\" class=\""
+        + className
+        + "\" text=\""
+        + text
+        + "\" resource-id=\""
+        + resourceId
+        + "\" checkable=\"false\" checked=\"false\" clickable=\""
+        + clickable
+        + "\" enabled=\"true\" focusable=\""
+        + clickable
+        + "\" focused=\"false\" long-clickable=\"false\" password=\"false\""
+        + " scrollable=\"false\" selected=\"false\" bounds=\""
+        + bounds
+        + "\" displayed=\"true\"";
+  }
+
+  /**
+   * The heap per snapshot a {@code retained*} benchmark measured, reported next to its time. JMH
+   * sums event counters over iterations, so these benchmarks measure once per fork and average over
+   * several snapshots held at the same time instead.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.EVENTS)
+  public static class RetainedHeap {
+    public long retainedBytes;
+    // Not a counter: only public fields are reported
+    int snapshots;
+
+    /**
+     * Holds enough snapshots for about 40k elements in total, so that small hierarchies are not
+     * lost in the noise of the collector.
+     *
+     * @param benchmark The benchmark, for the size of its hierarchy.
+     */
+    @Setup(Level.Iteration)
+    public void reset(SnapshotBenchmark benchmark) {
+      retainedBytes = 0;
+      snapshots = Math.max(4, 40000 / benchmark.nodes);
+    }
+
+    /** Runs full collections until nothing more is freed and returns the used heap. */
+    static long usedAfterGc() {
+      long used = Long.MAX_VALUE;
+      for (int i = 0; i < 5; i++) {
+        System.gc();
+        long now = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+        if (now >= used) {
+          return now;
+        }
+        used = now;
+      }
+      return used;
+    }
+  }
+}
@@ -0,0 +1,97 @@
+package utils;
+
+import io.appium.java_client.AppiumDriver;
+import io.appium.java_client.android.AndroidDriver;
+import io.appium.java_client.android.options.UiAutomator2Options;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openqa.selenium.remote.http.HttpClient;
+
+/**
+ * A {@link StubAppiumServer} in the benchmark JVM and an Android session on it, created the same
+ * way {@link DriverManager} creates real sessions: through the shared HTTP client and a {@link
+ * SessionCommandExecutor}, timed by a {@link TimedCommandExecutor} unless metrics are disabled. The
+ * measured cost of a command is therefore the framework and Selenium client overhead plus a
+ * loopback round trip, with no device behind it.
+ */
+@State(Scope.Benchmark)
+public class StubSession {
+  private StubAppiumServer server;
+  private URL url;
+  private AppiumDriver driver;
+  private final List<AppiumDriver> trialSessions = new ArrayList<>();
+
+  /**
+   * Starts the stub server and opens a session on it.
+   *
+   * @throws IOException If the server cannot be started.
+   */
+  @Setup(Level.Trial)
+  public void start() throws IOException {
+    server = new StubAppiumServer();
+    server.start();
+    url = new URL(server.getUrl());
+    driver = openSession(SharedHttpClientFactory.getInstance());
+  }
+
+  /** Quits the sessions and stops the stub server. */
+  @TearDown(Level.Trial)
+  public void stop() {
+    if (driver != null) {
+      driver.quit();
+    }
+    trialSessions.forEach(AppiumDriver::quit);
+    trialSessions.clear();
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  /**
+   * Opens a new session on the stub server.
+   *
+   * @param clientFactory The factory that creates the session's HTTP client.
+   * @return The new driver.
+   */
+  public AppiumDriver openSession(HttpClient.Factory clientFactory) {
+    SessionCommandExecutor executor =
+        CommandMetrics.isEnabled()
+            ? new TimedCommandExecutor(
+                SharedHttpClientFactory.clientConfig(url),
+                clientFactory,
+                CommandMetrics.getInstance().target("android", "stub"))
+            : new SessionCommandExecutor(SharedHttpClientFactory.clientConfig(url), clientFactory);
+    AppiumDriver session = new AndroidDriver(executor, new UiAutomator2Options());
+    executor.bind(session);
+    return session;
+  }
+
+  /**
+   * Opens a session that stays open for the whole trial. It is quit in {@link #stop()} before the
+   * server stops, since JMH may tear down a benchmark's own state after this one.
+   *
+   * @param clientFactory The factory that creates the session's HTTP client.
+   * @return The new driver.
+   */
+  public AppiumDriver openTrialSession(HttpClient.Factory clientFactory) {
+    AppiumDriver trialSession = openSession(clientFactory);
+    trialSessions.add(trialSession);
+    return trialSession;
+  }
+
+  /**
+   * Gets the session opened in {@link #start()}.
+   *
+   * @return The driver.
+   */
+  public AppiumDriver getDriver() {
+    return driver;
+  }
+}
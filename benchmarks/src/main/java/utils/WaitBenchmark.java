@@ -0,0 +1,48 @@
+package utils;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openqa.selenium.By;
+import org.openqa.selenium.support.ui.ExpectedConditions;
+
+/**
+ * Cost of an explicit wait that is already satisfied, which is the common case: building the
+ * condition, suspending and restoring the implicit wait, a single poll and the wait report. The
+ * conditions run against a {@link StubSession}, so every driver call is a real round trip.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 3, time = 2)
+public class WaitBenchmark {
+  private static final Duration TIMEOUT = Duration.ofSeconds(1);
+
+  @Benchmark
+  public Object untilSatisfied(StubSession session) {
+    return AdaptiveWait.until(session.getDriver(), driver -> Boolean.TRUE, TIMEOUT);
+  }
+
+  @Benchmark
+  public Object presenceOfElement(StubSession session) {
+    return AdaptiveWait.until(
+        session.getDriver(), ExpectedConditions.presenceOfElementLocated(By.id("title")), TIMEOUT);
+  }
+
+  @Benchmark
+  public LocatorMatch waitForAny(StubSession session) {
+    return WaitHelper.waitForAny(session.getDriver(), 1, By.id("missing"), By.id("login"));
+  }
+
+  @Benchmark
+  public long pollingDelay() {
+    return AdaptiveWait.getPollingStrategy().nextDelayMillis(5);
+  }
+}
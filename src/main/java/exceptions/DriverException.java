@@ -0,0 +1,36 @@
+package exceptions;
+
+/**
+ * A failure of the framework while managing a driver or device. It carries the {@link
+ * FailureCategory} that decides whether a test that failed with it is retried.
+ */
+public class DriverException extends RuntimeException {
+  private final FailureCategory category;
+
+  public DriverException(String message) {
+    this(FailureCategory.TEST, message);
+  }
+
+  public DriverException(String message, Throwable cause) {
+    this(FailureCategory.TEST, message, cause);
+  }
+
+  public DriverException(FailureCategory category, String message) {
+    super(message);
+    this.category = category;
+  }
+
+  public DriverException(FailureCategory category, String message, Throwable cause) {
+    super(message, cause);
+    this.category = category;
+  }
+
+  /**
+   * Gets what broke.
+   *
+   * @return The failure category.
+   */
+  public FailureCategory getCategory() {
+    return category;
+  }
+}
@@ -0,0 +1,32 @@
+package exceptions;
+
+/**
+ * What broke when a test failed. Infrastructure failures are caused by the session, the Appium
+ * server or the connection to it rather than by the app under test, so the test may pass on a new
+ * session.
+ */
+public enum FailureCategory {
+  /** No session could be created, or no device became free for one. */
+  SESSION_CREATION(true),
+  /** The Appium server could not be reached or stopped answering. */
+  TRANSPORT(true),
+  /** The session died while the test used it, for example after a driver crash. */
+  SESSION_LOST(true),
+  /** An assertion, a missing element or any other failure of the test itself. */
+  TEST(false);
+
+  private final boolean infrastructure;
+
+  FailureCategory(boolean infrastructure) {
+    this.infrastructure = infrastructure;
+  }
+
+  /**
+   * Checks whether failures of this category are caused by the infrastructure.
+   *
+   * @return True for session creation, transport and lost session failures.
+   */
+  public boolean isInfrastructure() {
+    return infrastructure;
+  }
+}
@@ -0,0 +1,13 @@
+package exceptions;
+
+/** Thrown when no session can be created for a test, or no device becomes free for one. */
+public class SessionCreationException extends DriverException {
+
+  public SessionCreationException(String message) {
+    super(FailureCategory.SESSION_CREATION, message);
+  }
+
+  public SessionCreationException(String message, Throwable cause) {
+    super(FailureCategory.SESSION_CREATION, message, cause);
+  }
+}
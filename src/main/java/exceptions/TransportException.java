@@ -0,0 +1,9 @@
+package exceptions;
+
+/** Thrown when a request to the Appium server fails before a response is received. */
+public class TransportException extends DriverException {
+
+  public TransportException(String message, Throwable cause) {
+    super(FailureCategory.TRANSPORT, message, cause);
+  }
+}
@@ -0,0 +1,248 @@
+package utils;
+
+import io.appium.java_client.AppiumDriver;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NotFoundException;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.TimeoutException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Polling engine behind {@link WaitHelper}. Unlike {@code WebDriverWait}, it polls with a pluggable
+ * {@link PollingStrategy} (fast first, then backing off) and sets the driver's implicit wait to
+ * zero for the duration of the wait, so each poll is a single round-trip instead of stacking on top
+ * of the implicit wait. Waits for an element to appear are handed to the Appium server, which polls
+ * for it locally. Every wait produces a {@link WaitReport}.
+ */
+public class AdaptiveWait {
+  private static final Logger logger = LoggerFactory.getLogger(AdaptiveWait.class);
+  private static final ThreadLocal<WaitReport> lastReport = new ThreadLocal<>();
+  private static final AtomicLong totalWaits = new AtomicLong();
+  private static final AtomicLong totalPolls = new AtomicLong();
+  private static final AtomicLong totalMillis = new AtomicLong();
+  private static final AtomicLong timeouts = new AtomicLong();
+  private static volatile PollingStrategy pollingStrategy;
+
+  /**
+   * Gets the polling strategy, creating the configured one on first use.
+   *
+   * @return The polling strategy.
+   */
+  public static PollingStrategy getPollingStrategy() {
+    if (pollingStrategy == null) {
+      pollingStrategy = BackoffPollingStrategy.fromConfig();
+    }
+    return pollingStrategy;
+  }
+
+  /**
+   * Replaces the polling strategy used by all waits.
+   *
+   * @param strategy The new polling strategy.
+   */
+  public static void setPollingStrategy(PollingStrategy strategy) {
+    pollingStrategy = strategy;
+  }
+
+  /**
+   * Polls a condition until it returns a value other than null or false.
+   *
+   * @param driver The Appium driver.
+   * @param condition The condition to poll.
+   * @param timeout The maximum time to wait.
+   * @param <T> The condition's return type.
+   * @return The value returned by the condition.
+   * @throws TimeoutException If the condition is not met within the timeout.
+   */
+  public static <T> T until(
+      AppiumDriver driver, Function<? super WebDriver, T> condition, Duration timeout) {
+    PollingStrategy strategy = getPollingStrategy();
+    long start = System.nanoTime();
+    long deadline = start + timeout.toNanos();
+    int polls = 0;
+    RuntimeException lastError = null;
+
+    suspendImplicitWait(driver);
+    try {
+      while (true) {
+        polls++;
+        try {
+          T value = condition.apply(driver);
+          if (value != null && !Boolean.FALSE.equals(value)) {
+            record(new WaitReport(condition.toString(), polls, elapsedMillis(start), true, false));
+            return value;
+          }
+        } catch (NotFoundException | StaleElementReferenceException e) {
+          lastError = e;
+        }
+
+        long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remainingMillis <= 0) {
+          WaitReport report =
+              new WaitReport(condition.toString(), polls, elapsedMillis(start), false, false);
+          record(report);
+          throw new TimeoutException("Expected condition failed: waiting for " + report, lastError);
+        }
+        sleep(Math.min(strategy.nextDelayMillis(polls), remainingMillis));
+      }
+    } finally {
+      restoreImplicitWait(driver);
+    }
+  }
+
+  /**
+   * Waits for elements matching a locator to be present by letting the Appium server poll for them:
+   * the implicit wait is set to the timeout for a single find call.
+   *
+   * @param driver The Appium driver.
+   * @param locator The locator of the elements.
+   * @param timeout The maximum time to wait.
+   * @return The matching elements, or an empty list if none appeared within the timeout.
+   */
+  public static List<WebElement> findOnServer(AppiumDriver driver, By locator, Duration timeout) {
+    long start = System.nanoTime();
+    driver.manage().timeouts().implicitlyWait(timeout);
+    try {
+      List<WebElement> elements = driver.findElements(locator);
+      record(
+          new WaitReport(
+              "presence of " + locator, 1, elapsedMillis(start), !elements.isEmpty(), true));
+      return elements;
+    } finally {
+      restoreImplicitWait(driver);
+    }
+  }
+
+  /**
+   * Waits for a locator-based condition. The element is first waited for on the server, then the
+   * condition itself (for example visibility) is polled on the client for the remaining time.
+   *
+   * @param driver The Appium driver.
+   * @param locator The locator the condition refers to.
+   * @param condition The condition to poll once the element is present.
+   * @param timeout The maximum time to wait.
+   * @param <T> The condition's return type.
+   * @return The value returned by the condition.
+   * @throws TimeoutException If the element does not appear or the condition is not met in time.
+   */
+  public static <T> T untilLocated(
+      AppiumDriver driver, By locator, Function<? super WebDriver, T> condition, Duration timeout) {
+    long start = System.nanoTime();
+    if (findOnServer(driver, locator, timeout).isEmpty()) {
+      throw new TimeoutException(
+          "Expected condition failed: waiting for " + condition + " (element never appeared)");
+    }
+    Duration remaining = timeout.minusNanos(System.nanoTime() - start);
+    return until(driver, condition, remaining.isNegative() ? Duration.ZERO : remaining);
+  }
+
+  /**
+   * Runs an action with the implicit wait set to zero, so finds inside it fail fast instead of
+   * waiting on the server.
+   *
+   * @param driver The Appium driver.
+   * @param action The action to run.
+   * @param <T> The action's return type.
+   * @return The value returned by the action.
+   */
+  public static <T> T withoutImplicitWait(AppiumDriver driver, Supplier<T> action) {
+    suspendImplicitWait(driver);
+    try {
+      return action.get();
+    } finally {
+      restoreImplicitWait(driver);
+    }
+  }
+
+  /**
+   * Gets the report of the most recent wait on the current thread.
+   *
+   * @return The report, or null if the thread has not waited yet.
+   */
+  public static WaitReport getLastReport() {
+    return lastReport.get();
+  }
+
+  /**
+   * Gets the number of waits performed in this JVM.
+   *
+   * @return The number of waits.
+   */
+  public static long getTotalWaits() {
+    return totalWaits.get();
+  }
+
+  /**
+   * Gets the number of polls made by all waits in this JVM.
+   *
+   * @return The number of polls.
+   */
+  public static long getTotalPolls() {
+    return totalPolls.get();
+  }
+
+  /**
+   * Gets the wall time spent in all waits in this JVM.
+   *
+   * @return The total wait time in milliseconds.
+   */
+  public static long getTotalMillis() {
+    return totalMillis.get();
+  }
+
+  /**
+   * Gets the number of waits that timed out.
+   *
+   * @return The number of timeouts.
+   */
+  public static long getTimeouts() {
+    return timeouts.get();
+  }
+
+  private static void record(WaitReport report) {
+    lastReport.set(report);
+    totalWaits.incrementAndGet();
+    totalPolls.addAndGet(report.getPolls());
+    totalMillis.addAndGet(report.getElapsedMillis());
+    if (!report.isSatisfied()) {
+      timeouts.incrementAndGet();
+    }
+    logger.debug("Wait report: {}", report);
+  }
+
+  private static void suspendImplicitWait(AppiumDriver driver) {
+    driver.manage().timeouts().implicitlyWait(Duration.ZERO);
+  }
+
+  private static void restoreImplicitWait(AppiumDriver driver) {
+    try {
+      int implicitWait = ConfigReader.getInstance().getImplicitWait();
+      driver.manage().timeouts().implicitlyWait(Duration.ofSeconds(implicitWait));
+    } catch (WebDriverException e) {
+      logger.warn("Failed to restore implicit wait: {}", e.getMessage());
+    }
+  }
+
+  private static long elapsedMillis(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
+  private static void sleep(long millis) {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new WebDriverException("Interrupted while waiting", e);
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package utils;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Polls quickly at first, then backs off exponentially up to a cap. Conditions that are met almost
+ * immediately are detected within one short interval, while long waits do not flood the Appium
+ * server with requests. Jitter keeps parallel sessions from polling in lockstep.
+ */
+public class BackoffPollingStrategy implements PollingStrategy {
+  private final long initialIntervalMillis;
+  private final int fastPolls;
+  private final double multiplier;
+  private final long maxIntervalMillis;
+  private final double jitter;
+
+  /**
+   * Creates a new backoff strategy.
+   *
+   * @param initialIntervalMillis The delay used for the first fast polls.
+   * @param fastPolls The number of polls made at the initial interval before backing off.
+   * @param multiplier The factor the delay grows by after each further poll.
+   * @param maxIntervalMillis The upper bound of the delay.
+   * @param jitter The random spread applied to each delay, as a fraction (0.2 means +/-20%).
+   */
+  public BackoffPollingStrategy(
+      long initialIntervalMillis,
+      int fastPolls,
+      double multiplier,
+      long maxIntervalMillis,
+      double jitter) {
+    this.initialIntervalMillis = initialIntervalMillis;
+    this.fastPolls = fastPolls;
+    this.multiplier = multiplier;
+    this.maxIntervalMillis = maxIntervalMillis;
+    this.jitter = jitter;
+  }
+
+  /**
+   * Creates a strategy from the "polling" section of config.json.
+   *
+   * @return The configured strategy.
+   */
+  public static BackoffPollingStrategy fromConfig() {
+    ConfigSection polling = ConfigReader.getInstance().getSnapshot().getSection("polling");
+    return new BackoffPollingStrategy(
+        polling.getInt("initialIntervalMs", 100),
+        polling.getInt("fastPolls", 3),
+        polling.getDouble("multiplier", 1.5),
+        polling.getInt("maxIntervalMs", 1000),
+        polling.getDouble("jitter", 0.2));
+  }
+
+  @Override
+  public long nextDelayMillis(int polls) {
+    double delay = initialIntervalMillis;
+    if (polls > fastPolls) {
+      delay = Math.min(maxIntervalMillis, delay * Math.pow(multiplier, polls - fastPolls));
+    }
+    if (jitter > 0) {
+      delay *= 1 + ThreadLocalRandom.current().nextDouble(-jitter, jitter);
+    }
+    return Math.max(1, Math.min(maxIntervalMillis, Math.round(delay)));
+  }
+}
@@ -0,0 +1,245 @@
+package utils;
+
+import io.appium.java_client.AppiumDriver;
+import java.util.List;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import org.openqa.selenium.By;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.Rectangle;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebDriver;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.WrapsDriver;
+import org.openqa.selenium.WrapsElement;
+
+/**
+ * An element handed out by the {@link ElementCache} that remembers the locator it was found with.
+ * Every call goes to the element found last; if the server reports it stale, the element is found
+ * again with the same locator and the call is retried once. Calls that are rejected as stale have
+ * no effect on the device, so retrying them (including clicks) is safe.
+ *
+ * <p>The wrapped element can be unwrapped with {@link #getWrappedElement()}, which is also what
+ * Selenium does when the element is used in actions or script arguments.
+ */
+public final class CachedElement implements WebElement, WrapsElement, WrapsDriver {
+  private final AppiumDriver driver;
+  private final By locator;
+  private final ElementCache cache;
+  // Not a monitor: relocating sends a command, and a virtual thread blocked inside a monitor
+  // keeps its carrier thread pinned
+  private final ReentrantLock relocating = new ReentrantLock();
+  private volatile WebElement element;
+
+  /**
+   * Wraps an element found with a locator.
+   *
+   * @param driver The session the element belongs to.
+   * @param locator The locator the element was found with.
+   * @param element The element.
+   * @param cache The cache that counts re-resolved elements.
+   */
+  CachedElement(AppiumDriver driver, By locator, WebElement element, ElementCache cache) {
+    this.driver = driver;
+    this.locator = locator;
+    this.element = element;
+    this.cache = cache;
+  }
+
+  /**
+   * Gets the locator the element is found with.
+   *
+   * @return The locator.
+   */
+  public By getLocator() {
+    return locator;
+  }
+
+  @Override
+  public WebElement getWrappedElement() {
+    return element;
+  }
+
+  @Override
+  public WebDriver getWrappedDriver() {
+    return driver;
+  }
+
+  @Override
+  public void click() {
+    run(WebElement::click);
+  }
+
+  @Override
+  public void submit() {
+    run(WebElement::submit);
+  }
+
+  @Override
+  public void sendKeys(CharSequence... keysToSend) {
+    run(current -> current.sendKeys(keysToSend));
+  }
+
+  @Override
+  public void clear() {
+    run(WebElement::clear);
+  }
+
+  @Override
+  public String getTagName() {
+    return call(WebElement::getTagName);
+  }
+
+  @Override
+  public String getDomProperty(String name) {
+    return call(current -> current.getDomProperty(name));
+  }
+
+  @Override
+  public String getDomAttribute(String name) {
+    return call(current -> current.getDomAttribute(name));
+  }
+
+  @Override
+  public String getAttribute(String name) {
+    return call(current -> current.getAttribute(name));
+  }
+
+  @Override
+  public String getAriaRole() {
+    return call(WebElement::getAriaRole);
+  }
+
+  @Override
+  public String getAccessibleName() {
+    return call(WebElement::getAccessibleName);
+  }
+
+  @Override
+  public boolean isSelected() {
+    return call(WebElement::isSelected);
+  }
+
+  @Override
+  public boolean isEnabled() {
+    return call(WebElement::isEnabled);
+  }
+
+  @Override
+  public String getText() {
+    return call(WebElement::getText);
+  }
+
+  @Override
+  public List<WebElement> findElements(By by) {
+    return call(current -> current.findElements(by));
+  }
+
+  @Override
+  public WebElement findElement(By by) {
+    return call(current -> current.findElement(by));
+  }
+
+  @Override
+  public SearchContext getShadowRoot() {
+    return call(WebElement::getShadowRoot);
+  }
+
+  @Override
+  public boolean isDisplayed() {
+    return call(WebElement::isDisplayed);
+  }
+
+  @Override
+  public Point getLocation() {
+    return call(WebElement::getLocation);
+  }
+
+  @Override
+  public Dimension getSize() {
+    return call(WebElement::getSize);
+  }
+
+  @Override
+  public Rectangle getRect() {
+    return call(WebElement::getRect);
+  }
+
+  @Override
+  public String getCssValue(String propertyName) {
+    return call(current -> current.getCssValue(propertyName));
+  }
+
+  @Override
+  public <X> X getScreenshotAs(OutputType<X> target) throws WebDriverException {
+    return call(current -> current.getScreenshotAs(target));
+  }
+
+  @Override
+  public boolean equals(Object other) {
+    if (other instanceof CachedElement) {
+      return element.equals(((CachedElement) other).element);
+    }
+    return element.equals(other);
+  }
+
+  @Override
+  public int hashCode() {
+    return element.hashCode();
+  }
+
+  @Override
+  public String toString() {
+    return "[" + locator + "] -> " + element;
+  }
+
+  private void run(Consumer<WebElement> action) {
+    call(
+        current -> {
+          action.accept(current);
+          return null;
+        });
+  }
+
+  private <T> T call(Function<WebElement, T> action) {
+    WebElement current = element;
+    try {
+      return action.apply(current);
+    } catch (StaleElementReferenceException e) {
+      return action.apply(relocate(current, e));
+    }
+  }
+
+  /**
+   * Finds the element again, unless another thread already did since it went stale.
+   *
+   * @param stale The element that was reported stale.
+   * @param cause The stale element error.
+   * @return The element found again.
+   * @throws StaleElementReferenceException If the locator no longer finds an element.
+   */
+  private WebElement relocate(WebElement stale, StaleElementReferenceException cause) {
+    relocating.lock();
+    try {
+      if (element != stale) {
+        return element;
+      }
+      try {
+        element = driver.findElement(locator);
+      } catch (WebDriverException e) {
+        cache.forget(driver, locator);
+        cause.addSuppressed(e);
+        throw cause;
+      }
+      cache.recordRecovery();
+      return element;
+    } finally {
+      relocating.unlock();
+    }
+  }
+}
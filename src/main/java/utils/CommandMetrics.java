@@ -0,0 +1,190 @@
+package utils;
+
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Latency of every WebDriver command sent to the Appium server, kept in one {@link
+ * LatencyHistogram} per platform, device and command. The histograms are filled by {@link
+ * TimedCommandExecutor}, and {@link #report()} logs the p50/p95/p99 and writes them to a JSON file
+ * (reports/command-latency.json by default) when the suite finishes. Configured under {@code
+ * metrics} in config.json.
+ */
+public class CommandMetrics {
+  private static final Logger logger = LoggerFactory.getLogger(CommandMetrics.class);
+  private static volatile CommandMetrics instance;
+
+  private final Path file;
+  private final Map<String, Target> targets = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a registry that reports to the given file.
+   *
+   * @param file The report file, or null to only log the report.
+   */
+  CommandMetrics(Path file) {
+    this.file = file;
+  }
+
+  /**
+   * Returns the singleton instance of the CommandMetrics, configured from config.json.
+   *
+   * @return The singleton instance.
+   */
+  public static CommandMetrics getInstance() {
+    if (instance == null) {
+      synchronized (CommandMetrics.class) {
+        if (instance == null) {
+          String file =
+              ConfigReader.getInstance().getSnapshot().getSection("metrics").getString("file");
+          instance =
+              new CommandMetrics(Paths.get(file != null ? file : "reports/command-latency.json"));
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Checks whether commands should be timed.
+   *
+   * @return True unless {@code metrics.enabled} is false.
+   */
+  public static boolean isEnabled() {
+    return ConfigReader.getInstance()
+        .getSnapshot()
+        .getSection("metrics")
+        .getBoolean("enabled", true);
+  }
+
+  /**
+   * Gets the histograms of one platform and device. Sessions on the same device share them.
+   *
+   * @param platform The platform.
+   * @param device The device name or udid, or null if unknown.
+   * @return The histograms of the platform and device.
+   */
+  public Target target(String platform, String device) {
+    String key = platform + "/" + (device != null ? device : "default");
+    return targets.computeIfAbsent(key, k -> new Target(platform, device));
+  }
+
+  /**
+   * Logs the latency percentiles of every command and writes them to the report file.
+   *
+   * @return The report, one entry per platform, device and command.
+   */
+  public JsonArray report() {
+    JsonArray report = new JsonArray();
+    List<String> lines = new ArrayList<>();
+    for (Target target : new TreeMap<>(targets).values()) {
+      for (Map.Entry<String, LatencyHistogram> entry :
+          new TreeMap<>(target.histograms).entrySet()) {
+        LatencyHistogram histogram = entry.getValue();
+        JsonObject row = new JsonObject();
+        row.addProperty("platform", target.platform);
+        row.addProperty("device", target.device);
+        row.addProperty("command", entry.getKey());
+        row.addProperty("count", histogram.getCount());
+        row.addProperty("meanMs", round(histogram.getMeanMillis()));
+        row.addProperty("p50Ms", round(histogram.getPercentileMillis(50)));
+        row.addProperty("p95Ms", round(histogram.getPercentileMillis(95)));
+        row.addProperty("p99Ms", round(histogram.getPercentileMillis(99)));
+        row.addProperty("maxMs", round(histogram.getMaxMillis()));
+        report.add(row);
+        lines.add(
+            String.format(
+                "%-8s %-20s %-24s %7d %9.1f %9.1f %9.1f %9.1f",
+                target.platform,
+                target.device != null ? target.device : "-",
+                entry.getKey(),
+                histogram.getCount(),
+                histogram.getPercentileMillis(50),
+                histogram.getPercentileMillis(95),
+                histogram.getPercentileMillis(99),
+                histogram.getMaxMillis()));
+      }
+    }
+    if (lines.isEmpty()) {
+      return report;
+    }
+
+    logger.info(
+        String.format(
+            "%-8s %-20s %-24s %7s %9s %9s %9s %9s",
+            "platform", "device", "command", "count", "p50 ms", "p95 ms", "p99 ms", "max ms"));
+    lines.forEach(logger::info);
+    if (file != null) {
+      try {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+          Files.createDirectories(parent);
+        }
+        Files.write(
+            file,
+            new GsonBuilder()
+                .setPrettyPrinting()
+                .create()
+                .toJson(report)
+                .getBytes(StandardCharsets.UTF_8));
+        logger.info("Command latency written to {}", file);
+      } catch (IOException e) {
+        logger.error("Failed to write command latency to {}", file, e);
+      }
+    }
+    return report;
+  }
+
+  private static double round(double millis) {
+    return Math.round(millis * 10) / 10.0;
+  }
+
+  /** The histograms of one platform and device. */
+  public static final class Target {
+    private final String platform;
+    private final String device;
+    private final Map<String, LatencyHistogram> histograms = new ConcurrentHashMap<>();
+
+    private Target(String platform, String device) {
+      this.platform = platform;
+      this.device = device;
+    }
+
+    /**
+     * Records the latency of one command.
+     *
+     * @param command The WebDriver command name.
+     * @param nanos The latency in nanoseconds.
+     */
+    public void record(String command, long nanos) {
+      LatencyHistogram histogram = histograms.get(command);
+      if (histogram == null) {
+        histogram = histograms.computeIfAbsent(command, key -> new LatencyHistogram());
+      }
+      histogram.record(nanos);
+    }
+
+    /**
+     * Gets the histogram of a command.
+     *
+     * @param command The WebDriver command name.
+     * @return The histogram, or null if the command was never sent.
+     */
+    public LatencyHistogram get(String command) {
+      return histograms.get(command);
+    }
+  }
+}
@@ -1,49 +1,68 @@
 package utils;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
 import com.google.gson.JsonParser;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Optional;
-import java.util.function.Function;
+import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Handles reading and parsing the configuration file (config.json). This class follows the
- * Singleton pattern to ensure only one instance is created.
+ * Singleton pattern to ensure only one instance is created. The file is resolved once into an
+ * immutable {@link ConfigSnapshot}, so every lookup is a plain field or map read.
+ *
+ * <p>With testSettings.watchConfig enabled, edits to the file are picked up by a {@link
+ * ConfigWatcher}. The new snapshot is parsed and validated on the watcher thread and published with
+ * a single volatile write, so readers never block and never see a half-loaded configuration. A
+ * reload that fails to parse or validate is rejected and the previous snapshot stays active.
  */
 public class ConfigReader {
   private static final Logger logger = LoggerFactory.getLogger(ConfigReader.class);
   private static volatile ConfigReader instance;
-  private JsonObject config;
-
-  // Configuration file keys
-  private static final String CONFIG_FILE_PATH = Paths.get("config", "config.json").toString();
-  private static final String ANDROID = "android";
-  private static final String IOS = "ios";
-  private static final String APPIUM = "appiumServer";
-  private static final String TEST_SETTINGS = "testSettings";
-  private static final String HOST = "host";
-  private static final String PORT = "port";
-  private static final String IMPLICIT_WAIT = "implicitWait";
-  private static final String EXPLICIT_WAIT = "explicitWait";
-  private static final String SCREENSHOT_ON_FAILURE = "screenshotOnFailure";
-
-  /**
-   * Private constructor to prevent instantiation from outside. Loads the config.json file and
-   * parses it into a JsonObject.
-   */
-  private ConfigReader() {
-    try (FileReader reader = new FileReader(CONFIG_FILE_PATH)) {
-      config = JsonParser.parseReader(reader).getAsJsonObject();
-      logger.info("Configuration loaded successfully from {}", CONFIG_FILE_PATH);
+  private final Path file;
+  private volatile ConfigSnapshot snapshot;
+  private ConfigWatcher watcher;
+
+  /**
+   * Loads a configuration file and resolves it into a ConfigSnapshot. Outside of tests, use {@link
+   * #getInstance()}.
+   *
+   * @param file The configuration file.
+   */
+  ConfigReader(Path file) {
+    this.file = file;
+    try {
+      snapshot = readSnapshot(file);
+      logger.info("Configuration loaded successfully from {}", file);
     } catch (IOException e) {
-      logger.error("Failed to load configuration file: {}", CONFIG_FILE_PATH, e);
+      logger.error("Failed to load configuration file: {}", file, e);
       throw new RuntimeException("Failed to load config.json", e);
     }
+    for (String error : snapshot.validate()) {
+      logger.warn("Configuration problem in {}: {}", file, error);
+    }
+
+    if (snapshot.isWatchConfig()) {
+      try {
+        watcher = new ConfigWatcher(file, this::reload);
+        watcher.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::close, "config-watcher-shutdown"));
+      } catch (IOException e) {
+        logger.warn("Cannot watch {} for changes: {}", file, e.getMessage());
+      }
+    }
+  }
+
+  private static ConfigSnapshot readSnapshot(Path file) throws IOException {
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+      return new ConfigSnapshot(JsonParser.parseReader(reader).getAsJsonObject());
+    }
   }
 
   /**
@@ -55,13 +74,63 @@ public class ConfigReader {
     if (instance == null) {
       synchronized (ConfigReader.class) {
         if (instance == null) {
-          instance = new ConfigReader();
+          instance =
+              new ConfigReader(
+                  Paths.get(
+                      System.getProperty(
+                          "configFile", Paths.get("config", "config.json").toString())));
         }
       }
     }
     return instance;
   }
 
+  /**
+   * Re-reads the configuration file and publishes it if it is valid. Readers keep using the
+   * previous snapshot until the new one is swapped in, and keep it if the reload is rejected.
+   *
+   * @return True if the new configuration was published, false if it was rejected.
+   */
+  public boolean reload() {
+    ConfigSnapshot candidate;
+    try {
+      candidate = readSnapshot(file);
+    } catch (IOException | JsonParseException | IllegalStateException e) {
+      logger.error("Rejected config reload from {}: {}", file, e.getMessage());
+      return false;
+    }
+    List<String> errors = candidate.validate();
+    if (!errors.isEmpty()) {
+      logger.error("Rejected config reload from {}: {}", file, errors);
+      return false;
+    }
+    snapshot = candidate;
+    logger.info("Configuration reloaded from {}", file);
+    return true;
+  }
+
+  /** Stops watching the configuration file for edits. Called on shutdown. */
+  public synchronized void close() {
+    if (watcher == null) {
+      return;
+    }
+    try {
+      watcher.close();
+    } catch (IOException e) {
+      logger.warn("Failed to stop watching {}: {}", file, e.getMessage());
+    }
+    watcher = null;
+  }
+
+  /**
+   * Gets the resolved configuration snapshot.
+   *
+   * @return The current snapshot.
+   */
+  public ConfigSnapshot getSnapshot() {
+    return snapshot;
+  }
+
   /**
    * Gets a capability value for a given platform.
    *
@@ -70,7 +139,7 @@ public class ConfigReader {
    * @return The capability value as a String, or null if not found.
    */
   public String getPlatformCapability(String platform, String key) {
-    return getCapability(platform, key, JsonElement::getAsString).orElse(null);
+    return snapshot.getSection(platform).getString(key);
   }
 
   /**
@@ -82,7 +151,7 @@ public class ConfigReader {
    * @return The capability value as a boolean.
    */
   public boolean getPlatformBooleanCapability(String platform, String key, boolean defaultValue) {
-    return getCapability(platform, key, JsonElement::getAsBoolean).orElse(defaultValue);
+    return snapshot.getSection(platform).getBoolean(key, defaultValue);
   }
 
   /**
@@ -94,59 +163,7 @@ public class ConfigReader {
    * @return The capability value as an integer.
    */
   public int getPlatformIntCapability(String platform, String key, int defaultValue) {
-    return getCapability(platform, key, JsonElement::getAsInt).orElse(defaultValue);
-  }
-
-  /**
-   * Generic private method to retrieve and convert a capability.
-   *
-   * @param platform The platform section in the JSON.
-   * @param key The key of the capability.
-   * @param converter A function to convert the JsonElement to the target type.
-   * @param <T> The target type.
-   * @return An Optional containing the value, or empty if not found or on error.
-   */
-  private <T> Optional<T> getCapability(
-      String platform, String key, Function<JsonElement, T> converter) {
-    try {
-      JsonElement element = config.getAsJsonObject(platform).get(key);
-      if (element.isJsonPrimitive() && element.getAsJsonPrimitive().isString()) {
-        String resolvedValue = resolveEnvironmentVariable(element.getAsString());
-        JsonElement newElement;
-        try {
-          // Try to parse as JSON for booleans, numbers, etc.
-          newElement = JsonParser.parseString(resolvedValue);
-        } catch (com.google.gson.JsonSyntaxException e) {
-          // If parsing fails, treat it as a literal string
-          newElement = new com.google.gson.JsonPrimitive(resolvedValue);
-        }
-        return Optional.of(converter.apply(newElement));
-      }
-      return Optional.of(converter.apply(element));
-    } catch (Exception e) {
-      logger.warn("Failed to get capability: {}.{}. Using default.", platform, key);
-      return Optional.empty();
-    }
-  }
-
-  /**
-   * Resolves environment variables in the config value. Supports the format
-   * ${ENV_VAR:-default_value}.
-   *
-   * @param value The value to resolve.
-   * @return The resolved value.
-   */
-  private String resolveEnvironmentVariable(String value) {
-    if (value == null || !value.startsWith("${") || !value.endsWith("}")) {
-      return value;
-    }
-    String content = value.substring(2, value.length() - 1);
-    String[] parts = content.split(":-", 2);
-    String envVar = parts[0];
-    String defaultValue = parts.length > 1 ? parts[1] : null;
-
-    String envValue = System.getenv(envVar);
-    return envValue != null ? envValue : System.getProperty(envVar, defaultValue);
+    return snapshot.getSection(platform).getInt(key, defaultValue);
   }
 
   /**
@@ -155,10 +172,7 @@ public class ConfigReader {
    * @return The Appium server URL.
    */
   public String getAppiumUrl() {
-    JsonObject appiumConfig = config.getAsJsonObject(APPIUM);
-    String host = resolveEnvironmentVariable(appiumConfig.get(HOST).getAsString());
-    String port = resolveEnvironmentVariable(appiumConfig.get(PORT).getAsString());
-    return String.format("http://%s:%s", host, port);
+    return snapshot.getAppiumUrl();
   }
 
   /**
@@ -167,7 +181,7 @@ public class ConfigReader {
    * @return The implicit wait timeout in seconds.
    */
   public int getImplicitWait() {
-    return getCapability(TEST_SETTINGS, IMPLICIT_WAIT, JsonElement::getAsInt).orElse(10);
+    return snapshot.getImplicitWait();
   }
 
   /**
@@ -176,7 +190,7 @@ public class ConfigReader {
    * @return The explicit wait timeout in seconds.
    */
   public int getExplicitWait() {
-    return getCapability(TEST_SETTINGS, EXPLICIT_WAIT, JsonElement::getAsInt).orElse(30);
+    return snapshot.getExplicitWait();
   }
 
   /**
@@ -185,7 +199,70 @@ public class ConfigReader {
    * @return True if screenshots are enabled, false otherwise.
    */
   public boolean isScreenshotOnFailure() {
-    return getCapability(TEST_SETTINGS, SCREENSHOT_ON_FAILURE, JsonElement::getAsBoolean)
-        .orElse(true);
+    return snapshot.isScreenshotOnFailure();
+  }
+
+  /**
+   * Checks if drivers should be kept warm in the session pool between tests.
+   *
+   * @return True if session pooling is enabled, false otherwise.
+   */
+  public boolean isSessionPoolEnabled() {
+    return snapshot.isSessionPoolEnabled();
+  }
+
+  /**
+   * Gets how long an idle pooled session is kept before it is quit.
+   *
+   * @return The idle timeout in seconds.
+   */
+  public int getSessionPoolIdleTimeout() {
+    return snapshot.getSessionPoolIdleTimeout();
+  }
+
+  /**
+   * Gets the number of failed tests after which a pooled session is discarded.
+   *
+   * @return The maximum number of failures per pooled session.
+   */
+  public int getSessionPoolMaxFailures() {
+    return snapshot.getSessionPoolMaxFailures();
+  }
+
+  /**
+   * Checks if sessions for upcoming tests should be created in the background.
+   *
+   * @return True if pre-provisioning is enabled, false otherwise.
+   */
+  public boolean isProvisioningEnabled() {
+    return snapshot.isProvisioningEnabled();
+  }
+
+  /**
+   * Gets the maximum number of sessions provisioned ahead of time per platform.
+   *
+   * @return The provisioning depth.
+   */
+  public int getProvisioningDepth() {
+    return snapshot.getProvisioningDepth();
+  }
+
+  /**
+   * Gets how long a test thread waits for a free device from the device registry.
+   *
+   * @return The device lease timeout in seconds.
+   */
+  public int getDeviceLeaseTimeout() {
+    return snapshot.getDeviceLeaseTimeout();
+  }
+
+  /**
+   * Gets the devices registered for a platform in the "devices" section.
+   *
+   * @param platform The platform ("android" or "ios").
+   * @return The registered devices, or an empty list if none are configured.
+   */
+  public List<Device> getDevices(String platform) {
+    return snapshot.getDevices(platform);
   }
 }
@@ -0,0 +1,153 @@
+package utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.JsonSyntaxException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * An immutable section of config.json (such as "android" or "testSettings") with every value
+ * already resolved and converted. Environment and system property placeholders of the form
+ * ${ENV_VAR:-default_value} are substituted once when the section is built, so lookups are plain
+ * map reads.
+ */
+public final class ConfigSection {
+  static final ConfigSection EMPTY = new ConfigSection(new JsonObject());
+
+  private final Map<String, String> strings = new HashMap<>();
+  private final Map<String, Boolean> booleans = new HashMap<>();
+  private final Map<String, Integer> ints = new HashMap<>();
+  private final Map<String, Double> doubles = new HashMap<>();
+
+  /**
+   * Resolves and converts every value of a JSON object.
+   *
+   * @param section The section as parsed from config.json.
+   */
+  ConfigSection(JsonObject section) {
+    for (Map.Entry<String, JsonElement> entry : section.entrySet()) {
+      JsonElement element = resolve(entry.getValue());
+      if (element == null) {
+        continue;
+      }
+      String key = entry.getKey();
+      convert(element, JsonElement::getAsString, key, strings);
+      convert(element, JsonElement::getAsBoolean, key, booleans);
+      convert(element, JsonElement::getAsInt, key, ints);
+      convert(element, JsonElement::getAsDouble, key, doubles);
+    }
+  }
+
+  /**
+   * Gets a string value.
+   *
+   * @param key The key.
+   * @return The value, or null if not found.
+   */
+  public String getString(String key) {
+    return strings.get(key);
+  }
+
+  /**
+   * Gets a boolean value.
+   *
+   * @param key The key.
+   * @param defaultValue The default value to return if the key is not found.
+   * @return The value.
+   */
+  public boolean getBoolean(String key, boolean defaultValue) {
+    Boolean value = booleans.get(key);
+    return value != null ? value : defaultValue;
+  }
+
+  /**
+   * Gets an integer value.
+   *
+   * @param key The key.
+   * @param defaultValue The default value to return if the key is not found.
+   * @return The value.
+   */
+  public int getInt(String key, int defaultValue) {
+    Integer value = ints.get(key);
+    return value != null ? value : defaultValue;
+  }
+
+  /**
+   * Gets a floating point value.
+   *
+   * @param key The key.
+   * @param defaultValue The default value to return if the key is not found.
+   * @return The value.
+   */
+  public double getDouble(String key, double defaultValue) {
+    Double value = doubles.get(key);
+    return value != null ? value : defaultValue;
+  }
+
+  /**
+   * Gets an integer value that may be absent.
+   *
+   * @param key The key.
+   * @return The value, or null if not found.
+   */
+  public Integer getInteger(String key) {
+    return ints.get(key);
+  }
+
+  /**
+   * Resolves environment variables in string values and re-parses the result, so "${PORT:-4723}"
+   * becomes a number and "${FLAG:-true}" a boolean.
+   *
+   * @param element The raw value.
+   * @return The resolved value, or null if a placeholder resolved to nothing.
+   */
+  private static JsonElement resolve(JsonElement element) {
+    if (!element.isJsonPrimitive() || !element.getAsJsonPrimitive().isString()) {
+      return element;
+    }
+    String resolvedValue = resolveEnvironmentVariable(element.getAsString());
+    if (resolvedValue == null) {
+      return null;
+    }
+    try {
+      // Try to parse as JSON for booleans, numbers, etc.
+      return JsonParser.parseString(resolvedValue);
+    } catch (JsonSyntaxException e) {
+      // If parsing fails, treat it as a literal string
+      return new JsonPrimitive(resolvedValue);
+    }
+  }
+
+  private static <T> void convert(
+      JsonElement element, Function<JsonElement, T> converter, String key, Map<String, T> target) {
+    try {
+      target.put(key, converter.apply(element));
+    } catch (RuntimeException e) {
+      // Not convertible to this type; lookups of this type fall back to their default
+    }
+  }
+
+  /**
+   * Resolves environment variables in the config value. Supports the format
+   * ${ENV_VAR:-default_value}.
+   *
+   * @param value The value to resolve.
+   * @return The resolved value.
+   */
+  static String resolveEnvironmentVariable(String value) {
+    if (value == null || !value.startsWith("${") || !value.endsWith("}")) {
+      return value;
+    }
+    String content = value.substring(2, value.length() - 1);
+    String[] parts = content.split(":-", 2);
+    String envVar = parts[0];
+    String defaultValue = parts.length > 1 ? parts[1] : null;
+
+    String envValue = System.getenv(envVar);
+    return envValue != null ? envValue : System.getProperty(envVar, defaultValue);
+  }
+}
@@ -0,0 +1,242 @@
+package utils;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable, fully resolved view of config.json. All sections are resolved and converted once
+ * when the snapshot is built, and the settings read on hot paths (timeouts, server URL, pool and
+ * device settings) are held in typed fields.
+ */
+public final class ConfigSnapshot {
+  // Configuration file keys
+  private static final String APPIUM = "appiumServer";
+  private static final String TEST_SETTINGS = "testSettings";
+  private static final String HOST = "host";
+  private static final String PORT = "port";
+  private static final String IMPLICIT_WAIT = "implicitWait";
+  private static final String EXPLICIT_WAIT = "explicitWait";
+  private static final String SCREENSHOT_ON_FAILURE = "screenshotOnFailure";
+  private static final String DEVICE_LEASE_TIMEOUT = "deviceLeaseTimeout";
+  private static final String WATCH_CONFIG = "watchConfig";
+  private static final String ANDROID = "android";
+  private static final String IOS = "ios";
+  private static final String SESSION_POOL = "sessionPool";
+  private static final String ENABLED = "enabled";
+  private static final String IDLE_TIMEOUT_SECONDS = "idleTimeoutSeconds";
+  private static final String MAX_FAILURES = "maxFailures";
+  private static final String PROVISIONING = "provisioning";
+  private static final String DEPTH = "depth";
+  private static final String DEVICES = "devices";
+  private static final String DEVICE_NAME = "deviceName";
+  private static final String UDID = "udid";
+  private static final String SYSTEM_PORT = "systemPort";
+  private static final String WDA_LOCAL_PORT = "wdaLocalPort";
+
+  private final Map<String, ConfigSection> sections;
+  private final Map<String, List<Device>> devices;
+  private final String appiumUrl;
+  private final int implicitWait;
+  private final int explicitWait;
+  private final boolean screenshotOnFailure;
+  private final int deviceLeaseTimeout;
+  private final boolean watchConfig;
+  private final boolean sessionPoolEnabled;
+  private final int sessionPoolIdleTimeout;
+  private final int sessionPoolMaxFailures;
+  private final boolean provisioningEnabled;
+  private final int provisioningDepth;
+
+  /**
+   * Builds a snapshot from the parsed config.json.
+   *
+   * @param config The root JSON object.
+   */
+  public ConfigSnapshot(JsonObject config) {
+    Map<String, ConfigSection> parsedSections = new HashMap<>();
+    for (Map.Entry<String, JsonElement> entry : config.entrySet()) {
+      if (entry.getValue().isJsonObject() && !DEVICES.equals(entry.getKey())) {
+        parsedSections.put(entry.getKey(), new ConfigSection(entry.getValue().getAsJsonObject()));
+      }
+    }
+    this.sections = Collections.unmodifiableMap(parsedSections);
+    this.devices = parseDevices(config.getAsJsonObject(DEVICES));
+
+    ConfigSection appium = getSection(APPIUM);
+    String host = appium.getString(HOST);
+    String port = appium.getString(PORT);
+    this.appiumUrl =
+        host != null && port != null ? String.format("http://%s:%s", host, port) : null;
+
+    ConfigSection testSettings = getSection(TEST_SETTINGS);
+    this.implicitWait = testSettings.getInt(IMPLICIT_WAIT, 10);
+    this.explicitWait = testSettings.getInt(EXPLICIT_WAIT, 30);
+    this.screenshotOnFailure = testSettings.getBoolean(SCREENSHOT_ON_FAILURE, true);
+    this.deviceLeaseTimeout = testSettings.getInt(DEVICE_LEASE_TIMEOUT, 600);
+    this.watchConfig = testSettings.getBoolean(WATCH_CONFIG, false);
+
+    ConfigSection sessionPool = getSection(SESSION_POOL);
+    this.sessionPoolEnabled = sessionPool.getBoolean(ENABLED, false);
+    this.sessionPoolIdleTimeout = sessionPool.getInt(IDLE_TIMEOUT_SECONDS, 300);
+    this.sessionPoolMaxFailures = sessionPool.getInt(MAX_FAILURES, 3);
+
+    ConfigSection provisioning = getSection(PROVISIONING);
+    this.provisioningEnabled = provisioning.getBoolean(ENABLED, false);
+    this.provisioningDepth = provisioning.getInt(DEPTH, 1);
+  }
+
+  /**
+   * Gets a resolved section, such as a platform's capabilities.
+   *
+   * @param name The section name, e.g. "android".
+   * @return The section, or an empty section if it does not exist.
+   */
+  public ConfigSection getSection(String name) {
+    ConfigSection section = sections.get(name);
+    return section != null ? section : ConfigSection.EMPTY;
+  }
+
+  /**
+   * Gets the devices registered for a platform.
+   *
+   * @param platform The platform ("android" or "ios").
+   * @return The registered devices, or an empty list if none are configured.
+   */
+  public List<Device> getDevices(String platform) {
+    List<Device> registered = devices.get(platform);
+    return registered != null ? registered : Collections.emptyList();
+  }
+
+  public String getAppiumUrl() {
+    return appiumUrl;
+  }
+
+  public int getImplicitWait() {
+    return implicitWait;
+  }
+
+  public int getExplicitWait() {
+    return explicitWait;
+  }
+
+  public boolean isScreenshotOnFailure() {
+    return screenshotOnFailure;
+  }
+
+  public int getDeviceLeaseTimeout() {
+    return deviceLeaseTimeout;
+  }
+
+  public boolean isWatchConfig() {
+    return watchConfig;
+  }
+
+  public boolean isSessionPoolEnabled() {
+    return sessionPoolEnabled;
+  }
+
+  public int getSessionPoolIdleTimeout() {
+    return sessionPoolIdleTimeout;
+  }
+
+  public int getSessionPoolMaxFailures() {
+    return sessionPoolMaxFailures;
+  }
+
+  public boolean isProvisioningEnabled() {
+    return provisioningEnabled;
+  }
+
+  public int getProvisioningDepth() {
+    return provisioningDepth;
+  }
+
+  /**
+   * Checks the snapshot for values that would break a running suite.
+   *
+   * @return The problems found, or an empty list if the snapshot is usable.
+   */
+  public List<String> validate() {
+    List<String> errors = new ArrayList<>();
+    if (!sections.containsKey(ANDROID) && !sections.containsKey(IOS)) {
+      errors.add("No \"android\" or \"ios\" section");
+    }
+    if (appiumUrl == null) {
+      errors.add("appiumServer.host and appiumServer.port are required");
+    } else {
+      try {
+        new URL(appiumUrl);
+      } catch (MalformedURLException e) {
+        errors.add("Invalid Appium URL " + appiumUrl + ": " + e.getMessage());
+      }
+    }
+    if (implicitWait < 0) {
+      errors.add("testSettings.implicitWait must not be negative");
+    }
+    if (explicitWait <= 0) {
+      errors.add("testSettings.explicitWait must be positive");
+    }
+    if (deviceLeaseTimeout <= 0) {
+      errors.add("testSettings.deviceLeaseTimeout must be positive");
+    }
+    if (sessionPoolIdleTimeout <= 0) {
+      errors.add("sessionPool.idleTimeoutSeconds must be positive");
+    }
+    if (sessionPoolMaxFailures < 1) {
+      errors.add("sessionPool.maxFailures must be at least 1");
+    }
+    if (provisioningDepth < 0) {
+      errors.add("provisioning.depth must not be negative");
+    }
+    String recordingMode = getSection("recording").getString("mode");
+    if (recordingMode != null && !recordingMode.matches("(?i)off|record|replay")) {
+      errors.add("recording.mode must be off, record or replay");
+    }
+    ConfigSection retry = getSection("retry");
+    if (retry.getInt("maxRetriesPerTest", 1) < 0 || retry.getInt("suiteBudget", 10) < 0) {
+      errors.add("retry.maxRetriesPerTest and retry.suiteBudget must not be negative");
+    }
+    ConfigSection frameRecorder = getSection("frameRecorder");
+    if (frameRecorder.getInt("frames", 10) <= 0
+        || frameRecorder.getInt("slotBytes", 64 * 1024) <= 0) {
+      errors.add("frameRecorder.frames and frameRecorder.slotBytes must be positive");
+    }
+    for (List<Device> platformDevices : devices.values()) {
+      for (Device device : platformDevices) {
+        if (device.getDeviceName() == null && device.getUdid() == null) {
+          errors.add("Device entries need a deviceName or udid");
+        }
+      }
+    }
+    return errors;
+  }
+
+  private static Map<String, List<Device>> parseDevices(JsonObject registry) {
+    Map<String, List<Device>> parsed = new HashMap<>();
+    if (registry == null) {
+      return parsed;
+    }
+    for (Map.Entry<String, JsonElement> platform : registry.entrySet()) {
+      List<Device> platformDevices = new ArrayList<>();
+      for (JsonElement entry : platform.getValue().getAsJsonArray()) {
+        ConfigSection device = new ConfigSection(entry.getAsJsonObject());
+        platformDevices.add(
+            new Device(
+                platform.getKey(),
+                device.getString(DEVICE_NAME),
+                device.getString(UDID),
+                device.getInteger(SYSTEM_PORT),
+                device.getInteger(WDA_LOCAL_PORT)));
+      }
+      parsed.put(platform.getKey(), Collections.unmodifiableList(platformDevices));
+    }
+    return parsed;
+  }
+}
@@ -0,0 +1,95 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Watches the configuration file for edits on a background thread and calls back when it changes.
+ * Bursts of events (editors often write a file in several steps) are collapsed into one callback.
+ */
+public class ConfigWatcher implements AutoCloseable {
+  private static final Logger logger = LoggerFactory.getLogger(ConfigWatcher.class);
+  private static final long DEBOUNCE_MILLIS = 250;
+
+  private final Path file;
+  private final Runnable onChange;
+  private final WatchService watchService;
+  private final Thread thread;
+
+  /**
+   * Creates a watcher for the given file.
+   *
+   * @param file The file to watch.
+   * @param onChange Called on the watcher thread after the file has changed.
+   * @throws IOException If the file's directory cannot be watched.
+   */
+  public ConfigWatcher(Path file, Runnable onChange) throws IOException {
+    this.file = file.toAbsolutePath();
+    this.onChange = onChange;
+    this.watchService = FileSystems.getDefault().newWatchService();
+    this.file
+        .getParent()
+        .register(
+            watchService,
+            StandardWatchEventKinds.ENTRY_CREATE,
+            StandardWatchEventKinds.ENTRY_MODIFY);
+    this.thread = new Thread(this::watch, "config-watcher");
+    this.thread.setDaemon(true);
+  }
+
+  /** Starts watching. */
+  public void start() {
+    thread.start();
+    logger.info("Watching {} for changes", file);
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+    thread.interrupt();
+  }
+
+  private void watch() {
+    try {
+      while (!Thread.currentThread().isInterrupted()) {
+        WatchKey key = watchService.take();
+        boolean changed = drain(key);
+        // Collect the rest of the burst before reloading
+        WatchKey next;
+        while ((next = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS)) != null) {
+          changed |= drain(next);
+        }
+        if (changed) {
+          try {
+            onChange.run();
+          } catch (RuntimeException e) {
+            logger.error("Config change handler failed", e);
+          }
+        }
+      }
+    } catch (InterruptedException | ClosedWatchServiceException e) {
+      logger.debug("Stopped watching {}", file);
+    }
+  }
+
+  private boolean drain(WatchKey key) {
+    boolean changed = false;
+    for (WatchEvent<?> event : key.pollEvents()) {
+      Object context = event.context();
+      if (context instanceof Path && file.getFileName().equals(context)) {
+        changed = true;
+      }
+    }
+    key.reset();
+    return changed;
+  }
+}
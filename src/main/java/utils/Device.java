@@ -0,0 +1,56 @@
+package utils;
+
+/**
+ * A device (or emulator/simulator) from the device registry in config.json, together with the
+ * driver ports that must be unique per device when sessions run in parallel.
+ */
+public final class Device {
+  private final String platform;
+  private final String deviceName;
+  private final String udid;
+  private final Integer systemPort;
+  private final Integer wdaLocalPort;
+
+  /**
+   * Creates a new device entry.
+   *
+   * @param platform The platform ("android" or "ios").
+   * @param deviceName The device name capability.
+   * @param udid The device UDID, or null to let Appium pick one.
+   * @param systemPort The UiAutomator2 system port (Android), or null.
+   * @param wdaLocalPort The WebDriverAgent local port (iOS), or null.
+   */
+  public Device(
+      String platform, String deviceName, String udid, Integer systemPort, Integer wdaLocalPort) {
+    this.platform = platform;
+    this.deviceName = deviceName;
+    this.udid = udid;
+    this.systemPort = systemPort;
+    this.wdaLocalPort = wdaLocalPort;
+  }
+
+  public String getPlatform() {
+    return platform;
+  }
+
+  public String getDeviceName() {
+    return deviceName;
+  }
+
+  public String getUdid() {
+    return udid;
+  }
+
+  public Integer getSystemPort() {
+    return systemPort;
+  }
+
+  public Integer getWdaLocalPort() {
+    return wdaLocalPort;
+  }
+
+  @Override
+  public String toString() {
+    return udid != null ? deviceName + " (" + udid + ")" : deviceName;
+  }
+}
@@ -0,0 +1,133 @@
+package utils;
+
+import exceptions.DriverException;
+import exceptions.SessionCreationException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Leases devices from the device registry to test worker threads so that parallel sessions never
+ * share a device or a driver port. A thread holds its lease from driver initialization until the
+ * driver is released.
+ */
+public class DeviceScheduler {
+  private static final Logger logger = LoggerFactory.getLogger(DeviceScheduler.class);
+  private static volatile DeviceScheduler instance;
+
+  private final Map<String, BlockingDeque<Device>> freeDevices = new ConcurrentHashMap<>();
+  private final long leaseTimeoutSeconds;
+
+  /**
+   * Creates a scheduler with the given lease timeout.
+   *
+   * @param leaseTimeoutSeconds How long a thread waits for a free device before failing.
+   */
+  DeviceScheduler(long leaseTimeoutSeconds) {
+    this.leaseTimeoutSeconds = leaseTimeoutSeconds;
+  }
+
+  /**
+   * Returns the singleton instance of the DeviceScheduler, configured from config.json.
+   *
+   * @return The singleton instance.
+   */
+  public static DeviceScheduler getInstance() {
+    if (instance == null) {
+      synchronized (DeviceScheduler.class) {
+        if (instance == null) {
+          instance = new DeviceScheduler(ConfigReader.getInstance().getDeviceLeaseTimeout());
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Leases a free device for the given platform, waiting until one becomes available.
+   *
+   * @param platform The platform ("android" or "ios").
+   * @return The leased device, or null if no devices are registered for the platform.
+   * @throws SessionCreationException If no device becomes free within the lease timeout.
+   * @throws DriverException If the thread is interrupted while waiting.
+   */
+  public Device lease(String platform) {
+    BlockingDeque<Device> devices = getFreeDevices(platform);
+    if (devices == null) {
+      return null;
+    }
+    try {
+      Device device = devices.pollFirst(leaseTimeoutSeconds, TimeUnit.SECONDS);
+      if (device == null) {
+        throw new SessionCreationException(
+            "No " + platform + " device became free within " + leaseTimeoutSeconds + " seconds");
+      }
+      logger.info("Leased device {} to thread {}", device, Thread.currentThread().getName());
+      return device;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new DriverException("Interrupted while waiting for a " + platform + " device", e);
+    }
+  }
+
+  /**
+   * Leases a free device for the given platform without waiting.
+   *
+   * @param platform The platform ("android" or "ios").
+   * @return The leased device, or null if none is free or no devices are registered.
+   */
+  public Device tryLease(String platform) {
+    BlockingDeque<Device> devices = getFreeDevices(platform);
+    Device device = devices != null ? devices.pollFirst() : null;
+    if (device != null) {
+      logger.info("Leased device {} to thread {}", device, Thread.currentThread().getName());
+    }
+    return device;
+  }
+
+  /**
+   * Returns a leased device to the registry. Recently used devices are handed out first, so warm
+   * pooled sessions on them are reused.
+   *
+   * @param device The device to return.
+   */
+  public void release(Device device) {
+    if (device == null) {
+      return;
+    }
+    getFreeDevices(device.getPlatform()).offerFirst(device);
+    logger.info("Released device {}", device);
+  }
+
+  /**
+   * Returns a device whose session broke to the registry. It is handed out after all other free
+   * devices, so a retried test runs on another device if one is free.
+   *
+   * @param device The device to return.
+   */
+  public void releaseLast(Device device) {
+    if (device == null) {
+      return;
+    }
+    getFreeDevices(device.getPlatform()).offerLast(device);
+    logger.info("Released device {} behind the other free devices", device);
+  }
+
+  private BlockingDeque<Device> getFreeDevices(String platform) {
+    String key = platform.toLowerCase();
+    BlockingDeque<Device> devices = freeDevices.get(key);
+    if (devices == null) {
+      List<Device> registered = ConfigReader.getInstance().getDevices(key);
+      if (registered.isEmpty()) {
+        return null;
+      }
+      devices = freeDevices.computeIfAbsent(key, k -> new LinkedBlockingDeque<>(registered));
+    }
+    return devices;
+  }
+}
@@ -1,5 +1,7 @@
 package utils;
 
+import exceptions.SessionCreationException;
+import io.appium.java_client.AppiumClientConfig;
 import io.appium.java_client.AppiumDriver;
 import io.appium.java_client.android.AndroidDriver;
 import io.appium.java_client.android.options.UiAutomator2Options;
@@ -9,125 +11,483 @@ import io.appium.java_client.remote.options.BaseOptions;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.time.Duration;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.http.HttpClient;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
  * Manages the Appium driver instance. This class is responsible for initializing and quitting the
- * driver.
+ * driver, and for leasing warm sessions from the {@link SessionPool} when pooling is enabled. The
+ * session of the calling thread is kept in its {@link SessionContext}.
  */
 public class DriverManager {
   private static final Logger logger = LoggerFactory.getLogger(DriverManager.class);
-  private static final ThreadLocal<AppiumDriver> driver = new ThreadLocal<>();
   private static final String ANDROID = "android";
   private static final String IOS = "ios";
 
   /**
-   * Initializes the Appium driver for the specified platform.
+   * Initializes the Appium driver for the specified platform. If devices are registered for the
+   * platform, a free device is leased to the calling thread first, blocking until one is available.
+   * When the session pool is enabled, a warm session with the same resolved capabilities is reused
+   * if one is idle.
+   *
+   * <p>When pre-provisioning is enabled, a session already being created in the background is taken
+   * instead and {@link #getDriver()} only blocks if it is not ready yet. Either way, creation of a
+   * session for the next test is then started on a free device.
    *
    * @param platform The platform to initialize the driver for ("android" or "ios").
    * @throws MalformedURLException If the Appium URL is invalid.
    */
   public static void initializeDriver(String platform) throws MalformedURLException {
-    if (driver.get() != null) {
+    SessionContext context = SessionContext.current();
+    if (context.driver != null || context.provisioned != null) {
       logger.warn("Driver already initialized. Quitting existing driver.");
+      String test = context.getTest();
       quitDriver();
+      context = SessionContext.current();
+      context.setTest(test);
     }
 
     ConfigReader config = ConfigReader.getInstance();
     URL appiumUrl = new URL(config.getAppiumUrl());
 
     logger.info("Initializing driver for platform: {}", platform);
+    BaseOptions<?> options = buildOptions(platform);
+
+    if (config.isProvisioningEnabled()) {
+      ProvisionedSession spare = SessionProvisioner.getInstance().take(platform);
+      if (spare != null) {
+        logger.info("Using pre-provisioned session {}", spare);
+        context.device = spare.getDevice();
+        context.provisioned = spare;
+        prefetch(platform);
+        return;
+      }
+    }
+
+    Device leased = DeviceScheduler.getInstance().lease(platform);
+    context.device = leased;
+
+    try {
+      applyDevice(options, leased);
+      if (config.isSessionPoolEnabled()) {
+        PooledSession pooled =
+            SessionPool.getInstance()
+                .acquire(
+                    SessionKey.of(platform, options),
+                    getAppId(platform),
+                    () -> createDriver(platform, appiumUrl, options));
+        context.session = pooled;
+        context.driver = pooled.getDriver();
+      } else {
+        context.driver = createDriver(platform, appiumUrl, options);
+      }
+
+      setupImplicitWait(context.driver);
+      FrameRecorder.getInstance().start(context.driver);
+    } catch (RuntimeException e) {
+      quitDriver();
+      throw creationFailure(platform, leased, e);
+    }
+
+    if (config.isProvisioningEnabled()) {
+      prefetch(platform);
+    }
+  }
+
+  /**
+   * Starts creating a session for an upcoming test in the background, on a free device that has no
+   * warm pooled session. Does nothing if the provisioning depth is reached or no device is free.
+   *
+   * @param platform The target platform.
+   */
+  private static void prefetch(String platform) {
+    ConfigReader config = ConfigReader.getInstance();
+    SessionProvisioner provisioner = SessionProvisioner.getInstance();
+    URL appiumUrl;
+    try {
+      appiumUrl = new URL(config.getAppiumUrl());
+    } catch (MalformedURLException e) {
+      logger.warn("Cannot pre-provision session: invalid Appium URL", e);
+      return;
+    }
+    synchronized (provisioner) {
+      if (provisioner.getPendingCount(platform) >= config.getProvisioningDepth()) {
+        return;
+      }
+      Device spareDevice = DeviceScheduler.getInstance().tryLease(platform);
+      if (spareDevice == null) {
+        return;
+      }
+      BaseOptions<?> options = buildOptions(platform);
+      applyDevice(options, spareDevice);
+      SessionKey key = SessionKey.of(platform, options);
+      if (config.isSessionPoolEnabled() && SessionPool.getInstance().hasIdle(key)) {
+        DeviceScheduler.getInstance().release(spareDevice);
+        return;
+      }
+      provisioner.submit(
+          new ProvisionedSession(
+              platform,
+              spareDevice,
+              key,
+              getAppId(platform),
+              () -> setupImplicitWait(createDriver(platform, appiumUrl, options))));
+    }
+  }
+
+  /**
+   * Waits for the pre-provisioned session of the current thread and makes it the current driver. If
+   * background creation failed, the session is created synchronously on the same device instead.
+   *
+   * @param context The session context of the current thread.
+   * @param spare The pre-provisioned session.
+   */
+  private static void adopt(SessionContext context, ProvisionedSession spare) {
+    context.provisioned = null;
+    AppiumDriver created;
+    try {
+      created = SessionProvisioner.getInstance().awaitOrCreate(spare);
+    } catch (RuntimeException e) {
+      releaseDevice(context, false);
+      throw creationFailure(spare.getPlatform(), spare.getDevice(), e);
+    }
+
+    if (ConfigReader.getInstance().isSessionPoolEnabled()) {
+      context.session = SessionPool.getInstance().adopt(spare.getKey(), spare.getAppId(), created);
+    }
+    context.driver = created;
+    FrameRecorder.getInstance().start(created);
+  }
+
+  /**
+   * Points the capabilities at a leased device and its dedicated driver ports.
+   *
+   * @param options The options object to configure.
+   * @param leased The leased device, or null if no device registry is configured.
+   */
+  private static void applyDevice(BaseOptions<?> options, Device leased) {
+    if (leased == null) {
+      return;
+    }
+    if (leased.getDeviceName() != null) {
+      options.setCapability("appium:deviceName", leased.getDeviceName());
+    }
+    if (leased.getUdid() != null) {
+      options.setCapability("appium:udid", leased.getUdid());
+    }
+    if (leased.getSystemPort() != null) {
+      options.setCapability("appium:systemPort", leased.getSystemPort());
+    }
+    if (leased.getWdaLocalPort() != null) {
+      options.setCapability("appium:wdaLocalPort", leased.getWdaLocalPort());
+    }
+  }
+
+  /**
+   * Builds the capabilities for the specified platform from the configuration. All values are read
+   * from one config snapshot, so a concurrent config reload cannot mix old and new values.
+   *
+   * @param platform The target platform.
+   * @return The platform specific options.
+   */
+  private static BaseOptions<?> buildOptions(String platform) {
+    ConfigSection capabilities =
+        ConfigReader.getInstance().getSnapshot().getSection(platform.toLowerCase());
 
     if (ANDROID.equalsIgnoreCase(platform)) {
       UiAutomator2Options options = new UiAutomator2Options();
-      setCommonCapabilities(platform, options);
-      options.setAppPackage(config.getPlatformCapability(ANDROID, "appPackage"));
-      options.setAppActivity(config.getPlatformCapability(ANDROID, "appActivity"));
-      options.setAutoGrantPermissions(
-          config.getPlatformBooleanCapability(ANDROID, "autoGrantPermissions", true));
-
-      logger.info("Creating AndroidDriver with URL: {}", appiumUrl);
-      driver.set(new AndroidDriver(appiumUrl, options));
+      setCommonCapabilities(capabilities, options);
+      options.setAppPackage(capabilities.getString("appPackage"));
+      options.setAppActivity(capabilities.getString("appActivity"));
+      options.setAutoGrantPermissions(capabilities.getBoolean("autoGrantPermissions", true));
+      return options;
 
     } else if (IOS.equalsIgnoreCase(platform)) {
       XCUITestOptions options = new XCUITestOptions();
-      setCommonCapabilities(platform, options);
-      options.setBundleId(config.getPlatformCapability(IOS, "bundleId"));
-      options.setAutoAcceptAlerts(
-          config.getPlatformBooleanCapability(IOS, "autoAcceptAlerts", true));
+      setCommonCapabilities(capabilities, options);
+      options.setBundleId(capabilities.getString("bundleId"));
+      options.setAutoAcceptAlerts(capabilities.getBoolean("autoAcceptAlerts", true));
+      return options;
+    }
 
-      logger.info("Creating IOSDriver with URL: {}", appiumUrl);
-      driver.set(new IOSDriver(appiumUrl, options));
+    throw new IllegalArgumentException(
+        "Invalid platform: " + platform + ". Must be 'android' or 'ios'.");
+  }
 
+  /**
+   * Creates a new Appium session.
+   *
+   * @param platform The target platform.
+   * @param appiumUrl The Appium server URL.
+   * @param options The capabilities to create the session with.
+   * @return The new driver.
+   */
+  private static AppiumDriver createDriver(String platform, URL appiumUrl, BaseOptions<?> options) {
+    // All sessions to the server share one HTTP client and its pooled connections, and the session
+    // tape records their traffic or replays it instead of reaching the server
+    AppiumClientConfig clientConfig = SharedHttpClientFactory.clientConfig(appiumUrl);
+    HttpClient.Factory clientFactory =
+        SessionTape.getInstance().wrap(SharedHttpClientFactory.getInstance());
+    SessionCommandExecutor executor;
+    if (CommandMetrics.isEnabled()) {
+      // Every command of the session is timed into the histograms of its platform and device
+      Object device = options.getCapability("appium:udid");
+      if (device == null) {
+        device = options.getCapability("appium:deviceName");
+      }
+      executor =
+          new TimedCommandExecutor(
+              clientConfig,
+              clientFactory,
+              CommandMetrics.getInstance()
+                  .target(platform.toLowerCase(), device != null ? device.toString() : null));
     } else {
-      throw new IllegalArgumentException(
-          "Invalid platform: " + platform + ". Must be 'android' or 'ios'.");
+      executor = new SessionCommandExecutor(clientConfig, clientFactory);
     }
 
-    setupImplicitWait();
+    AppiumDriver driver;
+    if (ANDROID.equalsIgnoreCase(platform)) {
+      logger.info("Creating AndroidDriver with URL: {}", appiumUrl);
+      driver = new AndroidDriver(executor, options);
+    } else {
+      logger.info("Creating IOSDriver with URL: {}", appiumUrl);
+      driver = new IOSDriver(executor, options);
+    }
+    executor.bind(driver);
+    return driver;
   }
 
   /**
-   * Sets common capabilities for both Android and iOS.
+   * Gets the identifier of the app under test, used to reset it between pooled tests.
    *
    * @param platform The target platform.
-   * @param options The options object to configure.
+   * @return The app package (Android) or bundle id (iOS).
    */
-  private static void setCommonCapabilities(String platform, BaseOptions<?> options) {
-    ConfigReader config = ConfigReader.getInstance();
+  private static String getAppId(String platform) {
+    String key = ANDROID.equalsIgnoreCase(platform) ? "appPackage" : "bundleId";
+    return ConfigReader.getInstance().getPlatformCapability(platform.toLowerCase(), key);
+  }
 
-    options.setPlatformName(config.getPlatformCapability(platform, "platformName"));
-    options.setPlatformVersion(config.getPlatformCapability(platform, "platformVersion"));
-    options.setAutomationName(config.getPlatformCapability(platform, "automationName"));
+  /**
+   * Sets common capabilities for both Android and iOS.
+   *
+   * @param capabilities The platform section of the configuration.
+   * @param options The options object to configure.
+   */
+  private static void setCommonCapabilities(ConfigSection capabilities, BaseOptions<?> options) {
+    options.setPlatformName(capabilities.getString("platformName"));
+    options.setPlatformVersion(capabilities.getString("platformVersion"));
+    options.setAutomationName(capabilities.getString("automationName"));
 
-    options.setCapability(
-        "appium:deviceName", config.getPlatformCapability(platform, "deviceName"));
-    options.setCapability("appium:app", config.getPlatformCapability(platform, "app"));
-    options.setCapability(
-        "appium:noReset", config.getPlatformBooleanCapability(platform, "noReset", false));
-    options.setCapability(
-        "appium:fullReset", config.getPlatformBooleanCapability(platform, "fullReset", false));
+    options.setCapability("appium:deviceName", capabilities.getString("deviceName"));
+    options.setCapability("appium:app", capabilities.getString("app"));
+    options.setCapability("appium:noReset", capabilities.getBoolean("noReset", false));
+    options.setCapability("appium:fullReset", capabilities.getBoolean("fullReset", false));
 
-    int timeout = config.getPlatformIntCapability(platform, "newCommandTimeout", 300);
+    int timeout = capabilities.getInt("newCommandTimeout", 300);
     options.setCapability("appium:newCommandTimeout", timeout);
   }
 
-  /** Sets the implicit wait for the current driver instance. */
-  private static void setupImplicitWait() {
-    AppiumDriver currentDriver = getDriver();
-    if (currentDriver != null) {
-      int implicitWait = ConfigReader.getInstance().getImplicitWait();
-      currentDriver.manage().timeouts().implicitlyWait(Duration.ofSeconds(implicitWait));
-      logger.info(
-          "Driver initialized successfully with implicit wait of {} seconds.", implicitWait);
-    }
+  /**
+   * Sets the implicit wait for a driver instance.
+   *
+   * @param currentDriver The driver to configure.
+   * @return The same driver.
+   */
+  private static AppiumDriver setupImplicitWait(AppiumDriver currentDriver) {
+    int implicitWait = ConfigReader.getInstance().getImplicitWait();
+    currentDriver.manage().timeouts().implicitlyWait(Duration.ofSeconds(implicitWait));
+    logger.info("Driver initialized successfully with implicit wait of {} seconds.", implicitWait);
+    return currentDriver;
   }
 
   /**
-   * Gets the current Appium driver instance.
+   * Gets the current Appium driver instance. If the driver is a pre-provisioned session that is
+   * still being created, this blocks until it is ready.
    *
    * @return The Appium driver.
    * @throws IllegalStateException If the driver is not initialized.
    */
   public static AppiumDriver getDriver() {
-    if (driver.get() == null) {
-      throw new IllegalStateException("Driver not initialized. Call initializeDriver() first.");
+    SessionContext context = SessionContext.peek();
+    if (context == null || context.driver == null) {
+      ProvisionedSession spare = context != null ? context.provisioned : null;
+      if (spare == null) {
+        throw new IllegalStateException("Driver not initialized. Call initializeDriver() first.");
+      }
+      adopt(context, spare);
     }
-    return driver.get();
+    return context.driver;
   }
 
-  /** Quits the Appium driver and removes it from the ThreadLocal storage. */
+  /**
+   * Gets the current Appium driver if one is bound to the thread, without waiting for a
+   * pre-provisioned session.
+   *
+   * @return The Appium driver, or null if none is bound yet.
+   */
+  public static AppiumDriver getCurrentDriver() {
+    SessionContext context = SessionContext.peek();
+    return context != null ? context.driver : null;
+  }
+
+  /**
+   * Gets the device leased to the current thread.
+   *
+   * @return The leased device, or null if no device registry is configured.
+   */
+  public static Device getDevice() {
+    SessionContext context = SessionContext.peek();
+    return context != null ? context.device : null;
+  }
+
+  /**
+   * Releases the current driver at the end of a test. Pooled sessions are handed back to the pool
+   * with an app reset; otherwise the driver is quit.
+   *
+   * @param testPassed Whether the test that used the driver passed.
+   */
+  public static void releaseDriver(boolean testPassed) {
+    SessionContext context = SessionContext.current();
+    adoptPending(context);
+    Device leased = context.device;
+    PooledSession pooled = context.session;
+    if (pooled == null) {
+      quitDriver();
+    } else {
+      // The app is reset on release, so the next test starts on a different screen
+      forgetSession(pooled.getDriver());
+      try {
+        SessionPool.getInstance().release(pooled, testPassed);
+      } finally {
+        context.session = null;
+        context.driver = null;
+        releaseDevice(context, false);
+      }
+    }
+
+    if (leased != null && ConfigReader.getInstance().isProvisioningEnabled()) {
+      prefetch(leased.getPlatform());
+    }
+  }
+
+  /** Quits the Appium driver, removes it from the session context and returns the leased device. */
   public static void quitDriver() {
-    if (driver.get() != null) {
+    quit("quit requested", false);
+  }
+
+  /**
+   * Discards the session of the current thread after an infrastructure failure. The session is
+   * evicted from the pool and quit, and its device is returned behind the other free devices, so a
+   * retried test gets a new session, on another device if one is free.
+   *
+   * @param reason Why the session is discarded.
+   */
+  public static void discardDriver(String reason) {
+    logger.warn("Discarding session: {}", reason);
+    quit(reason, true);
+  }
+
+  /**
+   * Quits the driver of the current thread and returns its device.
+   *
+   * @param reason Why the session is quit, recorded when it is evicted from the pool.
+   * @param deviceLast True to hand the device out after all other free devices.
+   */
+  private static void quit(String reason, boolean deviceLast) {
+    SessionContext context = SessionContext.current();
+    adoptPending(context);
+    if (context.driver != null) {
       try {
         logger.info("Quitting driver.");
-        driver.get().quit();
+        forgetSession(context.driver);
+        PooledSession pooled = context.session;
+        if (pooled != null) {
+          SessionPool.getInstance().evict(pooled, reason);
+        } else {
+          context.driver.quit();
+        }
         logger.info("Driver quit successfully.");
       } catch (Exception e) {
         logger.error("Error while quitting driver", e);
       } finally {
-        driver.remove();
+        context.session = null;
+        context.driver = null;
+      }
+    }
+    releaseDevice(context, deviceLast);
+  }
+
+  /**
+   * Drops everything the framework keeps per session: its page snapshot, geometry, cached elements
+   * and frame recording. These hold on to the driver, so they are dropped whenever a session is
+   * released, quit or evicted.
+   *
+   * @param driver The driver of the session.
+   */
+  static void forgetSession(SearchContext driver) {
+    PageSnapshotCache.getInstance().invalidate(driver);
+    GeometryCache.getInstance().invalidate(driver);
+    ElementCache.getInstance().invalidate(driver);
+    FrameRecorder.getInstance().stop(driver);
+  }
+
+  /**
+   * Returns the leased device of a session to the {@link DeviceScheduler} and unbinds the then
+   * empty context from the current thread.
+   *
+   * @param context The session context of the current thread.
+   * @param last True to hand the device out after all other free devices.
+   */
+  private static void releaseDevice(SessionContext context, boolean last) {
+    Device leased = context.device;
+    context.device = null;
+    SessionContext.releaseIfEmpty();
+    if (last) {
+      DeviceScheduler.getInstance().releaseLast(leased);
+    } else {
+      DeviceScheduler.getInstance().release(leased);
+    }
+  }
+
+  /**
+   * Wraps a WebDriver error from creating a session, so it is reported as a session creation
+   * failure with the device it happened on. Other errors are returned as they are.
+   *
+   * @param platform The target platform.
+   * @param leased The device the session was created on, or null.
+   * @param error The error.
+   * @return The error to throw.
+   */
+  private static RuntimeException creationFailure(
+      String platform, Device leased, RuntimeException error) {
+    if (!(error instanceof WebDriverException)) {
+      return error;
+    }
+    return new SessionCreationException(
+        "Could not create "
+            + platform.toLowerCase()
+            + " session"
+            + (leased != null ? " on " + leased : ""),
+        error);
+  }
+
+  /**
+   * Takes over a pre-provisioned session the current test never used, so that it is released or
+   * quit together with its device instead of being left running.
+   *
+   * @param context The session context of the current thread.
+   */
+  private static void adoptPending(SessionContext context) {
+    ProvisionedSession spare = context.provisioned;
+    if (spare != null) {
+      try {
+        adopt(context, spare);
+      } catch (RuntimeException e) {
+        logger.error("Pre-provisioned session {} could not be created", spare, e);
       }
     }
   }
@@ -0,0 +1,148 @@
+package utils;
+
+import io.appium.java_client.AppiumDriver;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openqa.selenium.By;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
+
+/**
+ * Caches the elements found by locator per session, so helpers that locate the same element again
+ * and again reuse its element id instead of sending another find command. Elements are handed out
+ * as {@link CachedElement}s: an id is used for as long as the server accepts it, and once it goes
+ * stale the element is found again with its locator on the next call. There is no other expiry,
+ * because a stale element costs a single extra find. The caches of a session are dropped when
+ * {@link DriverManager} releases or quits it or the {@link SessionPool} evicts it; sessions created
+ * outside DriverManager must be {@link #invalidate invalidated} by their owner.
+ *
+ * <p>Hits, misses and re-resolved stale elements are counted. Configured under {@code elementCache}
+ * in config.json; when disabled, every lookup is a plain find.
+ */
+public class ElementCache {
+  private static volatile ElementCache instance;
+
+  private final boolean enabled;
+  // Cached elements hold their driver, so a session stays here until it is invalidated
+  private final Map<SearchContext, Map<By, CachedElement>> sessions = new ConcurrentHashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong recoveries = new AtomicLong();
+
+  /**
+   * Creates a cache.
+   *
+   * @param enabled False to find every element on the server.
+   */
+  ElementCache(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /**
+   * Returns the singleton instance of the ElementCache, configured from config.json.
+   *
+   * @return The singleton instance.
+   */
+  public static ElementCache getInstance() {
+    if (instance == null) {
+      synchronized (ElementCache.class) {
+        if (instance == null) {
+          instance =
+              new ElementCache(
+                  ConfigReader.getInstance()
+                      .getSnapshot()
+                      .getSection("elementCache")
+                      .getBoolean("enabled", true));
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Gets the element a locator finds, reusing the one found before on the same session.
+   *
+   * @param driver The Appium driver.
+   * @param locator The locator.
+   * @return The element, re-resolved with the locator if it goes stale.
+   * @throws org.openqa.selenium.NoSuchElementException If the element is not cached and the locator
+   *     finds nothing.
+   */
+  public WebElement find(AppiumDriver driver, By locator) {
+    if (!enabled) {
+      misses.incrementAndGet();
+      return driver.findElement(locator);
+    }
+    Map<By, CachedElement> elements = sessionOf(driver);
+    CachedElement cached = elements.get(locator);
+    if (cached != null) {
+      hits.incrementAndGet();
+      return cached;
+    }
+    misses.incrementAndGet();
+    cached = new CachedElement(driver, locator, driver.findElement(locator), this);
+    elements.put(locator, cached);
+    return cached;
+  }
+
+  /**
+   * Drops all cached elements of a session, for example when the app is reset.
+   *
+   * @param driver The Appium driver.
+   */
+  public void invalidate(SearchContext driver) {
+    if (driver != null) {
+      sessions.remove(driver);
+    }
+  }
+
+  /**
+   * Gets the number of lookups answered from the cache.
+   *
+   * @return The number of hits.
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Gets the number of lookups that sent a find command.
+   *
+   * @return The number of misses.
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Gets the number of stale elements that were found again with their locator.
+   *
+   * @return The number of re-resolved elements.
+   */
+  public long getRecoveries() {
+    return recoveries.get();
+  }
+
+  /** Counts a stale element that was found again. */
+  void recordRecovery() {
+    recoveries.incrementAndGet();
+  }
+
+  /**
+   * Drops one cached element whose locator no longer finds anything.
+   *
+   * @param driver The Appium driver.
+   * @param locator The locator.
+   */
+  void forget(SearchContext driver, By locator) {
+    Map<By, CachedElement> elements = driver != null ? sessions.get(driver) : null;
+    if (elements != null) {
+      elements.remove(locator);
+    }
+  }
+
+  private Map<By, CachedElement> sessionOf(AppiumDriver driver) {
+    return sessions.computeIfAbsent(driver, key -> new ConcurrentHashMap<>());
+  }
+}
@@ -0,0 +1,83 @@
+package utils;
+
+import exceptions.DriverException;
+import exceptions.FailureCategory;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.TimeoutException;
+import org.openqa.selenium.NoSuchSessionException;
+import org.openqa.selenium.SessionNotCreatedException;
+import org.openqa.selenium.UnsupportedCommandException;
+import org.openqa.selenium.remote.UnreachableBrowserException;
+
+/**
+ * Decides whether a test failed because of the infrastructure or because of the test itself. The
+ * whole cause chain is searched, so an assertion or wait that failed because the session died is
+ * still recognized; the first infrastructure cause found decides the category. Anything else,
+ * including assertion errors, missing elements and wait timeouts, is a {@link FailureCategory#TEST}
+ * failure.
+ */
+public final class FailureClassifier {
+  // Appium errors reported as "unknown error" when the automation driver on the device is gone
+  private static final String[] SESSION_LOST_MESSAGES = {
+    "instrumentation process is not running",
+    "could not proxy command to the remote server",
+    "a session is either terminated or not started",
+    "socket hang up",
+    "econnrefused",
+    "econnreset"
+  };
+
+  private FailureClassifier() {}
+
+  /**
+   * Classifies a test failure.
+   *
+   * @param failure The error the test failed with, or null.
+   * @return The failure category; {@link FailureCategory#TEST} if nothing points at the
+   *     infrastructure.
+   */
+  public static FailureCategory classify(Throwable failure) {
+    Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (Throwable cause = failure; cause != null && seen.add(cause); cause = cause.getCause()) {
+      FailureCategory category = categoryOf(cause);
+      if (category.isInfrastructure()) {
+        return category;
+      }
+    }
+    return FailureCategory.TEST;
+  }
+
+  private static FailureCategory categoryOf(Throwable error) {
+    if (error instanceof DriverException) {
+      return ((DriverException) error).getCategory();
+    }
+    if (error instanceof SessionNotCreatedException) {
+      return FailureCategory.SESSION_CREATION;
+    }
+    // A dead UiAutomator2 or XCUITest driver rejects every command it no longer knows
+    if (error instanceof NoSuchSessionException || error instanceof UnsupportedCommandException) {
+      return FailureCategory.SESSION_LOST;
+    }
+    if (error instanceof UnreachableBrowserException
+        || error instanceof IOException
+        || error instanceof UncheckedIOException
+        || error instanceof TimeoutException) {
+      return FailureCategory.TRANSPORT;
+    }
+    String message = error.getMessage();
+    if (message != null) {
+      String lower = message.toLowerCase(Locale.ROOT);
+      for (String lost : SESSION_LOST_MESSAGES) {
+        if (lower.contains(lost)) {
+          return FailureCategory.SESSION_LOST;
+        }
+      }
+    }
+    return FailureCategory.TEST;
+  }
+}
@@ -0,0 +1,316 @@
+package utils;
+
+import io.appium.java_client.AppiumDriver;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriverException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the last few frames of each session in memory, so a failure can be examined together with
+ * the screens that led up to it. Frames are captured on a background thread after every action and,
+ * optionally, at a fixed interval. They are downscaled and JPEG-encoded into fixed-size byte slots
+ * that are allocated once and reused by later sessions, so memory stays bounded at {@code frames *
+ * slotBytes} per recording session. Nothing is written unless {@link #flush} is called for a failed
+ * test; the recording is stopped when {@link DriverManager} releases or quits the session or the
+ * {@link SessionPool} evicts it. Sessions started outside DriverManager must be {@link #stop
+ * stopped} by their owner.
+ *
+ * <p>Opt-in through {@code frameRecorder.enabled} in config.json.
+ */
+public class FrameRecorder {
+  private static final Logger logger = LoggerFactory.getLogger(FrameRecorder.class);
+  private static volatile FrameRecorder instance;
+
+  private final boolean enabled;
+  private final int frames;
+  private final int slotBytes;
+  private final long intervalMillis;
+  private final int maxWidth;
+  private final float jpegQuality;
+  private final Path root;
+  // A ring holds its driver, so a session is recorded until it is stopped
+  private final Map<SearchContext, FrameRing> rings = new ConcurrentHashMap<>();
+  private final ConcurrentLinkedQueue<byte[]> freeSlots = new ConcurrentLinkedQueue<>();
+  private final ScheduledExecutorService capturer;
+  private final AtomicLong captured = new AtomicLong();
+  private final AtomicLong dropped = new AtomicLong();
+
+  /**
+   * Creates a recorder.
+   *
+   * @param enabled Whether sessions are recorded at all.
+   * @param frames The number of frames kept per session.
+   * @param slotBytes The size of one frame slot; larger frames are dropped.
+   * @param intervalMillis The capture interval, or 0 to capture after actions only.
+   * @param maxWidth The width frames are downscaled to.
+   * @param jpegQuality The JPEG quality between 0 and 1.
+   * @param root The directory flushed frames are written to.
+   */
+  FrameRecorder(
+      boolean enabled,
+      int frames,
+      int slotBytes,
+      long intervalMillis,
+      int maxWidth,
+      float jpegQuality,
+      Path root) {
+    this.enabled = enabled;
+    this.frames = frames;
+    this.slotBytes = slotBytes;
+    this.intervalMillis = intervalMillis;
+    this.maxWidth = maxWidth;
+    this.jpegQuality = jpegQuality;
+    this.root = root;
+    this.capturer =
+        enabled
+            ? Executors.newSingleThreadScheduledExecutor(
+                runnable -> {
+                  Thread thread = new Thread(runnable, "frame-recorder");
+                  thread.setDaemon(true);
+                  return thread;
+                })
+            : null;
+  }
+
+  /**
+   * Returns the singleton instance of the FrameRecorder, configured from config.json.
+   *
+   * @return The singleton instance.
+   */
+  public static FrameRecorder getInstance() {
+    if (instance == null) {
+      synchronized (FrameRecorder.class) {
+        if (instance == null) {
+          ConfigSection recorder =
+              ConfigReader.getInstance().getSnapshot().getSection("frameRecorder");
+          String dir = recorder.getString("dir");
+          // The startup config is only warned about, so sizes validate() rejects are clamped here
+          instance =
+              new FrameRecorder(
+                  recorder.getBoolean("enabled", false),
+                  Math.max(1, recorder.getInt("frames", 10)),
+                  Math.max(1, recorder.getInt("slotBytes", 64 * 1024)),
+                  recorder.getInt("intervalMs", 0),
+                  recorder.getInt("maxWidth", 360),
+                  (float) recorder.getDouble("jpegQuality", 0.6),
+                  Paths.get(dir != null ? dir : "reports/frames"));
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Starts recording a session. Does nothing if recording is disabled or the session is already
+   * recorded.
+   *
+   * @param driver The driver of the session.
+   */
+  public void start(AppiumDriver driver) {
+    if (!enabled || driver == null) {
+      return;
+    }
+    FrameRing ring = new FrameRing(driver);
+    if (rings.putIfAbsent(driver, ring) != null) {
+      return;
+    }
+    if (intervalMillis > 0) {
+      ring.schedule =
+          capturer.scheduleWithFixedDelay(
+              () -> capture(ring), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+    }
+    requestCapture(ring);
+  }
+
+  /**
+   * Records a frame after an action on a session. The frame is captured in the background; the
+   * request is ignored if a capture for the session is already pending.
+   *
+   * @param driver The driver of the session.
+   */
+  public void onAction(SearchContext driver) {
+    if (!enabled) {
+      return;
+    }
+    FrameRing ring = driver != null ? rings.get(driver) : null;
+    if (ring != null) {
+      requestCapture(ring);
+    }
+  }
+
+  /**
+   * Writes the recorded frames of a session to {@code <dir>/<test>/}, oldest first. The files are
+   * written by the {@link ScreenshotService} writer, so the caller does not wait for the disk.
+   *
+   * @param driver The driver of the session.
+   * @param test The test the frames belong to.
+   * @return The number of frames written.
+   */
+  public int flush(SearchContext driver, String test) {
+    FrameRing ring = enabled && driver != null ? rings.get(driver) : null;
+    if (ring == null) {
+      return 0;
+    }
+    List<Frame> recorded = ring.snapshot();
+    Path dir = root.resolve(test.replaceAll("[^A-Za-z0-9._#-]", "_"));
+    for (int i = 0; i < recorded.size(); i++) {
+      Frame frame = recorded.get(i);
+      ScreenshotService.getInstance()
+          .submit(dir.resolve(String.format("%02d-%d.jpg", i + 1, frame.timestamp)), frame.data);
+    }
+    logger.info("Flushed {} frame(s) of {} to {}", recorded.size(), test, dir);
+    return recorded.size();
+  }
+
+  /**
+   * Stops recording a session and returns its frame slots to the pool for the next session.
+   *
+   * @param driver The driver of the session.
+   */
+  public void stop(SearchContext driver) {
+    if (!enabled || driver == null) {
+      return;
+    }
+    FrameRing ring = rings.remove(driver);
+    if (ring != null) {
+      ring.close();
+    }
+  }
+
+  /**
+   * Gets the number of frames captured.
+   *
+   * @return The number of frames captured.
+   */
+  public long getCaptured() {
+    return captured.get();
+  }
+
+  /**
+   * Gets the number of frames that could not be kept because they did not fit a slot.
+   *
+   * @return The number of dropped frames.
+   */
+  public long getDropped() {
+    return dropped.get();
+  }
+
+  private void requestCapture(FrameRing ring) {
+    if (ring.pending.compareAndSet(false, true)) {
+      capturer.execute(
+          () -> {
+            ring.pending.set(false);
+            capture(ring);
+          });
+    }
+  }
+
+  private void capture(FrameRing ring) {
+    if (ring.closed) {
+      return;
+    }
+    try {
+      byte[] png = ring.driver.getScreenshotAs(OutputType.BYTES);
+      byte[] frame = ScreenshotStore.encode(png, maxWidth, "jpg", jpegQuality);
+      if (frame.length > slotBytes) {
+        dropped.incrementAndGet();
+        logger.debug(
+            "Dropped a {} byte frame larger than the {} byte slot", frame.length, slotBytes);
+        return;
+      }
+      ring.add(frame);
+      captured.incrementAndGet();
+    } catch (WebDriverException | IOException e) {
+      // The session may have ended while the capture was queued
+      logger.debug("Frame capture failed: {}", e.getMessage());
+    }
+  }
+
+  private byte[] takeSlot() {
+    byte[] slot = freeSlots.poll();
+    return slot != null ? slot : new byte[slotBytes];
+  }
+
+  /** A recorded frame, copied out of its slot. */
+  private static final class Frame {
+    private final long timestamp;
+    private final byte[] data;
+
+    private Frame(long timestamp, byte[] data) {
+      this.timestamp = timestamp;
+      this.data = data;
+    }
+  }
+
+  /** The frames of one session: a circular buffer over fixed-size slots. */
+  private final class FrameRing {
+    private final AppiumDriver driver;
+    private final byte[][] slots = new byte[frames][];
+    private final int[] lengths = new int[frames];
+    private final long[] timestamps = new long[frames];
+    private final AtomicBoolean pending = new AtomicBoolean();
+    private int next;
+    private int count;
+    private volatile boolean closed;
+    private volatile ScheduledFuture<?> schedule;
+
+    private FrameRing(AppiumDriver driver) {
+      this.driver = driver;
+    }
+
+    private synchronized void add(byte[] frame) {
+      if (closed) {
+        return;
+      }
+      if (slots[next] == null) {
+        slots[next] = takeSlot();
+      }
+      System.arraycopy(frame, 0, slots[next], 0, frame.length);
+      lengths[next] = frame.length;
+      timestamps[next] = System.currentTimeMillis();
+      next = (next + 1) % frames;
+      count = Math.min(count + 1, frames);
+    }
+
+    private synchronized List<Frame> snapshot() {
+      List<Frame> copy = new ArrayList<>(count);
+      int oldest = (next - count + frames) % frames;
+      for (int i = 0; i < count; i++) {
+        int slot = (oldest + i) % frames;
+        copy.add(new Frame(timestamps[slot], Arrays.copyOf(slots[slot], lengths[slot])));
+      }
+      return copy;
+    }
+
+    private synchronized void close() {
+      closed = true;
+      if (schedule != null) {
+        schedule.cancel(false);
+      }
+      for (int i = 0; i < frames; i++) {
+        if (slots[i] != null) {
+          freeSlots.offer(slots[i]);
+          slots[i] = null;
+        }
+      }
+      count = 0;
+    }
+  }
+}
@@ -0,0 +1,137 @@
+package utils;
+
+import io.appium.java_client.AppiumDriver;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.Rectangle;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
+
+/**
+ * Caches screen geometry per session so gestures do not fetch it again for every action. The window
+ * size is kept until the screen is rotated; element rectangles are fetched with a single {@code
+ * getRect()} call (instead of {@code getLocation()} plus {@code getSize()}) and kept until the next
+ * action on the session. The number of round-trips saved is counted. The geometry of a session is
+ * dropped when {@link DriverManager} releases or quits it or the {@link SessionPool} evicts it.
+ */
+public class GeometryCache {
+  private static volatile GeometryCache instance;
+
+  // Element keys hold their driver, so a session stays here until it is invalidated
+  private final Map<SearchContext, SessionGeometry> sessions = new ConcurrentHashMap<>();
+  private final AtomicLong calls = new AtomicLong();
+  private final AtomicLong savedCalls = new AtomicLong();
+
+  private GeometryCache() {}
+
+  /**
+   * Returns the singleton instance of the GeometryCache.
+   *
+   * @return The singleton instance.
+   */
+  public static GeometryCache getInstance() {
+    if (instance == null) {
+      synchronized (GeometryCache.class) {
+        if (instance == null) {
+          instance = new GeometryCache();
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Gets the window size of a session, fetching it only on first use or after a rotation.
+   *
+   * @param driver The Appium driver.
+   * @return The window size.
+   */
+  public Dimension getWindowSize(AppiumDriver driver) {
+    SessionGeometry geometry = sessionOf(driver);
+    Dimension size = geometry.windowSize;
+    if (size != null) {
+      savedCalls.incrementAndGet();
+      return size;
+    }
+    size = driver.manage().window().getSize();
+    calls.incrementAndGet();
+    geometry.windowSize = size;
+    return size;
+  }
+
+  /**
+   * Gets the on-screen rectangle of an element, fetching it with a single call unless it is cached
+   * since the last action on the session.
+   *
+   * @param driver The Appium driver.
+   * @param element The element.
+   * @return The element's rectangle.
+   */
+  public Rectangle getRect(AppiumDriver driver, WebElement element) {
+    Map<WebElement, Rectangle> rects = sessionOf(driver).rects;
+    Rectangle rect = rects.get(element);
+    if (rect != null) {
+      // A cache hit saves both getLocation() and getSize()
+      savedCalls.addAndGet(2);
+      return rect;
+    }
+    rect = element.getRect();
+    calls.incrementAndGet();
+    // One getRect() instead of getLocation() plus getSize()
+    savedCalls.incrementAndGet();
+    rects.put(element, rect);
+    return rect;
+  }
+
+  /**
+   * Forgets the element rectangles of a session, because an action may have moved elements.
+   *
+   * @param driver The Appium driver.
+   */
+  public void invalidateElements(SearchContext driver) {
+    SessionGeometry geometry = driver != null ? sessions.get(driver) : null;
+    if (geometry != null) {
+      geometry.rects.clear();
+    }
+  }
+
+  /**
+   * Forgets all geometry of a session, for example after the screen was rotated.
+   *
+   * @param driver The Appium driver.
+   */
+  public void invalidate(SearchContext driver) {
+    if (driver != null) {
+      sessions.remove(driver);
+    }
+  }
+
+  /**
+   * Gets the number of geometry round-trips made through the cache.
+   *
+   * @return The number of calls.
+   */
+  public long getCalls() {
+    return calls.get();
+  }
+
+  /**
+   * Gets the number of round-trips the cache avoided.
+   *
+   * @return The number of saved calls.
+   */
+  public long getSavedCalls() {
+    return savedCalls.get();
+  }
+
+  private SessionGeometry sessionOf(AppiumDriver driver) {
+    return sessions.computeIfAbsent(driver, key -> new SessionGeometry());
+  }
+
+  private static final class SessionGeometry {
+    private final Map<WebElement, Rectangle> rects = new ConcurrentHashMap<>();
+    private volatile Dimension windowSize;
+  }
+}
@@ -0,0 +1,270 @@
+package utils;
+
+import io.appium.java_client.AppiumDriver;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.interactions.Interaction;
+import org.openqa.selenium.interactions.Pause;
+import org.openqa.selenium.interactions.PointerInput;
+import org.openqa.selenium.interactions.Sequence;
+import org.openqa.selenium.json.Json;
+import org.openqa.selenium.remote.DriverCommand;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Fluent builder that queues gestures and sends them to the server in a single {@code perform}
+ * call. Gestures run one after another, as W3C action sequences with one sequence per finger. The
+ * sequences are kept tick-aligned: while one finger acts, the other is padded with zero-length
+ * pauses. This makes two-finger gestures such as pinch and zoom possible.
+ *
+ * <p>Timing is carried by the action durations and executed on the device, so performing a chain
+ * again, or replaying its {@link #toJson() JSON form} with {@link #replay(AppiumDriver, String)},
+ * reproduces it exactly.
+ *
+ * <pre>{@code
+ * GestureChain.on(driver).tap(button).pause(Duration.ofMillis(500)).swipe(from, to, d).perform();
+ * }</pre>
+ */
+public class GestureChain {
+  private static final Logger logger = LoggerFactory.getLogger(GestureChain.class);
+  private static final Duration TAP_DURATION = Duration.ofMillis(100);
+  private static final int FINGERS = 2;
+
+  private final AppiumDriver driver;
+  private final PointerInput[] fingers = new PointerInput[FINGERS];
+  private final List<List<Interaction>> actions = new ArrayList<>(FINGERS);
+  private int gestures;
+  private boolean multiTouch;
+
+  private GestureChain(AppiumDriver driver) {
+    this.driver = driver;
+    for (int i = 0; i < FINGERS; i++) {
+      fingers[i] = new PointerInput(PointerInput.Kind.TOUCH, "finger" + (i + 1));
+      actions.add(new ArrayList<>());
+    }
+  }
+
+  /**
+   * Starts a new, empty gesture chain.
+   *
+   * @param driver The Appium driver the chain is performed on.
+   * @return The chain.
+   */
+  public static GestureChain on(AppiumDriver driver) {
+    return new GestureChain(driver);
+  }
+
+  /**
+   * Queues a tap at a point.
+   *
+   * @param point The point in viewport coordinates.
+   * @return This chain.
+   */
+  public GestureChain tap(Point point) {
+    return press(moveTo(point), TAP_DURATION);
+  }
+
+  /**
+   * Queues a tap on the center of an element. The element's position is resolved by the server when
+   * the tap is executed, so no round-trip is needed to queue it.
+   *
+   * @param element The element to tap.
+   * @return This chain.
+   */
+  public GestureChain tap(WebElement element) {
+    return press(moveTo(element), TAP_DURATION);
+  }
+
+  /**
+   * Queues a long press at a point.
+   *
+   * @param point The point in viewport coordinates.
+   * @param duration How long to hold.
+   * @return This chain.
+   */
+  public GestureChain longPress(Point point, Duration duration) {
+    return press(moveTo(point), duration);
+  }
+
+  /**
+   * Queues a long press on the center of an element.
+   *
+   * @param element The element to press.
+   * @param duration How long to hold.
+   * @return This chain.
+   */
+  public GestureChain longPress(WebElement element, Duration duration) {
+    return press(moveTo(element), duration);
+  }
+
+  /**
+   * Queues a one-finger swipe.
+   *
+   * @param start The starting point in viewport coordinates.
+   * @param end The end point in viewport coordinates.
+   * @param duration The duration of the move.
+   * @return This chain.
+   */
+  public GestureChain swipe(Point start, Point end, Duration duration) {
+    PointerInput finger = fingers[0];
+    return step(
+        Arrays.asList(
+            finger.createPointerMove(
+                Duration.ZERO, PointerInput.Origin.viewport(), start.x, start.y),
+            finger.createPointerDown(PointerInput.MouseButton.LEFT.asArg()),
+            finger.createPointerMove(duration, PointerInput.Origin.viewport(), end.x, end.y),
+            finger.createPointerUp(PointerInput.MouseButton.LEFT.asArg())),
+        Collections.emptyList());
+  }
+
+  /**
+   * Queues a pause between two gestures.
+   *
+   * @param duration The length of the pause.
+   * @return This chain.
+   */
+  public GestureChain pause(Duration duration) {
+    return step(
+        Collections.singletonList(new Pause(fingers[0], duration)), Collections.emptyList());
+  }
+
+  /**
+   * Queues a two-finger gesture: both fingers touch down on a horizontal line through the center
+   * and move symmetrically until they are the given distance apart. An end distance smaller than
+   * the start distance pinches (zooms out); a larger one spreads (zooms in).
+   *
+   * @param center The center of the gesture in viewport coordinates.
+   * @param startDistance The distance between the fingers when they touch down.
+   * @param endDistance The distance between the fingers when they lift.
+   * @param duration The duration of the move.
+   * @return This chain.
+   */
+  public GestureChain pinch(Point center, int startDistance, int endDistance, Duration duration) {
+    multiTouch = true;
+    return step(
+        pinchFinger(fingers[0], center, -startDistance / 2, -endDistance / 2, duration),
+        pinchFinger(fingers[1], center, startDistance / 2, endDistance / 2, duration));
+  }
+
+  /**
+   * Gets the number of gestures queued.
+   *
+   * @return The number of gestures.
+   */
+  public int size() {
+    return gestures;
+  }
+
+  /**
+   * Builds the W3C action sequences for the queued gestures: one per finger in use.
+   *
+   * @return The action sequences.
+   */
+  public List<Sequence> build() {
+    int used = multiTouch ? FINGERS : 1;
+    List<Sequence> sequences = new ArrayList<>(used);
+    for (int i = 0; i < used; i++) {
+      Sequence sequence = new Sequence(fingers[i], 0);
+      actions.get(i).forEach(sequence::addAction);
+      sequences.add(sequence);
+    }
+    return sequences;
+  }
+
+  /**
+   * Sends all queued gestures in a single request. The chain is kept, so it can be performed again.
+   */
+  public void perform() {
+    if (gestures == 0) {
+      return;
+    }
+    logger.info(
+        "Performing {} gesture(s) in {} action sequence(s)", gestures, multiTouch ? FINGERS : 1);
+    driver.perform(build());
+  }
+
+  /**
+   * Serializes the queued gestures as the W3C actions payload. Gestures on elements refer to the
+   * elements of the current session, so only viewport-based chains can be replayed in another one.
+   *
+   * @return The actions as JSON.
+   */
+  public String toJson() {
+    List<Map<String, Object>> encoded = new ArrayList<>();
+    for (Sequence sequence : build()) {
+      encoded.add(sequence.encode());
+    }
+    return new Json().toJson(encoded);
+  }
+
+  /**
+   * Replays gestures serialized with {@link #toJson()} in a single request.
+   *
+   * @param driver The Appium driver.
+   * @param json The serialized actions.
+   */
+  public static void replay(AppiumDriver driver, String json) {
+    List<Map<String, Object>> actions = new Json().toType(json, Json.LIST_OF_MAPS_TYPE);
+    logger.info("Replaying {} action sequence(s)", actions.size());
+    driver.execute(DriverCommand.ACTIONS, Collections.singletonMap("actions", actions));
+  }
+
+  private GestureChain press(Interaction move, Duration hold) {
+    PointerInput finger = fingers[0];
+    return step(
+        Arrays.asList(
+            move,
+            finger.createPointerDown(PointerInput.MouseButton.LEFT.asArg()),
+            new Pause(finger, hold),
+            finger.createPointerUp(PointerInput.MouseButton.LEFT.asArg())),
+        Collections.emptyList());
+  }
+
+  private Interaction moveTo(Point point) {
+    return fingers[0].createPointerMove(
+        Duration.ZERO, PointerInput.Origin.viewport(), point.x, point.y);
+  }
+
+  private Interaction moveTo(WebElement element) {
+    return fingers[0].createPointerMove(
+        Duration.ZERO, PointerInput.Origin.fromElement(element), 0, 0);
+  }
+
+  private static List<Interaction> pinchFinger(
+      PointerInput finger, Point center, int startOffset, int endOffset, Duration duration) {
+    return Arrays.asList(
+        finger.createPointerMove(
+            Duration.ZERO, PointerInput.Origin.viewport(), center.x + startOffset, center.y),
+        finger.createPointerDown(PointerInput.MouseButton.LEFT.asArg()),
+        finger.createPointerMove(
+            duration, PointerInput.Origin.viewport(), center.x + endOffset, center.y),
+        finger.createPointerUp(PointerInput.MouseButton.LEFT.asArg()));
+  }
+
+  /**
+   * Appends one gesture, padding the shorter finger with zero-length pauses so that every finger
+   * has the same number of ticks and the next gesture starts on the same tick for all of them.
+   */
+  private GestureChain step(List<Interaction> first, List<Interaction> second) {
+    int ticks = Math.max(first.size(), second.size());
+    append(0, first, ticks);
+    append(1, second, ticks);
+    gestures++;
+    return this;
+  }
+
+  private void append(int finger, List<Interaction> interactions, int ticks) {
+    List<Interaction> sequence = actions.get(finger);
+    sequence.addAll(interactions);
+    for (int i = interactions.size(); i < ticks; i++) {
+      sequence.add(new Pause(fingers[finger], Duration.ZERO));
+    }
+  }
+}
@@ -1,21 +1,25 @@
 package utils;
 
 import io.appium.java_client.AppiumDriver;
+import io.appium.java_client.remote.SupportsRotation;
 import java.time.Duration;
-import java.util.Collections;
+import org.openqa.selenium.By;
 import org.openqa.selenium.Dimension;
 import org.openqa.selenium.Point;
+import org.openqa.selenium.Rectangle;
+import org.openqa.selenium.ScreenOrientation;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.interactions.Pause;
-import org.openqa.selenium.interactions.PointerInput;
-import org.openqa.selenium.interactions.Sequence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Utility class for performing touch gestures. */
+/**
+ * Utility class for performing touch gestures. Each method sends a single gesture; use {@link
+ * GestureChain} to send several gestures, or two-finger gestures, in one request.
+ */
 public class GestureHelper {
   private static final Logger logger = LoggerFactory.getLogger(GestureHelper.class);
   private static final Duration SWIPE_DURATION = Duration.ofMillis(1000);
+  private static final Duration PINCH_DURATION = Duration.ofMillis(500);
 
   /**
    * Swipes up on the screen.
@@ -23,7 +27,7 @@ public class GestureHelper {
    * @param driver The Appium driver.
    */
   public static void swipeUp(AppiumDriver driver) {
-    Dimension size = driver.manage().window().getSize();
+    Dimension size = GeometryCache.getInstance().getWindowSize(driver);
     int startX = size.width / 2;
     int startY = (int) (size.height * 0.8);
     int endY = (int) (size.height * 0.2);
@@ -36,7 +40,7 @@ public class GestureHelper {
    * @param driver The Appium driver.
    */
   public static void swipeDown(AppiumDriver driver) {
-    Dimension size = driver.manage().window().getSize();
+    Dimension size = GeometryCache.getInstance().getWindowSize(driver);
     int startX = size.width / 2;
     int startY = (int) (size.height * 0.2);
     int endY = (int) (size.height * 0.8);
@@ -49,7 +53,7 @@ public class GestureHelper {
    * @param driver The Appium driver.
    */
   public static void swipeLeft(AppiumDriver driver) {
-    Dimension size = driver.manage().window().getSize();
+    Dimension size = GeometryCache.getInstance().getWindowSize(driver);
     int startX = (int) (size.width * 0.8);
     int endX = (int) (size.width * 0.2);
     int y = size.height / 2;
@@ -62,7 +66,7 @@ public class GestureHelper {
    * @param driver The Appium driver.
    */
   public static void swipeRight(AppiumDriver driver) {
-    Dimension size = driver.manage().window().getSize();
+    Dimension size = GeometryCache.getInstance().getWindowSize(driver);
     int startX = (int) (size.width * 0.2);
     int endX = (int) (size.width * 0.8);
     int y = size.height / 2;
@@ -80,16 +84,7 @@ public class GestureHelper {
   public static void swipe(AppiumDriver driver, Point start, Point end, Duration duration) {
     try {
       logger.info("Swiping from {} to {} in {}ms", start, end, duration.toMillis());
-      PointerInput finger = new PointerInput(PointerInput.Kind.TOUCH, "finger");
-      Sequence swipe = new Sequence(finger, 1);
-      swipe.addAction(
-          finger.createPointerMove(
-              Duration.ZERO, PointerInput.Origin.viewport(), start.x, start.y));
-      swipe.addAction(finger.createPointerDown(PointerInput.MouseButton.LEFT.asArg()));
-      swipe.addAction(
-          finger.createPointerMove(duration, PointerInput.Origin.viewport(), end.x, end.y));
-      swipe.addAction(finger.createPointerUp(PointerInput.MouseButton.LEFT.asArg()));
-      driver.perform(Collections.singletonList(swipe));
+      GestureChain.on(driver).swipe(start, end, duration).perform();
     } catch (Exception e) {
       logger.error("Failed to perform swipe", e);
       throw e;
@@ -103,18 +98,10 @@ public class GestureHelper {
    * @param element The element to tap.
    */
   public static void tap(AppiumDriver driver, WebElement element) {
-    Point center = getCenter(element);
+    Point center = getCenter(driver, element);
     try {
       logger.info("Tapping on element at center: {}", center);
-      PointerInput finger = new PointerInput(PointerInput.Kind.TOUCH, "finger");
-      Sequence tap = new Sequence(finger, 1);
-      tap.addAction(
-          finger.createPointerMove(
-              Duration.ZERO, PointerInput.Origin.viewport(), center.x, center.y));
-      tap.addAction(finger.createPointerDown(PointerInput.MouseButton.LEFT.asArg()));
-      tap.addAction(new Pause(finger, Duration.ofMillis(100)));
-      tap.addAction(finger.createPointerUp(PointerInput.MouseButton.LEFT.asArg()));
-      driver.perform(Collections.singletonList(tap));
+      GestureChain.on(driver).tap(center).perform();
     } catch (Exception e) {
       logger.error("Failed to tap element", e);
       throw e;
@@ -129,19 +116,11 @@ public class GestureHelper {
    * @param duration The duration of the long press.
    */
   public static void longPress(AppiumDriver driver, WebElement element, Duration duration) {
-    Point center = getCenter(element);
+    Point center = getCenter(driver, element);
     try {
       logger.info(
           "Long pressing element at center {} for {} seconds", center, duration.getSeconds());
-      PointerInput finger = new PointerInput(PointerInput.Kind.TOUCH, "finger");
-      Sequence longPress = new Sequence(finger, 1);
-      longPress.addAction(
-          finger.createPointerMove(
-              Duration.ZERO, PointerInput.Origin.viewport(), center.x, center.y));
-      longPress.addAction(finger.createPointerDown(PointerInput.MouseButton.LEFT.asArg()));
-      longPress.addAction(new Pause(finger, duration));
-      longPress.addAction(finger.createPointerUp(PointerInput.MouseButton.LEFT.asArg()));
-      driver.perform(Collections.singletonList(longPress));
+      GestureChain.on(driver).longPress(center, duration).perform();
     } catch (Exception e) {
       logger.error("Failed to long press element", e);
       throw e;
@@ -149,7 +128,49 @@ public class GestureHelper {
   }
 
   /**
-   * Scrolls to an element by swiping up until the element is in view.
+   * Pinches on an element with two fingers, moving them from the element's edges towards its
+   * center.
+   *
+   * @param driver The Appium driver.
+   * @param element The element to pinch on.
+   */
+  public static void pinch(AppiumDriver driver, WebElement element) {
+    Rectangle rect = GeometryCache.getInstance().getRect(driver, element);
+    Point center = new Point(rect.x + rect.width / 2, rect.y + rect.height / 2);
+    try {
+      logger.info("Pinching on element at center {}", center);
+      GestureChain.on(driver)
+          .pinch(center, rect.width * 4 / 5, rect.width / 5, PINCH_DURATION)
+          .perform();
+    } catch (Exception e) {
+      logger.error("Failed to pinch element", e);
+      throw e;
+    }
+  }
+
+  /**
+   * Zooms into an element with two fingers, moving them from its center towards its edges.
+   *
+   * @param driver The Appium driver.
+   * @param element The element to zoom into.
+   */
+  public static void zoom(AppiumDriver driver, WebElement element) {
+    Rectangle rect = GeometryCache.getInstance().getRect(driver, element);
+    Point center = new Point(rect.x + rect.width / 2, rect.y + rect.height / 2);
+    try {
+      logger.info("Zooming into element at center {}", center);
+      GestureChain.on(driver)
+          .pinch(center, rect.width / 5, rect.width * 4 / 5, PINCH_DURATION)
+          .perform();
+    } catch (Exception e) {
+      logger.error("Failed to zoom element", e);
+      throw e;
+    }
+  }
+
+  /**
+   * Scrolls to an element by swiping up until the element is in view or the end of the list is
+   * reached.
    *
    * @param driver The Appium driver.
    * @param element The element to scroll to.
@@ -157,16 +178,8 @@ public class GestureHelper {
   public static void scrollToElement(AppiumDriver driver, WebElement element) {
     try {
       logger.info("Scrolling to element");
-      int maxScrolls = 10;
-      int scrollCount = 0;
-
-      while (!isElementInView(driver, element) && scrollCount < maxScrolls) {
-        swipeUp(driver);
-        scrollCount++;
-      }
-
-      if (scrollCount == maxScrolls) {
-        logger.warn("Element not found after {} scrolls", maxScrolls);
+      if (!ScrollEngine.scrollTo(driver, element)) {
+        logger.warn("Element not in view after scrolling to the end of the list");
       }
     } catch (Exception e) {
       logger.error("Failed to scroll to element", e);
@@ -174,17 +187,44 @@ public class GestureHelper {
     }
   }
 
-  private static Point getCenter(WebElement element) {
-    Point location = element.getLocation();
-    Dimension size = element.getSize();
-    return new Point(location.x + size.width / 2, location.y + size.height / 2);
+  /**
+   * Scrolls to an element that may not exist yet, such as a row of a lazily rendered list. Uses
+   * native scrolling when the locator allows it, and swipes otherwise.
+   *
+   * @param driver The Appium driver.
+   * @param locator The locator of the element.
+   * @return The element, once it is displayed.
+   */
+  public static WebElement scrollToElement(AppiumDriver driver, By locator) {
+    try {
+      logger.info("Scrolling to element with locator {}", locator);
+      return ScrollEngine.scrollTo(driver, locator);
+    } catch (Exception e) {
+      logger.error("Failed to scroll to element with locator {}", locator, e);
+      throw e;
+    }
   }
 
-  private static boolean isElementInView(AppiumDriver driver, WebElement element) {
+  /**
+   * Rotates the screen and drops the cached window size, which changes with the orientation.
+   *
+   * @param driver The Appium driver.
+   * @param orientation The new orientation.
+   */
+  public static void rotate(AppiumDriver driver, ScreenOrientation orientation) {
     try {
-      return element.isDisplayed();
+      logger.info("Rotating screen to {}", orientation);
+      ((SupportsRotation) driver).rotate(orientation);
     } catch (Exception e) {
-      return false;
+      logger.error("Failed to rotate screen", e);
+      throw e;
+    } finally {
+      GeometryCache.getInstance().invalidate(driver);
     }
   }
+
+  private static Point getCenter(AppiumDriver driver, WebElement element) {
+    Rectangle rect = GeometryCache.getInstance().getRect(driver, element);
+    return new Point(rect.x + rect.width / 2, rect.y + rect.height / 2);
+  }
 }
@@ -0,0 +1,260 @@
+package utils;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import org.openqa.selenium.By;
+
+/**
+ * Answers locator queries against a page source in a single streaming (StAX) pass. Only the
+ * elements that match are materialized, so memory stays flat however large the hierarchy is, and
+ * first-match queries stop reading as soon as they find something.
+ *
+ * <p>Id, accessibility id and class name locators are always streamable. XPath is streamable for
+ * the common {@code //tag[predicate and ...]} form, where a predicate is {@code @attr='value'},
+ * {@code contains(@attr, 'value')} or {@code starts-with(@attr, 'value')}; other expressions need a
+ * DOM and are left to the caller.
+ */
+public final class HierarchyReader {
+  private static final ThreadLocal<XMLInputFactory> factory =
+      ThreadLocal.withInitial(
+          () -> {
+            XMLInputFactory inputFactory = XMLInputFactory.newFactory();
+            inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+            inputFactory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+            return inputFactory;
+          });
+  private static final Pattern SIMPLE_XPATH = Pattern.compile("//([\\w.*-]+)((?:\\[.+])?)");
+  private static final Pattern PREDICATE =
+      Pattern.compile(
+          "\\s*(?:@([\\w:-]+)\\s*=\\s*(?:'([^']*)'|\"([^\"]*)\")"
+              + "|(contains|starts-with)\\(\\s*@([\\w:-]+)\\s*,\\s*(?:'([^']*)'|\"([^\"]*)\")\\s*\\))"
+              + "\\s*(and|])");
+
+  /** Decides whether the element the reader is positioned on matches a query. */
+  @FunctionalInterface
+  public interface ElementMatcher {
+
+    /**
+     * Tests the current start element.
+     *
+     * @param reader A reader positioned on a start element.
+     * @return True if the element matches.
+     */
+    boolean matches(XMLStreamReader reader);
+  }
+
+  private HierarchyReader() {}
+
+  /**
+   * Builds a streaming matcher for a locator.
+   *
+   * @param locator The locator.
+   * @return The matcher, or null if the locator cannot be evaluated in a single pass.
+   */
+  public static ElementMatcher matcherFor(By locator) {
+    if (!(locator instanceof By.Remotable)) {
+      return null;
+    }
+    By.Remotable.Parameters parameters = ((By.Remotable) locator).getRemoteParameters();
+    String value = String.valueOf(parameters.value());
+    switch (parameters.using()) {
+      case "id":
+        String suffix = ":id/" + value;
+        return reader -> {
+          String resourceId = attribute(reader, "resource-id");
+          if (resourceId != null) {
+            return resourceId.equals(value) || resourceId.endsWith(suffix);
+          }
+          // XCUITest has no resource ids and matches ids against the accessibility id
+          return value.equals(attribute(reader, "name"));
+        };
+      case "accessibility id":
+        return reader ->
+            value.equals(attribute(reader, "content-desc"))
+                || value.equals(attribute(reader, "name"));
+      case "class name":
+        return reader -> value.equals(reader.getLocalName());
+      case "xpath":
+        return compileXPath(value);
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Builds a matcher for elements whose text ({@code text}, {@code label} or {@code value}) equals
+   * the given text.
+   *
+   * @param text The exact text.
+   * @return The matcher.
+   */
+  public static ElementMatcher textMatcher(String text) {
+    return reader ->
+        text.equals(attribute(reader, "text"))
+            || text.equals(attribute(reader, "label"))
+            || text.equals(attribute(reader, "value"));
+  }
+
+  /**
+   * Streams over a page source and collects the matching elements in document order.
+   *
+   * @param source The page source as UTF-8 bytes.
+   * @param matcher The matcher to apply to each element.
+   * @param limit The maximum number of matches; reading stops once it is reached.
+   * @return The matching elements.
+   * @throws IllegalArgumentException If the page source is not well-formed XML.
+   */
+  public static List<SnapshotNode> find(byte[] source, ElementMatcher matcher, int limit) {
+    List<SnapshotNode> matches = new ArrayList<>();
+    XMLStreamReader reader = null;
+    try {
+      reader = factory.get().createXMLStreamReader(new ByteArrayInputStream(source), "UTF-8");
+      int index = 0;
+      int depth = 0;
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT) {
+          if (matcher.matches(reader)) {
+            matches.add(new SnapshotNode(index, depth, reader.getLocalName(), attributes(reader)));
+            if (matches.size() >= limit) {
+              break;
+            }
+          }
+          index++;
+          depth++;
+        } else if (event == XMLStreamConstants.END_ELEMENT) {
+          depth--;
+        }
+      }
+    } catch (XMLStreamException e) {
+      throw new IllegalArgumentException("Page source is not well-formed XML", e);
+    } finally {
+      close(reader);
+    }
+    return matches;
+  }
+
+  /**
+   * Counts the elements of a page source in a single streaming pass.
+   *
+   * @param source The page source as UTF-8 bytes.
+   * @return The number of elements.
+   */
+  public static int count(byte[] source) {
+    XMLStreamReader reader = null;
+    int count = 0;
+    try {
+      reader = factory.get().createXMLStreamReader(new ByteArrayInputStream(source), "UTF-8");
+      while (reader.hasNext()) {
+        if (reader.next() == XMLStreamConstants.START_ELEMENT) {
+          count++;
+        }
+      }
+    } catch (XMLStreamException e) {
+      throw new IllegalArgumentException("Page source is not well-formed XML", e);
+    } finally {
+      close(reader);
+    }
+    return count;
+  }
+
+  /**
+   * Compiles the streamable subset of XPath: a single descendant step with attribute predicates.
+   *
+   * @return The matcher, or null if the expression is outside the subset.
+   */
+  private static ElementMatcher compileXPath(String expression) {
+    Matcher step = SIMPLE_XPATH.matcher(expression.trim());
+    if (!step.matches()) {
+      return null;
+    }
+    String tag = step.group(1);
+    if (tag.contains("*") && !tag.equals("*")) {
+      return null;
+    }
+    List<ElementMatcher> predicates = new ArrayList<>();
+    String rest = step.group(2);
+    if (!rest.isEmpty()) {
+      Matcher predicate = PREDICATE.matcher(rest);
+      int position = 1;
+      while (position < rest.length()) {
+        predicate.region(position, rest.length());
+        if (!predicate.lookingAt()) {
+          return null;
+        }
+        predicates.add(predicate(predicate));
+        position = predicate.end();
+        if (predicate.group(8).equals("]")) {
+          break;
+        }
+      }
+      if (position != rest.length()) {
+        return null;
+      }
+    }
+    boolean anyTag = tag.equals("*");
+    return reader -> {
+      if (!anyTag && !tag.equals(reader.getLocalName())) {
+        return false;
+      }
+      for (ElementMatcher predicate : predicates) {
+        if (!predicate.matches(reader)) {
+          return false;
+        }
+      }
+      return true;
+    };
+  }
+
+  private static ElementMatcher predicate(Matcher predicate) {
+    if (predicate.group(1) != null) {
+      String name = predicate.group(1);
+      String value = predicate.group(2) != null ? predicate.group(2) : predicate.group(3);
+      return reader -> value.equals(attribute(reader, name));
+    }
+    String function = predicate.group(4);
+    String name = predicate.group(5);
+    String value = predicate.group(6) != null ? predicate.group(6) : predicate.group(7);
+    if (function.equals("contains")) {
+      return reader -> {
+        String actual = attribute(reader, name);
+        return actual != null && actual.contains(value);
+      };
+    }
+    return reader -> {
+      String actual = attribute(reader, name);
+      return actual != null && actual.startsWith(value);
+    };
+  }
+
+  private static String attribute(XMLStreamReader reader, String name) {
+    return reader.getAttributeValue(null, name);
+  }
+
+  private static Map<String, String> attributes(XMLStreamReader reader) {
+    Map<String, String> attributes = new LinkedHashMap<>();
+    for (int i = 0; i < reader.getAttributeCount(); i++) {
+      attributes.put(reader.getAttributeLocalName(i), reader.getAttributeValue(i));
+    }
+    return attributes;
+  }
+
+  private static void close(XMLStreamReader reader) {
+    if (reader != null) {
+      try {
+        reader.close();
+      } catch (XMLStreamException e) {
+        // Nothing to release for an in-memory source
+      }
+    }
+  }
+}
@@ -0,0 +1,84 @@
+package utils;
+
+import exceptions.FailureCategory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IRetryAnalyzer;
+import org.testng.ITestResult;
+
+/**
+ * Retries a test that failed because of the infrastructure, on a new session. The failure is
+ * classified by the {@link FailureClassifier}; failures of the test itself are never retried.
+ * Before a retry, the broken session is discarded with {@link DriverManager#discardDriver}, so it
+ * is neither reused from the pool nor kept by the device. Retries are bounded per test and per
+ * suite by the {@link RetryBudget}.
+ *
+ * <p>{@link InfraRetryTransformer} installs the analyzer on every test that has none.
+ */
+public class InfraRetryAnalyzer implements IRetryAnalyzer {
+  private static final Logger logger = LoggerFactory.getLogger(InfraRetryAnalyzer.class);
+
+  // TestNG keeps one analyzer per test method, shared by its parallel invocations
+  private final AtomicInteger retries = new AtomicInteger();
+  private final Supplier<RetryBudget> budget;
+
+  /** Creates an analyzer bounded by the {@link RetryBudget} configured in config.json. */
+  public InfraRetryAnalyzer() {
+    this(RetryBudget::getInstance);
+  }
+
+  /**
+   * Creates an analyzer bounded by the given budget.
+   *
+   * @param budget Supplies the budget when a test has failed.
+   */
+  InfraRetryAnalyzer(Supplier<RetryBudget> budget) {
+    this.budget = budget;
+  }
+
+  @Override
+  public boolean retry(ITestResult result) {
+    return retry(
+        result.getThrowable(),
+        TestTimingStore.getTestId(result.getMethod()),
+        result.getTestContext().getSuite().getName());
+  }
+
+  /**
+   * Decides whether a failed test is retried, and discards its session if so.
+   *
+   * @param failure The error the test failed with.
+   * @param test The id of the test.
+   * @param suite The name of the suite the test runs in.
+   * @return True if the test is retried.
+   */
+  boolean retry(Throwable failure, String test, String suite) {
+    FailureCategory category = FailureClassifier.classify(failure);
+    if (!category.isInfrastructure()) {
+      return false;
+    }
+    RetryBudget budget = this.budget.get();
+    if (retries.get() >= budget.getMaxRetriesPerTest()) {
+      logger.warn("{} failed with a {} failure again, not retrying it", test, category);
+      return false;
+    }
+    if (!budget.tryAcquire(suite)) {
+      logger.warn(
+          "{} failed with a {} failure, but the retry budget of suite {} is used up",
+          test,
+          category,
+          suite);
+      return false;
+    }
+    retries.incrementAndGet();
+    logger.warn(
+        "Retrying {} on a new session after a {} failure: {}",
+        test,
+        category,
+        failure.getMessage());
+    DriverManager.discardDriver(category + " failure in " + test);
+    return true;
+  }
+}
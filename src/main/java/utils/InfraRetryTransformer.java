@@ -0,0 +1,25 @@
+package utils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import org.testng.IAnnotationTransformer;
+import org.testng.annotations.ITestAnnotation;
+import org.testng.internal.annotations.DisabledRetryAnalyzer;
+
+/**
+ * Installs the {@link InfraRetryAnalyzer} on every test without a retry analyzer of its own. Must
+ * be registered as a listener in the suite file, since TestNG reads annotations before any other
+ * listener runs. Does nothing if retries are disabled in config.json.
+ */
+public class InfraRetryTransformer implements IAnnotationTransformer {
+
+  @Override
+  public void transform(
+      ITestAnnotation annotation, Class testClass, Constructor testConstructor, Method testMethod) {
+    Class<?> analyzer = annotation.getRetryAnalyzerClass();
+    if (RetryBudget.getInstance().isEnabled()
+        && (analyzer == null || analyzer == DisabledRetryAnalyzer.class)) {
+      annotation.setRetryAnalyzer(InfraRetryAnalyzer.class);
+    }
+  }
+}
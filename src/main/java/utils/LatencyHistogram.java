@@ -0,0 +1,106 @@
+package utils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with HDR-style log-linear buckets. Values are recorded in
+ * microseconds; every power of two is split into 32 linear sub-buckets, so percentiles are exact to
+ * within about 3% over the whole range (1 µs up to 38 hours) at a fixed 8 KB per histogram.
+ * Recording is a few atomic increments and never allocates.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 6;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+  private static final int SUB_BUCKET_HALF = SUB_BUCKET_COUNT / 2;
+  private static final int BUCKETS = 32;
+  static final long MAX_MICROS = (1L << (BUCKETS + SUB_BUCKET_BITS - 1)) - 1;
+
+  private final AtomicLongArray counts =
+      new AtomicLongArray(SUB_BUCKET_COUNT + (BUCKETS - 1) * SUB_BUCKET_HALF);
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalMicros = new AtomicLong();
+  private final AtomicLong maxMicros = new AtomicLong();
+
+  /**
+   * Records one latency.
+   *
+   * @param nanos The latency in nanoseconds.
+   */
+  public void record(long nanos) {
+    long micros = Math.min(MAX_MICROS, Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos)));
+    counts.incrementAndGet(indexOf(micros));
+    count.incrementAndGet();
+    totalMicros.addAndGet(micros);
+    maxMicros.accumulateAndGet(micros, Math::max);
+  }
+
+  /**
+   * Gets the number of recorded latencies.
+   *
+   * @return The number of values.
+   */
+  public long getCount() {
+    return count.get();
+  }
+
+  /**
+   * Gets the mean latency.
+   *
+   * @return The mean in milliseconds, or 0 if nothing was recorded.
+   */
+  public double getMeanMillis() {
+    long n = count.get();
+    return n == 0 ? 0 : totalMicros.get() / 1000.0 / n;
+  }
+
+  /**
+   * Gets the highest recorded latency.
+   *
+   * @return The maximum in milliseconds.
+   */
+  public double getMaxMillis() {
+    return maxMicros.get() / 1000.0;
+  }
+
+  /**
+   * Gets the latency at a percentile: the upper end of the bucket holding that rank.
+   *
+   * @param percentile The percentile, between 0 and 100.
+   * @return The latency in milliseconds, or 0 if nothing was recorded.
+   */
+  public double getPercentileMillis(double percentile) {
+    long n = count.get();
+    if (n == 0) {
+      return 0;
+    }
+    long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * n));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return Math.min(highestEquivalent(i), maxMicros.get()) / 1000.0;
+      }
+    }
+    return getMaxMillis();
+  }
+
+  private static int indexOf(long micros) {
+    // Bucket 0 covers 0..63 one by one; bucket b covers [32 << b, 64 << b) in steps of 1 << b
+    int bucket = Math.max(0, 63 - Long.numberOfLeadingZeros(micros) - (SUB_BUCKET_BITS - 1));
+    int subBucket = (int) (micros >>> bucket);
+    return bucket == 0
+        ? subBucket
+        : SUB_BUCKET_COUNT + (bucket - 1) * SUB_BUCKET_HALF + subBucket - SUB_BUCKET_HALF;
+  }
+
+  private static long highestEquivalent(int index) {
+    if (index < SUB_BUCKET_COUNT) {
+      return index;
+    }
+    int bucket = (index - SUB_BUCKET_COUNT) / SUB_BUCKET_HALF + 1;
+    int subBucket = (index - SUB_BUCKET_COUNT) % SUB_BUCKET_HALF + SUB_BUCKET_HALF;
+    return ((long) (subBucket + 1) << bucket) - 1;
+  }
+}
@@ -0,0 +1,41 @@
+package utils;
+
+import org.openqa.selenium.By;
+import org.openqa.selenium.WebElement;
+
+/** The locator that satisfied a multi-locator wait, and the element it found. */
+public final class LocatorMatch {
+  private final int index;
+  private final By locator;
+  private final WebElement element;
+
+  /**
+   * Creates a new match.
+   *
+   * @param index The position of the locator in the list passed to the wait.
+   * @param locator The locator that matched.
+   * @param element The first element found by the locator.
+   */
+  LocatorMatch(int index, By locator, WebElement element) {
+    this.index = index;
+    this.locator = locator;
+    this.element = element;
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public By getLocator() {
+    return locator;
+  }
+
+  public WebElement getElement() {
+    return element;
+  }
+
+  @Override
+  public String toString() {
+    return "#" + index + " " + locator;
+  }
+}
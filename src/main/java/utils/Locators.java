@@ -0,0 +1,102 @@
+package utils;
+
+import io.appium.java_client.AppiumDriver;
+import java.util.List;
+import org.openqa.selenium.By;
+import org.openqa.selenium.Platform;
+
+/**
+ * Translates locators into XPath so several of them can be evaluated with a single find call. Only
+ * strategies with a direct XPath equivalent on the platform's page source are translated.
+ */
+public final class Locators {
+
+  private Locators() {}
+
+  /**
+   * Checks whether a driver talks to an iOS (XCUITest) session.
+   *
+   * @param driver The Appium driver.
+   * @return True for iOS sessions.
+   */
+  public static boolean isIos(AppiumDriver driver) {
+    Platform platform = driver.getCapabilities().getPlatformName();
+    return platform != null && platform.is(Platform.IOS);
+  }
+
+  /**
+   * Converts a locator into an equivalent XPath expression.
+   *
+   * @param locator The locator to convert.
+   * @param ios Whether the expression targets an iOS page source.
+   * @return The XPath expression, or null if the locator has no XPath equivalent.
+   */
+  public static String toXPath(By locator, boolean ios) {
+    if (!(locator instanceof By.Remotable)) {
+      return null;
+    }
+    By.Remotable.Parameters parameters = ((By.Remotable) locator).getRemoteParameters();
+    String value = String.valueOf(parameters.value());
+    switch (parameters.using()) {
+      case "xpath":
+        return value;
+      case "class name":
+        return "//" + value;
+      case "accessibility id":
+        return "//*[@" + (ios ? "name" : "content-desc") + "=" + literal(value) + "]";
+      case "id":
+        if (ios) {
+          return "//*[@name=" + literal(value) + "]";
+        }
+        if (value.contains(":id/")) {
+          return "//*[@resource-id=" + literal(value) + "]";
+        }
+        // UiAutomator2 prefixes bare ids with the app package; XPath 1.0 has no ends-with()
+        String suffix = literal(":id/" + value);
+        return "//*[@resource-id="
+            + literal(value)
+            + " or substring(@resource-id, string-length(@resource-id) - string-length("
+            + suffix
+            + ") + 1) = "
+            + suffix
+            + "]";
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Combines XPath expressions into a single union expression. The operands are not parenthesized:
+   * path expressions bind tighter than {@code |}, and the XPath engine of JDK 21 rejects
+   * parenthesized union operands.
+   *
+   * @param expressions The expressions to combine.
+   * @return The union expression.
+   */
+  public static String union(List<String> expressions) {
+    StringBuilder union = new StringBuilder();
+    for (String expression : expressions) {
+      if (union.length() > 0) {
+        union.append(" | ");
+      }
+      union.append(expression);
+    }
+    return union.toString();
+  }
+
+  /**
+   * Quotes a string as an XPath 1.0 literal.
+   *
+   * @param value The string to quote.
+   * @return The XPath literal.
+   */
+  public static String literal(String value) {
+    if (!value.contains("'")) {
+      return "'" + value + "'";
+    }
+    if (!value.contains("\"")) {
+      return "\"" + value + "\"";
+    }
+    return "concat('" + value.replace("'", "', \"'\", '") + "')";
+  }
+}
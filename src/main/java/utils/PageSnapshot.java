@@ -0,0 +1,246 @@
+package utils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.xml.XMLConstants;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.xpath.XPathConstants;
+import javax.xml.xpath.XPathExpressionException;
+import javax.xml.xpath.XPathFactory;
+import org.openqa.selenium.By;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+
+/**
+ * An in-memory copy of one {@code getPageSource()} result. Only the UTF-8 bytes of the source are
+ * kept; locator queries are answered by a single streaming pass of {@link HierarchyReader}, and
+ * their results are memoized, so repeated queries against an unchanged screen are map lookups.
+ * XPath expressions outside the streamable subset fall back to a DOM that is built for the query
+ * and discarded afterwards, so large hierarchies are never held as a tree.
+ */
+public final class PageSnapshot {
+  private static final String INDEX_KEY = "snapshotIndex";
+
+  private final byte[] source;
+  private final long capturedAt;
+  private final Map<String, List<SnapshotNode>> results = new ConcurrentHashMap<>();
+
+  private PageSnapshot(byte[] source) {
+    this.source = source;
+    this.capturedAt = System.currentTimeMillis();
+  }
+
+  /**
+   * Wraps a page source in a snapshot. The source is not parsed until the first query.
+   *
+   * @param source The XML returned by {@code getPageSource()}.
+   * @return The snapshot.
+   */
+  public static PageSnapshot parse(String source) {
+    return new PageSnapshot(source.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /**
+   * Checks whether a locator can be evaluated on a snapshot.
+   *
+   * @param locator The locator.
+   * @return True for id, accessibility id, class name and XPath locators.
+   */
+  public static boolean supports(By locator) {
+    if (!(locator instanceof By.Remotable)) {
+      return false;
+    }
+    switch (((By.Remotable) locator).getRemoteParameters().using()) {
+      case "id":
+      case "accessibility id":
+      case "class name":
+      case "xpath":
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * Finds all nodes matching a locator, in document order.
+   *
+   * @param locator An id, accessibility id, class name or XPath locator.
+   * @return The matching nodes.
+   * @throws IllegalArgumentException If the locator strategy cannot be evaluated locally.
+   */
+  public List<SnapshotNode> find(By locator) {
+    if (!supports(locator)) {
+      throw new IllegalArgumentException(
+          "Locator cannot be evaluated on a page snapshot: " + locator);
+    }
+    By.Remotable.Parameters parameters = ((By.Remotable) locator).getRemoteParameters();
+    return results.computeIfAbsent(
+        key(parameters),
+        key -> {
+          HierarchyReader.ElementMatcher matcher = HierarchyReader.matcherFor(locator);
+          List<SnapshotNode> matches =
+              matcher != null
+                  ? HierarchyReader.find(source, matcher, Integer.MAX_VALUE)
+                  : evaluateXPath(String.valueOf(parameters.value()));
+          return Collections.unmodifiableList(matches);
+        });
+  }
+
+  /**
+   * Finds the first node matching a locator. Unless the locator was queried before, reading stops
+   * at the first match.
+   *
+   * @param locator An id, accessibility id, class name or XPath locator.
+   * @return The first matching node, or null if there is none.
+   */
+  public SnapshotNode findFirst(By locator) {
+    HierarchyReader.ElementMatcher matcher = HierarchyReader.matcherFor(locator);
+    if (matcher == null
+        || results.containsKey(key(((By.Remotable) locator).getRemoteParameters()))) {
+      List<SnapshotNode> matches = find(locator);
+      return matches.isEmpty() ? null : matches.get(0);
+    }
+    List<SnapshotNode> matches = HierarchyReader.find(source, matcher, 1);
+    return matches.isEmpty() ? null : matches.get(0);
+  }
+
+  /**
+   * Checks whether any node matches a locator.
+   *
+   * @param locator An id, accessibility id, class name or XPath locator.
+   * @return True if at least one node matches.
+   */
+  public boolean exists(By locator) {
+    return findFirst(locator) != null;
+  }
+
+  /**
+   * Finds all nodes whose text ({@code text}, {@code label} or {@code value}) equals the given
+   * text.
+   *
+   * @param text The exact text.
+   * @return The matching nodes.
+   */
+  public List<SnapshotNode> findByText(String text) {
+    return results.computeIfAbsent(
+        "text:" + text,
+        key ->
+            Collections.unmodifiableList(
+                HierarchyReader.find(
+                    source, HierarchyReader.textMatcher(text), Integer.MAX_VALUE)));
+  }
+
+  /**
+   * Counts the elements of the hierarchy.
+   *
+   * @return The number of elements.
+   */
+  public int size() {
+    return HierarchyReader.count(source);
+  }
+
+  /**
+   * Gets a hash of the page source, to tell cheaply whether the screen content changed.
+   *
+   * @return The hash of the source bytes.
+   */
+  public int contentHash() {
+    return Arrays.hashCode(source);
+  }
+
+  public String getSource() {
+    return new String(source, StandardCharsets.UTF_8);
+  }
+
+  public long getCapturedAt() {
+    return capturedAt;
+  }
+
+  private static String key(By.Remotable.Parameters parameters) {
+    return parameters.using() + ':' + parameters.value();
+  }
+
+  /**
+   * Evaluates an XPath expression on a DOM of the source, which every query outside the streamable
+   * subset falls back to.
+   *
+   * @param expression The XPath expression.
+   * @return The matching elements in document order.
+   * @throws IllegalArgumentException If the expression or the page source is invalid.
+   */
+  List<SnapshotNode> evaluateXPath(String expression) {
+    Document document = document();
+    NodeList result;
+    try {
+      result =
+          (NodeList)
+              XPathFactory.newInstance()
+                  .newXPath()
+                  .evaluate(expression, document, XPathConstants.NODESET);
+    } catch (XPathExpressionException e) {
+      throw new IllegalArgumentException("Invalid XPath expression: " + expression, e);
+    }
+    List<SnapshotNode> matches = new ArrayList<>(result.getLength());
+    for (int i = 0; i < result.getLength(); i++) {
+      Node node = result.item(i);
+      Object index = node.getUserData(INDEX_KEY);
+      if (index != null) {
+        matches.add(toSnapshotNode((Element) node, (Integer) index));
+      }
+    }
+    return matches;
+  }
+
+  /**
+   * Parses the source into a DOM, with each element tagged with its streaming index.
+   * Package-private so that the benchmarks can measure the heap a DOM fallback holds.
+   *
+   * @return The document.
+   * @throws IllegalArgumentException If the page source is not well-formed XML.
+   */
+  Document document() {
+    try {
+      DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+      factory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+      factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+      Document document = factory.newDocumentBuilder().parse(new ByteArrayInputStream(source));
+      // getElementsByTagName("*") lists elements in document order, matching streaming indexes
+      NodeList elements = document.getElementsByTagName("*");
+      for (int i = 0; i < elements.getLength(); i++) {
+        elements.item(i).setUserData(INDEX_KEY, i, null);
+      }
+      return document;
+    } catch (SAXException | IOException | ParserConfigurationException e) {
+      throw new IllegalArgumentException("Page source is not well-formed XML", e);
+    }
+  }
+
+  private static SnapshotNode toSnapshotNode(Element element, int index) {
+    Map<String, String> attributes = new LinkedHashMap<>();
+    NamedNodeMap domAttributes = element.getAttributes();
+    for (int i = 0; i < domAttributes.getLength(); i++) {
+      Node attribute = domAttributes.item(i);
+      attributes.put(attribute.getNodeName(), attribute.getNodeValue());
+    }
+    int depth = 0;
+    for (Node parent = element.getParentNode();
+        parent != null && parent.getNodeType() == Node.ELEMENT_NODE;
+        parent = parent.getParentNode()) {
+      depth++;
+    }
+    return new SnapshotNode(index, depth, element.getTagName(), attributes);
+  }
+}
@@ -0,0 +1,133 @@
+package utils;
+
+import io.appium.java_client.AppiumDriver;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.WrapsDriver;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps the latest {@link PageSnapshot} of each session, so several queries against an unchanged
+ * screen cost a single {@code getPageSource()} round-trip. The {@link SessionCommandExecutor} of a
+ * session invalidates its snapshot after every command that may change the screen, whether a
+ * framework helper or the test sent it; as a safety net for changes no command caused, such as
+ * animations or notifications, snapshots also expire after {@code pageSnapshot.maxAgeMs}. The
+ * snapshot of a session is dropped when {@link DriverManager} releases or quits it or the {@link
+ * SessionPool} evicts it.
+ */
+public class PageSnapshotCache {
+  private static final Logger logger = LoggerFactory.getLogger(PageSnapshotCache.class);
+  private static volatile PageSnapshotCache instance;
+
+  // Holds the driver as key, so a session stays here until it is invalidated
+  private final Map<SearchContext, PageSnapshot> snapshots = new ConcurrentHashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong fetches = new AtomicLong();
+
+  private PageSnapshotCache() {}
+
+  /**
+   * Returns the singleton instance of the PageSnapshotCache.
+   *
+   * @return The singleton instance.
+   */
+  public static PageSnapshotCache getInstance() {
+    if (instance == null) {
+      synchronized (PageSnapshotCache.class) {
+        if (instance == null) {
+          instance = new PageSnapshotCache();
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Gets the current snapshot of a session, fetching the page source if there is no valid one.
+   *
+   * @param driver The Appium driver.
+   * @return The snapshot.
+   */
+  public PageSnapshot get(AppiumDriver driver) {
+    PageSnapshot snapshot = snapshots.get(driver);
+    if (snapshot != null && !isExpired(snapshot)) {
+      hits.incrementAndGet();
+      return snapshot;
+    }
+    return refresh(driver);
+  }
+
+  /**
+   * Fetches and caches a fresh snapshot of a session.
+   *
+   * @param driver The Appium driver.
+   * @return The new snapshot.
+   */
+  public PageSnapshot refresh(AppiumDriver driver) {
+    long start = System.currentTimeMillis();
+    String source = driver.getPageSource();
+    PageSnapshot snapshot = PageSnapshot.parse(source);
+    fetches.incrementAndGet();
+    snapshots.put(driver, snapshot);
+    logger.debug(
+        "Captured page snapshot of {} chars in {} ms",
+        source.length(),
+        System.currentTimeMillis() - start);
+    return snapshot;
+  }
+
+  /**
+   * Discards the snapshot of a session, typically because an action changed the screen.
+   *
+   * @param driver The Appium driver.
+   */
+  public void invalidate(SearchContext driver) {
+    if (driver != null) {
+      snapshots.remove(driver);
+    }
+  }
+
+  /**
+   * Discards the snapshot of the session an element belongs to.
+   *
+   * @param element An element of the session.
+   */
+  public void invalidate(WebElement element) {
+    if (element instanceof WrapsDriver) {
+      invalidate(((WrapsDriver) element).getWrappedDriver());
+    } else {
+      snapshots.clear();
+    }
+  }
+
+  /**
+   * Gets the number of queries answered from a cached snapshot.
+   *
+   * @return The number of cache hits.
+   */
+  public long getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Gets the number of page sources fetched.
+   *
+   * @return The number of fetches.
+   */
+  public long getFetches() {
+    return fetches.get();
+  }
+
+  private static boolean isExpired(PageSnapshot snapshot) {
+    int maxAge =
+        ConfigReader.getInstance()
+            .getSnapshot()
+            .getSection("pageSnapshot")
+            .getInt("maxAgeMs", 5000);
+    return System.currentTimeMillis() - snapshot.getCapturedAt() > maxAge;
+  }
+}
@@ -0,0 +1,13 @@
+package utils;
+
+/** Decides how long {@link AdaptiveWait} sleeps between two polls of a wait condition. */
+public interface PollingStrategy {
+
+  /**
+   * Gets the delay before the next poll.
+   *
+   * @param polls The number of polls made so far (at least 1).
+   * @return The delay in milliseconds.
+   */
+  long nextDelayMillis(int polls);
+}
@@ -0,0 +1,65 @@
+package utils;
+
+import io.appium.java_client.AppiumDriver;
+
+/** A driver session owned by the {@link SessionPool}, together with its bookkeeping. */
+public class PooledSession {
+  private final SessionKey key;
+  private final AppiumDriver driver;
+  private final String appId;
+  private final long createdAt;
+  private volatile long lastReleasedAt;
+  private int failures;
+
+  /**
+   * Creates a new pooled session.
+   *
+   * @param key The capability set the session was created with.
+   * @param driver The live driver.
+   * @param appId The package (Android) or bundle id (iOS) used to reset the app between tests.
+   */
+  PooledSession(SessionKey key, AppiumDriver driver, String appId) {
+    this.key = key;
+    this.driver = driver;
+    this.appId = appId;
+    this.createdAt = System.currentTimeMillis();
+    this.lastReleasedAt = createdAt;
+  }
+
+  public SessionKey getKey() {
+    return key;
+  }
+
+  public AppiumDriver getDriver() {
+    return driver;
+  }
+
+  public String getAppId() {
+    return appId;
+  }
+
+  public long getCreatedAt() {
+    return createdAt;
+  }
+
+  long getLastReleasedAt() {
+    return lastReleasedAt;
+  }
+
+  void markReleased() {
+    lastReleasedAt = System.currentTimeMillis();
+  }
+
+  int recordFailure() {
+    return ++failures;
+  }
+
+  public int getFailures() {
+    return failures;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s (session %s)", key, driver.getSessionId());
+  }
+}
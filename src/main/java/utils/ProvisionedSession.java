@@ -0,0 +1,93 @@
+package utils;
+
+import io.appium.java_client.AppiumDriver;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * A session that is being created in the background by the {@link SessionProvisioner} on a device
+ * it has leased, ready to be handed to the next test that needs one.
+ */
+public class ProvisionedSession {
+  private final String platform;
+  private final Device device;
+  private final SessionKey key;
+  private final String appId;
+  private final Supplier<AppiumDriver> factory;
+  private volatile CompletableFuture<AppiumDriver> future;
+  private volatile long startedAt;
+  private volatile long completedAt;
+
+  /**
+   * Creates a new provisioned session that has not been started yet.
+   *
+   * @param platform The platform ("android" or "ios").
+   * @param device The device leased for the session.
+   * @param key The resolved capability set of the session.
+   * @param appId The package or bundle id of the app under test.
+   * @param factory Creates the driver; also used to retry synchronously if provisioning fails.
+   */
+  ProvisionedSession(
+      String platform,
+      Device device,
+      SessionKey key,
+      String appId,
+      Supplier<AppiumDriver> factory) {
+    this.platform = platform;
+    this.device = device;
+    this.key = key;
+    this.appId = appId;
+    this.factory = factory;
+  }
+
+  void start(CompletableFuture<AppiumDriver> future) {
+    this.startedAt = System.currentTimeMillis();
+    this.future = future.whenComplete((driver, error) -> completedAt = System.currentTimeMillis());
+  }
+
+  public String getPlatform() {
+    return platform;
+  }
+
+  public Device getDevice() {
+    return device;
+  }
+
+  public SessionKey getKey() {
+    return key;
+  }
+
+  public String getAppId() {
+    return appId;
+  }
+
+  Supplier<AppiumDriver> getFactory() {
+    return factory;
+  }
+
+  CompletableFuture<AppiumDriver> getFuture() {
+    return future;
+  }
+
+  /**
+   * Checks if the background session creation has finished, successfully or not.
+   *
+   * @return True if the session is ready to be used without blocking.
+   */
+  public boolean isDone() {
+    return future.isDone();
+  }
+
+  long getStartedAt() {
+    return startedAt;
+  }
+
+  long getCompletedAt() {
+    return completedAt;
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s on %s", key, device);
+  }
+}
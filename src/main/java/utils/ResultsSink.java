@@ -0,0 +1,318 @@
+package utils;
+
+import com.google.gson.JsonObject;
+import io.appium.java_client.AppiumDriver;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.openqa.selenium.remote.SessionId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestContext;
+import org.testng.ITestResult;
+
+/**
+ * Streams machine-readable test results to a JSON Lines file (reports/results.jsonl by default).
+ * Every test event becomes one JSON object on its own line, tagged with the run it belongs to, so
+ * the file can be tailed by a dashboard while the suite is running.
+ *
+ * <p>Test threads only build the record and add it to a lock-free queue; a single writer thread
+ * serializes the records and appends them, flushing after every batch. Parallel workers therefore
+ * never wait on each other or on the disk. {@link #close} writes what is left and closes the file;
+ * it runs at the end of the test run and, as a fallback, on shutdown. Configured under {@code
+ * results} in config.json.
+ */
+public class ResultsSink {
+  private static final Logger logger = LoggerFactory.getLogger(ResultsSink.class);
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(10);
+  private static volatile ResultsSink instance;
+
+  private final Path file;
+  private final String runId = Instant.now().toString();
+  private final ConcurrentLinkedQueue<JsonObject> queue = new ConcurrentLinkedQueue<>();
+  private final AtomicLong queued = new AtomicLong();
+  private final AtomicLong written = new AtomicLong();
+  private final Thread writer;
+  private volatile boolean writerIdle;
+  private volatile boolean enabled;
+  private volatile boolean closed;
+
+  /**
+   * Creates a sink that appends to the given file.
+   *
+   * @param file The results file, or null to discard all records.
+   */
+  ResultsSink(Path file) {
+    this.file = file;
+    this.enabled = file != null;
+    this.writer = new Thread(this::writeLoop, "results-writer");
+    this.writer.setDaemon(true);
+    if (enabled) {
+      this.writer.start();
+      Runtime.getRuntime().addShutdownHook(new Thread(this::close, "results-writer-shutdown"));
+    }
+  }
+
+  /**
+   * Returns the singleton instance of the ResultsSink, configured from config.json.
+   *
+   * @return The singleton instance.
+   */
+  public static ResultsSink getInstance() {
+    if (instance == null) {
+      synchronized (ResultsSink.class) {
+        if (instance == null) {
+          ConfigSection results = ConfigReader.getInstance().getSnapshot().getSection("results");
+          String file = results.getString("file");
+          instance =
+              new ResultsSink(
+                  results.getBoolean("enabled", true)
+                      ? Paths.get(file != null ? file : "reports/results.jsonl")
+                      : null);
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Records that a test started.
+   *
+   * @param result The result of the test.
+   */
+  public void testStarted(ITestResult result) {
+    JsonObject record = testRecord("start", result);
+    record.addProperty("start", result.getStartMillis());
+    emit(record);
+  }
+
+  /**
+   * Records that a test finished, with its status and timing and the device and session it ran on.
+   *
+   * @param result The result of the test.
+   * @param device The device the test ran on, or null if unknown.
+   * @param driver The driver the test used, or null if none was created.
+   */
+  public void testFinished(ITestResult result, Device device, AppiumDriver driver) {
+    JsonObject record = testRecord("end", result);
+    record.addProperty("status", status(result));
+    record.addProperty("start", result.getStartMillis());
+    record.addProperty("end", result.getEndMillis());
+    record.addProperty("durationMs", result.getEndMillis() - result.getStartMillis());
+    if (device != null) {
+      record.addProperty("device", device.getDeviceName());
+      record.addProperty("udid", device.getUdid());
+      if (!record.has("platform")) {
+        record.addProperty("platform", device.getPlatform());
+      }
+    }
+    SessionId sessionId = driver != null ? driver.getSessionId() : null;
+    if (sessionId != null) {
+      record.addProperty("session", sessionId.toString());
+    }
+    Throwable throwable = result.getThrowable();
+    if (throwable != null) {
+      record.addProperty("error", throwable.getClass().getName() + ": " + throwable.getMessage());
+      record.addProperty("category", FailureClassifier.classify(throwable).name());
+    }
+    if (result.wasRetried()) {
+      record.addProperty("retried", true);
+    }
+    emit(record);
+  }
+
+  /**
+   * Records where the screenshot of a test was stored.
+   *
+   * @param test The test id.
+   * @param screenshot The stored image file.
+   */
+  public void screenshot(String test, Path screenshot) {
+    JsonObject record = new JsonObject();
+    record.addProperty("event", "screenshot");
+    record.addProperty("test", test);
+    record.addProperty("screenshot", screenshot.toString().replace('\\', '/'));
+    emit(record);
+  }
+
+  /**
+   * Records the totals of a finished suite.
+   *
+   * @param context The context of the suite's test.
+   */
+  public void suiteFinished(ITestContext context) {
+    JsonObject record = new JsonObject();
+    record.addProperty("event", "suite");
+    record.addProperty("suite", context.getName());
+    record.addProperty("total", context.getAllTestMethods().length);
+    record.addProperty("passed", context.getPassedTests().size());
+    record.addProperty("failed", context.getFailedTests().size());
+    record.addProperty("skipped", context.getSkippedTests().size());
+    long end =
+        context.getEndDate() != null ? context.getEndDate().getTime() : System.currentTimeMillis();
+    record.addProperty("durationMs", end - context.getStartDate().getTime());
+    emit(record);
+  }
+
+  /**
+   * Queues a record to be written. The timestamp and run id are added to it.
+   *
+   * @param record The record.
+   */
+  public void emit(JsonObject record) {
+    if (!enabled || closed) {
+      return;
+    }
+    record.addProperty("ts", Instant.now().toString());
+    record.addProperty("run", runId);
+    queue.offer(record);
+    queued.incrementAndGet();
+    // Only wake the writer when it is parked, so busy producers do not pay for an unpark each
+    if (writerIdle) {
+      LockSupport.unpark(writer);
+    }
+  }
+
+  /**
+   * Waits until all queued records have been written.
+   *
+   * @param timeout The maximum time to wait.
+   * @return True if everything was written, false if the timeout expired first.
+   */
+  public boolean drain(Duration timeout) {
+    long deadline = System.nanoTime() + timeout.toNanos();
+    while (written.get() < queued.get()) {
+      if (!writer.isAlive() || System.nanoTime() >= deadline) {
+        logger.warn("{} result record(s) not written", queued.get() - written.get());
+        return false;
+      }
+      LockSupport.unpark(writer);
+      LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+    }
+    return true;
+  }
+
+  /**
+   * Writes the queued records, stops the writer and closes the file. Records emitted afterwards are
+   * discarded. Calling it again does nothing.
+   */
+  public void close() {
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+    }
+    if (!writer.isAlive()) {
+      return;
+    }
+    // The writer empties the queue before it sees the flag and closes the file
+    LockSupport.unpark(writer);
+    try {
+      writer.join(CLOSE_TIMEOUT.toMillis());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (writer.isAlive()) {
+      logger.warn(
+          "Results writer did not stop within {}, {} record(s) not written",
+          CLOSE_TIMEOUT,
+          queued.get() - written.get());
+    }
+  }
+
+  /**
+   * Gets the number of records written.
+   *
+   * @return The number of records written.
+   */
+  public long getWritten() {
+    return written.get();
+  }
+
+  private JsonObject testRecord(String event, ITestResult result) {
+    JsonObject record = new JsonObject();
+    record.addProperty("event", event);
+    record.addProperty("test", TestTimingStore.getTestId(result.getMethod()));
+    record.addProperty("thread", Thread.currentThread().getName());
+    String platform =
+        result.getTestContext() != null && result.getTestContext().getCurrentXmlTest() != null
+            ? result.getTestContext().getCurrentXmlTest().getParameter("platform")
+            : null;
+    if (platform != null) {
+      record.addProperty("platform", platform);
+    }
+    return record;
+  }
+
+  private static String status(ITestResult result) {
+    switch (result.getStatus()) {
+      case ITestResult.SUCCESS:
+        return "PASSED";
+      case ITestResult.FAILURE:
+        return "FAILED";
+      case ITestResult.SKIP:
+        return "SKIPPED";
+      case ITestResult.SUCCESS_PERCENTAGE_FAILURE:
+        return "PASSED_WITHIN_PERCENTAGE";
+      default:
+        return "UNKNOWN";
+    }
+  }
+
+  private void writeLoop() {
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+    } catch (IOException e) {
+      logger.error("Cannot create the results directory, results are discarded", e);
+      enabled = false;
+      return;
+    }
+    try (BufferedWriter out =
+        Files.newBufferedWriter(
+            file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+      boolean stopping = false;
+      while (!stopping) {
+        // Read the flag before polling, so records queued before close() are still written
+        stopping = closed;
+        JsonObject record = queue.poll();
+        if (record == null) {
+          if (stopping) {
+            break;
+          }
+          writerIdle = true;
+          // Check again after announcing, so a record queued in between is not left waiting
+          if (queue.isEmpty() && !closed) {
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+          }
+          writerIdle = false;
+          continue;
+        }
+        // Write everything that is queued, then flush once so a tailing reader sees the batch
+        int batch = 0;
+        while (record != null) {
+          out.write(record.toString());
+          out.newLine();
+          batch++;
+          record = queue.poll();
+        }
+        out.flush();
+        written.addAndGet(batch);
+      }
+    } catch (IOException e) {
+      logger.error("Failed to write results to {}, results are discarded", file, e);
+      enabled = false;
+    }
+  }
+}
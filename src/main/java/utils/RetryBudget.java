@@ -0,0 +1,118 @@
+package utils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounds how often {@link InfraRetryAnalyzer} retries tests after infrastructure failures. Each
+ * test is retried at most {@code maxRetriesPerTest} times, and all tests of a suite together at
+ * most {@code suiteBudget} times, so a broken device farm fails the suite quickly instead of
+ * retrying every test. Configured under {@code retry} in config.json.
+ */
+public class RetryBudget {
+  private static volatile RetryBudget instance;
+
+  private final boolean enabled;
+  private final int maxRetriesPerTest;
+  private final int suiteBudget;
+  private final Map<String, AtomicInteger> used = new ConcurrentHashMap<>();
+  private final AtomicLong denied = new AtomicLong();
+
+  /**
+   * Creates a budget.
+   *
+   * @param enabled False to never retry.
+   * @param maxRetriesPerTest How often a single test may be retried.
+   * @param suiteBudget How many retries all tests of a suite may use together.
+   */
+  RetryBudget(boolean enabled, int maxRetriesPerTest, int suiteBudget) {
+    this.enabled = enabled;
+    this.maxRetriesPerTest = maxRetriesPerTest;
+    this.suiteBudget = suiteBudget;
+  }
+
+  /**
+   * Returns the singleton instance of the RetryBudget, configured from config.json.
+   *
+   * @return The singleton instance.
+   */
+  public static RetryBudget getInstance() {
+    if (instance == null) {
+      synchronized (RetryBudget.class) {
+        if (instance == null) {
+          ConfigSection retry = ConfigReader.getInstance().getSnapshot().getSection("retry");
+          instance =
+              new RetryBudget(
+                  retry.getBoolean("enabled", true),
+                  retry.getInt("maxRetriesPerTest", 1),
+                  retry.getInt("suiteBudget", 10));
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Checks whether infrastructure failures are retried at all.
+   *
+   * @return True if retries are enabled.
+   */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Gets how often a single test may be retried.
+   *
+   * @return The retries per test.
+   */
+  public int getMaxRetriesPerTest() {
+    return maxRetriesPerTest;
+  }
+
+  /**
+   * Takes one retry from the budget of a suite.
+   *
+   * @param suite The suite name.
+   * @return True if the retry may run, false if the budget is used up.
+   */
+  public boolean tryAcquire(String suite) {
+    AtomicInteger count = used.computeIfAbsent(suite, key -> new AtomicInteger());
+    if (enabled && count.incrementAndGet() <= suiteBudget) {
+      return true;
+    }
+    denied.incrementAndGet();
+    return false;
+  }
+
+  /**
+   * Gets the number of retries a suite has used.
+   *
+   * @param suite The suite name.
+   * @return The retries used.
+   */
+  public int getUsed(String suite) {
+    AtomicInteger count = used.get(suite);
+    return count != null ? Math.min(count.get(), suiteBudget) : 0;
+  }
+
+  /**
+   * Gets how many retries all tests of a suite may use together.
+   *
+   * @return The suite budget.
+   */
+  public int getSuiteBudget() {
+    return suiteBudget;
+  }
+
+  /**
+   * Gets the number of retries that were refused because a suite budget was used up.
+   *
+   * @return The refused retries.
+   */
+  public long getDenied() {
+    return denied.get();
+  }
+}
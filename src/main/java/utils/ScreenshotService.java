@@ -0,0 +1,230 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.TakesScreenshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Captures screenshots without blocking the test thread on disk I/O. The screenshot is fetched as
+ * bytes on the calling thread, which is the only part that needs the session. Writing the file is
+ * handed to a background writer through a bounded queue. When the queue is full, the caller waits
+ * briefly and then writes the file itself, so screenshots are never dropped and memory stays
+ * bounded. {@link #drain(Duration)} waits for pending writes and is called when the suite finishes
+ * and from a shutdown hook.
+ */
+public class ScreenshotService {
+  private static final Logger logger = LoggerFactory.getLogger(ScreenshotService.class);
+  private static volatile ScreenshotService instance;
+
+  private final BlockingQueue<PendingWrite> queue;
+  private final long offerTimeoutMillis;
+  private final Object drained = new Object();
+  private final AtomicLong pending = new AtomicLong();
+  private final AtomicLong written = new AtomicLong();
+  private final AtomicLong writtenInline = new AtomicLong();
+  private final Thread writer;
+
+  /**
+   * Creates a service with the given queue settings.
+   *
+   * @param queueCapacity The number of screenshots that may wait to be written.
+   * @param offerTimeoutMillis How long a caller waits for queue space before writing itself.
+   */
+  ScreenshotService(int queueCapacity, long offerTimeoutMillis) {
+    this.queue = new ArrayBlockingQueue<>(queueCapacity);
+    this.offerTimeoutMillis = offerTimeoutMillis;
+    this.writer = new Thread(this::writeLoop, "screenshot-writer");
+    this.writer.setDaemon(true);
+    this.writer.start();
+    Runtime.getRuntime()
+        .addShutdownHook(
+            new Thread(() -> drain(Duration.ofSeconds(10)), "screenshot-writer-shutdown"));
+  }
+
+  /**
+   * Returns the singleton instance of the ScreenshotService, configured from config.json.
+   *
+   * @return The singleton instance.
+   */
+  public static ScreenshotService getInstance() {
+    if (instance == null) {
+      synchronized (ScreenshotService.class) {
+        if (instance == null) {
+          ConfigSection screenshots =
+              ConfigReader.getInstance().getSnapshot().getSection("screenshots");
+          instance =
+              new ScreenshotService(
+                  screenshots.getInt("queueCapacity", 32),
+                  screenshots.getInt("offerTimeoutMs", 2000));
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Takes a screenshot and queues it to be written.
+   *
+   * @param driver The driver to take the screenshot with.
+   * @param target The file to write the screenshot to.
+   * @return The target file, which exists once the write has completed.
+   */
+  public Path capture(TakesScreenshot driver, Path target) {
+    byte[] png = driver.getScreenshotAs(OutputType.BYTES);
+    submit(target, png);
+    return target;
+  }
+
+  /**
+   * Takes a screenshot and queues it for the content-addressed {@link ScreenshotStore}, where it is
+   * hashed, deduplicated and indexed under the given test.
+   *
+   * @param driver The driver to take the screenshot with.
+   * @param test The test (or other label) the screenshot belongs to.
+   * @return The stored image file, completed once the image has been written.
+   */
+  public CompletableFuture<Path> capture(TakesScreenshot driver, String test) {
+    byte[] png = driver.getScreenshotAs(OutputType.BYTES);
+    PendingWrite write = new PendingWrite(null, test, png);
+    enqueue(write);
+    return write.result;
+  }
+
+  /**
+   * Queues image bytes to be written to a file.
+   *
+   * @param target The file to write.
+   * @param data The bytes to write.
+   */
+  public void submit(Path target, byte[] data) {
+    enqueue(new PendingWrite(target, null, data));
+  }
+
+  private void enqueue(PendingWrite write) {
+    pending.incrementAndGet();
+    boolean queued;
+    try {
+      queued = queue.offer(write, offerTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      queued = false;
+    }
+    if (!queued) {
+      logger.warn("Screenshot queue is full, writing {} on the calling thread", write);
+      writtenInline.incrementAndGet();
+      write(write);
+    }
+  }
+
+  /**
+   * Waits until all queued screenshots have been written.
+   *
+   * @param timeout The maximum time to wait.
+   * @return True if everything was written, false if the timeout expired first.
+   */
+  public boolean drain(Duration timeout) {
+    long deadline = System.nanoTime() + timeout.toNanos();
+    synchronized (drained) {
+      while (pending.get() > 0) {
+        long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+        if (remaining <= 0) {
+          logger.warn(
+              "{} screenshot(s) still pending after {} ms", pending.get(), timeout.toMillis());
+          return false;
+        }
+        try {
+          drained.wait(remaining);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Gets the number of screenshots written.
+   *
+   * @return The number of screenshots written.
+   */
+  public long getWritten() {
+    return written.get();
+  }
+
+  /**
+   * Gets the number of screenshots the caller had to write itself because the queue was full.
+   *
+   * @return The number of inline writes.
+   */
+  public long getWrittenInline() {
+    return writtenInline.get();
+  }
+
+  private void writeLoop() {
+    while (true) {
+      try {
+        write(queue.take());
+      } catch (InterruptedException e) {
+        return;
+      }
+    }
+  }
+
+  private void write(PendingWrite write) {
+    try {
+      Path saved;
+      if (write.target == null) {
+        saved = ScreenshotStore.getInstance().store(write.test, write.data);
+      } else {
+        Path parent = write.target.toAbsolutePath().getParent();
+        if (parent != null) {
+          Files.createDirectories(parent);
+        }
+        saved = Files.write(write.target, write.data);
+      }
+      written.incrementAndGet();
+      logger.info("Screenshot saved to: {}", saved);
+      write.result.complete(saved);
+    } catch (IOException | RuntimeException e) {
+      // Never let one bad write end the writer thread, or every later future would hang
+      logger.error("Failed to write screenshot {}: {}", write, e.toString());
+      write.result.completeExceptionally(e);
+    } finally {
+      if (pending.decrementAndGet() == 0) {
+        synchronized (drained) {
+          drained.notifyAll();
+        }
+      }
+    }
+  }
+
+  /** A screenshot waiting to be written, either to a fixed file or to the screenshot store. */
+  private static final class PendingWrite {
+    private final Path target;
+    private final String test;
+    private final byte[] data;
+    private final CompletableFuture<Path> result = new CompletableFuture<>();
+
+    private PendingWrite(Path target, String test, byte[] data) {
+      this.target = target;
+      this.test = test;
+      this.data = data;
+    }
+
+    @Override
+    public String toString() {
+      return target != null ? target.toString() : "screenshot of " + test;
+    }
+  }
+}
@@ -0,0 +1,280 @@
+package utils;
+
+import com.google.gson.JsonObject;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageOutputStream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Content-addressed screenshot storage. Each image is stored once in {@code objects/} under the
+ * SHA-256 of the captured PNG, so repeated identical frames cost no extra disk space and file names
+ * never collide. Images can optionally be downscaled and re-encoded as JPEG before they are stored;
+ * the name stays the hash of the captured PNG, not of the stored file. Every screenshot taken,
+ * duplicate or not, is recorded as one JSON line in {@code index.jsonl}, which maps the test to its
+ * image. Configured under {@code screenshots} in config.json.
+ */
+public class ScreenshotStore {
+  private static final Logger logger = LoggerFactory.getLogger(ScreenshotStore.class);
+  private static volatile ScreenshotStore instance;
+
+  private final Path root;
+  private final Path objects;
+  private final Path index;
+  private final int maxWidth;
+  private final String format;
+  private final float jpegQuality;
+  private final Map<String, Path> known = new ConcurrentHashMap<>();
+  private final AtomicLong stored = new AtomicLong();
+  private final AtomicLong duplicates = new AtomicLong();
+  private final AtomicLong bytesSaved = new AtomicLong();
+
+  /**
+   * Creates a store.
+   *
+   * @param root The directory holding the objects and the index.
+   * @param maxWidth Images wider than this are downscaled; 0 keeps the original size.
+   * @param format The stored image format, "png" or "jpg".
+   * @param jpegQuality The JPEG quality between 0 and 1, used for the "jpg" format.
+   */
+  ScreenshotStore(Path root, int maxWidth, String format, float jpegQuality) {
+    this.root = root;
+    this.objects = root.resolve("objects");
+    this.index = root.resolve("index.jsonl");
+    this.maxWidth = maxWidth;
+    this.format = format.equalsIgnoreCase("jpg") || format.equalsIgnoreCase("jpeg") ? "jpg" : "png";
+    this.jpegQuality = jpegQuality;
+  }
+
+  /**
+   * Returns the singleton instance of the ScreenshotStore, configured from config.json.
+   *
+   * @return The singleton instance.
+   */
+  public static ScreenshotStore getInstance() {
+    if (instance == null) {
+      synchronized (ScreenshotStore.class) {
+        if (instance == null) {
+          ConfigSection screenshots =
+              ConfigReader.getInstance().getSnapshot().getSection("screenshots");
+          String dir = screenshots.getString("dir");
+          String format = screenshots.getString("format");
+          instance =
+              new ScreenshotStore(
+                  Paths.get(dir != null ? dir : "reports/screenshots"),
+                  screenshots.getInt("maxWidth", 0),
+                  format != null ? format : "png",
+                  (float) screenshots.getDouble("jpegQuality", 0.8));
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Stores a PNG screenshot and records it in the index.
+   *
+   * @param test The test (or other label) the screenshot belongs to.
+   * @param png The screenshot as PNG bytes.
+   * @return The stored image file.
+   * @throws IOException If the image or the index cannot be written.
+   */
+  public Path store(String test, byte[] png) throws IOException {
+    String hash = sha256(png);
+    Path object = known.get(hash);
+    boolean duplicate = object != null;
+    if (!duplicate) {
+      object = objects.resolve(hash + "." + format);
+      if (Files.exists(object)) {
+        // Stored by an earlier run
+        duplicate = true;
+      } else {
+        writeObject(object, encode(png));
+      }
+      known.put(hash, object);
+    }
+
+    if (duplicate) {
+      duplicates.incrementAndGet();
+      bytesSaved.addAndGet(png.length);
+    } else {
+      stored.incrementAndGet();
+      bytesSaved.addAndGet(Math.max(0, png.length - Files.size(object)));
+    }
+    appendIndex(test, hash, object, duplicate);
+    return object;
+  }
+
+  public Path getRoot() {
+    return root;
+  }
+
+  /**
+   * Gets the number of distinct images written.
+   *
+   * @return The number of stored images.
+   */
+  public long getStored() {
+    return stored.get();
+  }
+
+  /**
+   * Gets the number of screenshots that matched an image already stored.
+   *
+   * @return The number of duplicates.
+   */
+  public long getDuplicates() {
+    return duplicates.get();
+  }
+
+  /**
+   * Gets the disk space saved by deduplication and re-encoding.
+   *
+   * @return The number of bytes saved.
+   */
+  public long getBytesSaved() {
+    return bytesSaved.get();
+  }
+
+  private void writeObject(Path object, byte[] data) throws IOException {
+    Files.createDirectories(objects);
+    // Write to a temporary file first so a concurrent reader never sees half an image
+    Path temp =
+        objects.resolve(object.getFileName() + "." + Thread.currentThread().getId() + ".tmp");
+    try {
+      Files.write(temp, data);
+      Files.move(temp, object, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  private byte[] encode(byte[] png) throws IOException {
+    return encode(png, maxWidth, format, jpegQuality);
+  }
+
+  /**
+   * Re-encodes a PNG screenshot, optionally downscaled.
+   *
+   * @param png The screenshot as PNG bytes.
+   * @param maxWidth Images wider than this are downscaled; 0 keeps the original size.
+   * @param format The target format, "png" or "jpg".
+   * @param jpegQuality The JPEG quality between 0 and 1, used for the "jpg" format.
+   * @return The encoded image, or the input unchanged if there is nothing to do.
+   * @throws IOException If the image cannot be encoded.
+   */
+  static byte[] encode(byte[] png, int maxWidth, String format, float jpegQuality)
+      throws IOException {
+    if (maxWidth <= 0 && format.equals("png")) {
+      return png;
+    }
+    BufferedImage image = ImageIO.read(new ByteArrayInputStream(png));
+    if (image == null) {
+      logger.warn("Screenshot is not a readable image, storing it unchanged");
+      return png;
+    }
+    if (maxWidth > 0 && image.getWidth() > maxWidth) {
+      image = downscale(image, maxWidth);
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    if (format.equals("png")) {
+      ImageIO.write(image, "png", out);
+    } else {
+      writeJpeg(image, out, jpegQuality);
+    }
+    return out.toByteArray();
+  }
+
+  private static BufferedImage downscale(BufferedImage image, int width) {
+    int height = Math.max(1, image.getHeight() * width / image.getWidth());
+    BufferedImage scaled = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = scaled.createGraphics();
+    try {
+      graphics.setRenderingHint(
+          RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+      graphics.drawImage(image, 0, 0, width, height, null);
+    } finally {
+      graphics.dispose();
+    }
+    return scaled;
+  }
+
+  private static void writeJpeg(BufferedImage image, ByteArrayOutputStream out, float jpegQuality)
+      throws IOException {
+    if (image.getColorModel().hasAlpha()) {
+      // JPEG has no alpha channel
+      BufferedImage rgb =
+          new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+      Graphics2D graphics = rgb.createGraphics();
+      try {
+        graphics.drawImage(image, 0, 0, null);
+      } finally {
+        graphics.dispose();
+      }
+      image = rgb;
+    }
+    Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpg");
+    ImageWriter writer = writers.next();
+    try (ImageOutputStream stream = ImageIO.createImageOutputStream(out)) {
+      ImageWriteParam param = writer.getDefaultWriteParam();
+      param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+      param.setCompressionQuality(jpegQuality);
+      writer.setOutput(stream);
+      writer.write(null, new IIOImage(image, null, null), param);
+    } finally {
+      writer.dispose();
+    }
+  }
+
+  private synchronized void appendIndex(String test, String hash, Path object, boolean duplicate)
+      throws IOException {
+    JsonObject entry = new JsonObject();
+    entry.addProperty("ts", Instant.now().toString());
+    entry.addProperty("test", test);
+    // The hash of the captured PNG; the stored object may be a re-encoded JPEG
+    entry.addProperty("sourceSha256", hash);
+    entry.addProperty("file", root.relativize(object).toString().replace('\\', '/'));
+    entry.addProperty("duplicate", duplicate);
+    Files.createDirectories(root);
+    Files.write(
+        index,
+        (entry + System.lineSeparator()).getBytes(StandardCharsets.UTF_8),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.APPEND);
+  }
+
+  private static String sha256(byte[] data) {
+    try {
+      byte[] digest = MessageDigest.getInstance("SHA-256").digest(data);
+      StringBuilder hex = new StringBuilder(digest.length * 2);
+      for (byte b : digest) {
+        hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+}
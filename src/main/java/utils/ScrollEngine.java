@@ -0,0 +1,266 @@
+package utils;
+
+import io.appium.java_client.AppiumBy;
+import io.appium.java_client.AppiumDriver;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
+import org.openqa.selenium.By;
+import org.openqa.selenium.Dimension;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.Point;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.WebElement;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Scrolls lists until an element is on screen. When the locator can be expressed natively, the
+ * scrolling is done on the device in one request (UiAutomator2 {@code UiScrollable} on Android,
+ * {@code mobile: scroll} on iOS). Otherwise the engine swipes with short flings and checks the page
+ * source after each one. That catches lazily rendered elements that did not exist before the swipe,
+ * and the engine stops as soon as the content no longer changes (the end of the list). Configured
+ * under {@code scroll} in config.json.
+ */
+public class ScrollEngine {
+  private static final Logger logger = LoggerFactory.getLogger(ScrollEngine.class);
+
+  /**
+   * Scrolls down until an element matching the locator is displayed.
+   *
+   * @param driver The Appium driver.
+   * @param locator The locator of the element.
+   * @return The element.
+   * @throws NoSuchElementException If the end of the list is reached without finding the element.
+   */
+  public static WebElement scrollTo(AppiumDriver driver, By locator) {
+    ConfigSection scroll = ConfigReader.getInstance().getSnapshot().getSection("scroll");
+    int maxSwipes = scroll.getInt("maxSwipes", 15);
+    long start = System.nanoTime();
+
+    if (scroll.getBoolean("nativeScroll", true)) {
+      WebElement element = nativeScroll(driver, locator, maxSwipes);
+      if (element != null) {
+        logger.info("Scrolled natively to {} in {} ms", locator, elapsedMillis(start));
+        return element;
+      }
+    }
+
+    WebElement element =
+        swipeUntil(
+            driver,
+            () -> findDisplayed(driver, locator),
+            maxSwipes,
+            Duration.ofMillis(scroll.getInt("swipeDurationMs", 300)));
+    if (element == null) {
+      throw new NoSuchElementException(
+          "Element " + locator + " not found after scrolling for " + elapsedMillis(start) + " ms");
+    }
+    logger.info("Scrolled to {} in {} ms", locator, elapsedMillis(start));
+    return element;
+  }
+
+  /**
+   * Scrolls down until an already located element is displayed.
+   *
+   * @param driver The Appium driver.
+   * @param element The element.
+   * @return True if the element is displayed, false if the end of the list was reached first.
+   */
+  public static boolean scrollTo(AppiumDriver driver, WebElement element) {
+    ConfigSection scroll = ConfigReader.getInstance().getSnapshot().getSection("scroll");
+    return swipeUntil(
+            driver,
+            () -> isDisplayed(element) ? element : null,
+            scroll.getInt("maxSwipes", 15),
+            Duration.ofMillis(scroll.getInt("swipeDurationMs", 300)))
+        != null;
+  }
+
+  /**
+   * Swipes up until the probe finds something or the page source stops changing. A swipe that
+   * changes nothing is repeated once, slower, before giving up, since some lists ignore very fast
+   * flings.
+   */
+  private static <T> T swipeUntil(
+      AppiumDriver driver, Supplier<T> probe, int maxSwipes, Duration swipeDuration) {
+    T found = probe.get();
+    if (found != null) {
+      return found;
+    }
+    int previousHash = PageSnapshotCache.getInstance().get(driver).contentHash();
+    Duration duration = swipeDuration;
+    boolean confirming = false;
+    for (int swipes = 1; swipes <= maxSwipes; swipes++) {
+      swipeUp(driver, duration);
+      found = probe.get();
+      if (found != null) {
+        logger.debug("Found after {} swipe(s)", swipes);
+        return found;
+      }
+      int hash = PageSnapshotCache.getInstance().get(driver).contentHash();
+      if (hash == previousHash) {
+        if (confirming) {
+          logger.info("Reached the end of the list after {} swipe(s)", swipes);
+          return null;
+        }
+        confirming = true;
+        duration = swipeDuration.multipliedBy(2);
+      } else {
+        confirming = false;
+        duration = swipeDuration;
+      }
+      previousHash = hash;
+    }
+    logger.warn("Gave up after {} swipe(s)", maxSwipes);
+    return null;
+  }
+
+  private static void swipeUp(AppiumDriver driver, Duration duration) {
+    Dimension size = GeometryCache.getInstance().getWindowSize(driver);
+    int x = size.width / 2;
+    GestureChain.on(driver)
+        .swipe(
+            new Point(x, (int) (size.height * 0.7)),
+            new Point(x, (int) (size.height * 0.3)),
+            duration)
+        .perform();
+  }
+
+  /**
+   * Finds a displayed element. Locators the page snapshot understands are checked against the
+   * snapshot first, so a miss costs no find call.
+   */
+  private static WebElement findDisplayed(AppiumDriver driver, By locator) {
+    if (PageSnapshot.supports(locator)) {
+      SnapshotNode node = PageSnapshotCache.getInstance().get(driver).findFirst(locator);
+      if (node == null || !node.isDisplayed()) {
+        return null;
+      }
+    }
+    List<WebElement> found =
+        AdaptiveWait.withoutImplicitWait(driver, () -> driver.findElements(locator));
+    if (found.isEmpty()) {
+      return null;
+    }
+    WebElement element = found.get(0);
+    return PageSnapshot.supports(locator) || isDisplayed(element) ? element : null;
+  }
+
+  private static WebElement nativeScroll(AppiumDriver driver, By locator, int maxSwipes) {
+    try {
+      if (Locators.isIos(driver)) {
+        String predicate = iosPredicate(locator);
+        if (predicate == null) {
+          return null;
+        }
+        Map<String, Object> args = new HashMap<>();
+        args.put("predicateString", predicate);
+        args.put("toVisible", true);
+        driver.executeScript("mobile: scroll", args);
+        List<WebElement> found =
+            AdaptiveWait.withoutImplicitWait(driver, () -> driver.findElements(locator));
+        return found.isEmpty() ? null : found.get(0);
+      }
+
+      String selector = uiSelector(locator);
+      if (selector == null) {
+        return null;
+      }
+      By scrollable =
+          AppiumBy.androidUIAutomator(
+              "new UiScrollable(new UiSelector().scrollable(true)).setMaxSearchSwipes("
+                  + maxSwipes
+                  + ").scrollIntoView("
+                  + selector
+                  + ")");
+      try {
+        return AdaptiveWait.withoutImplicitWait(driver, () -> driver.findElement(scrollable));
+      } finally {
+        // The lookup scrolls, but is sent as a find
+        SessionCommandExecutor.afterAction(driver);
+      }
+    } catch (WebDriverException e) {
+      logger.debug(
+          "Native scroll to {} failed, falling back to swipes: {}", locator, e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Translates a locator into a UiAutomator {@code UiSelector} expression.
+   *
+   * @return The expression, or null if the locator has no UiSelector equivalent.
+   */
+  private static String uiSelector(By locator) {
+    if (!(locator instanceof By.Remotable)) {
+      return null;
+    }
+    By.Remotable.Parameters parameters = ((By.Remotable) locator).getRemoteParameters();
+    String value = String.valueOf(parameters.value());
+    switch (parameters.using()) {
+      case "id":
+        return value.contains(":id/")
+            ? "new UiSelector().resourceId(" + javaLiteral(value) + ")"
+            : "new UiSelector().resourceIdMatches("
+                + javaLiteral(".*:id/" + Pattern.quote(value))
+                + ")";
+      case "accessibility id":
+        return "new UiSelector().description(" + javaLiteral(value) + ")";
+      case "class name":
+        return "new UiSelector().className(" + javaLiteral(value) + ")";
+      case "-android uiautomator":
+        return value;
+      default:
+        return null;
+    }
+  }
+
+  /**
+   * Translates a locator into an XCUITest predicate.
+   *
+   * @return The predicate, or null if the locator has no predicate equivalent.
+   */
+  private static String iosPredicate(By locator) {
+    if (!(locator instanceof By.Remotable)) {
+      return null;
+    }
+    By.Remotable.Parameters parameters = ((By.Remotable) locator).getRemoteParameters();
+    String value = String.valueOf(parameters.value());
+    switch (parameters.using()) {
+      case "id":
+      case "accessibility id":
+        return "name == " + predicateLiteral(value);
+      case "class name":
+        return "type == " + predicateLiteral(value);
+      case "-ios predicate string":
+        return value;
+      default:
+        return null;
+    }
+  }
+
+  private static String javaLiteral(String value) {
+    return '"' + value.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+  }
+
+  private static String predicateLiteral(String value) {
+    return '\'' + value.replace("\\", "\\\\").replace("'", "\\'") + '\'';
+  }
+
+  private static boolean isDisplayed(WebElement element) {
+    try {
+      return element.isDisplayed();
+    } catch (WebDriverException e) {
+      return false;
+    }
+  }
+
+  private static long elapsedMillis(long startNanos) {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+}
@@ -0,0 +1,127 @@
+package utils;
+
+import io.appium.java_client.AppiumClientConfig;
+import io.appium.java_client.MobileCommand;
+import io.appium.java_client.remote.AppiumCommandExecutor;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import org.openqa.selenium.SearchContext;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.DriverCommand;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.http.HttpClient;
+
+/**
+ * Appium command executor that keeps the framework's cached view of a session in step with the
+ * commands sent to it. After every command that may change the screen (clicks, typing, W3C actions,
+ * {@code mobile:} scripts and the Appium commands that press keys, switch apps or rotate the
+ * screen), the session's {@link PageSnapshotCache} snapshot and {@link GeometryCache} element
+ * rectangles are discarded and the {@link FrameRecorder} records a frame, whether the command was
+ * sent by a framework helper or by the test itself.
+ *
+ * <p>{@link DriverManager} creates every session with this executor. Sessions created elsewhere can
+ * use it too: {@link #bind} it to the driver once the session exists.
+ */
+public class SessionCommandExecutor extends AppiumCommandExecutor {
+  private static final String MOBILE_SCRIPT = "mobile:";
+  private static final Set<String> SCREEN_CHANGING =
+      new HashSet<>(
+          Arrays.asList(
+              DriverCommand.CLICK_ELEMENT,
+              DriverCommand.SEND_KEYS_TO_ELEMENT,
+              DriverCommand.CLEAR_ELEMENT,
+              DriverCommand.ACTIONS,
+              DriverCommand.GO_BACK,
+              MobileCommand.SET_VALUE,
+              MobileCommand.REPLACE_VALUE,
+              MobileCommand.PRESS_KEY_CODE,
+              MobileCommand.LONG_PRESS_KEY_CODE,
+              MobileCommand.LAUNCH_APP,
+              MobileCommand.CLOSE_APP,
+              MobileCommand.RUN_APP_IN_BACKGROUND,
+              MobileCommand.SET_SCREEN_ORIENTATION,
+              MobileCommand.SET_SCREEN_ROTATION,
+              MobileCommand.SWITCH_TO_CONTEXT,
+              // Legacy commands java-client still maps, whose constants are not public
+              "performTouchAction",
+              "performMultiTouch",
+              "hideKeyboard",
+              "openNotifications",
+              "startActivity",
+              "activateApp",
+              "terminateApp",
+              "reset",
+              "lock",
+              "unlock"));
+
+  private volatile SearchContext driver;
+
+  /**
+   * Creates an executor for a server.
+   *
+   * @param config The client configuration, including the Appium server URL.
+   * @param clientFactory The factory that creates the HTTP client.
+   */
+  public SessionCommandExecutor(AppiumClientConfig config, HttpClient.Factory clientFactory) {
+    super(MobileCommand.commandRepository, null, clientFactory, config);
+  }
+
+  /**
+   * Binds the executor to the driver it sends the commands of. Commands sent before, such as the
+   * new session command, change nothing that is cached.
+   *
+   * @param driver The driver created with this executor.
+   */
+  public void bind(SearchContext driver) {
+    this.driver = driver;
+  }
+
+  @Override
+  public Response execute(Command command) throws WebDriverException {
+    try {
+      return super.execute(command);
+    } finally {
+      // A command that failed may still have changed the screen
+      if (changesScreen(command)) {
+        afterAction(driver);
+      }
+    }
+  }
+
+  /**
+   * Drops the cached state an action may have made stale and records a frame if enabled. Run after
+   * every screen-changing command, and by helpers whose commands change the screen without looking
+   * like it, such as a {@code UiScrollable} lookup.
+   *
+   * @param driver The driver of the session, or null if the executor is not bound yet.
+   */
+  static void afterAction(SearchContext driver) {
+    if (driver == null) {
+      return;
+    }
+    PageSnapshotCache.getInstance().invalidate(driver);
+    GeometryCache.getInstance().invalidateElements(driver);
+    FrameRecorder.getInstance().onAction(driver);
+  }
+
+  /**
+   * Checks whether a command may change what is on the screen.
+   *
+   * @param command The command.
+   * @return True if cached views of the screen must be discarded after it.
+   */
+  static boolean changesScreen(Command command) {
+    String name = command.getName();
+    if (SCREEN_CHANGING.contains(name)) {
+      return true;
+    }
+    if (DriverCommand.EXECUTE_SCRIPT.equals(name)
+        || DriverCommand.EXECUTE_ASYNC_SCRIPT.equals(name)) {
+      Object script = command.getParameters().get("script");
+      return script instanceof String && ((String) script).trim().startsWith(MOBILE_SCRIPT);
+    }
+    return false;
+  }
+}
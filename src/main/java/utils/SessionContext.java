@@ -0,0 +1,160 @@
+package utils;
+
+import io.appium.java_client.AppiumDriver;
+import java.util.concurrent.Callable;
+
+/**
+ * Holds the state of one test session: its driver, the pooled or pre-provisioned session behind it
+ * and the leased device. {@link DriverManager} keeps all of it in the context bound to the calling
+ * thread, so a session costs one thread-local slot instead of one per field, and the slot is
+ * cleared once the session is released. That keeps pooled carrier threads and long-lived virtual
+ * threads from holding on to quit drivers.
+ *
+ * <p>A context can also be bound explicitly for the duration of a task with {@link #callWith} or
+ * {@link #runWith}, which is how a session flow hands its session to work running on another
+ * thread, for example a virtual thread started by {@link SessionThreads}.
+ */
+public final class SessionContext {
+  private static final ThreadLocal<SessionContext> bound = new ThreadLocal<>();
+
+  // Only touched by the thread the context is bound to; handing a context to another thread
+  // through an executor publishes it safely
+  AppiumDriver driver;
+  PooledSession session;
+  Device device;
+  ProvisionedSession provisioned;
+  private volatile String test;
+
+  /**
+   * Gets the context bound to the current thread, binding a new empty one if there is none.
+   *
+   * @return The current context.
+   */
+  public static SessionContext current() {
+    SessionContext context = bound.get();
+    if (context == null) {
+      context = new SessionContext();
+      bound.set(context);
+    }
+    return context;
+  }
+
+  /**
+   * Gets the context bound to the current thread without binding one.
+   *
+   * @return The current context, or null if there is none.
+   */
+  static SessionContext peek() {
+    return bound.get();
+  }
+
+  /**
+   * Unbinds the context of the current thread, so it can be bound to another one.
+   *
+   * @return The context that was bound, or null if there was none.
+   */
+  public static SessionContext detach() {
+    SessionContext context = bound.get();
+    bound.remove();
+    return context;
+  }
+
+  /**
+   * Runs a task with a context bound to the current thread and restores the previous binding
+   * afterwards.
+   *
+   * @param context The context to bind, or null to run without one.
+   * @param task The task.
+   * @param <T> The result type.
+   * @return The result of the task.
+   * @throws Exception If the task fails.
+   */
+  public static <T> T callWith(SessionContext context, Callable<T> task) throws Exception {
+    SessionContext previous = bound.get();
+    bind(context);
+    try {
+      return task.call();
+    } finally {
+      bind(previous);
+    }
+  }
+
+  /**
+   * Runs a task with a context bound to the current thread and restores the previous binding
+   * afterwards.
+   *
+   * @param context The context to bind, or null to run without one.
+   * @param task The task.
+   */
+  public static void runWith(SessionContext context, Runnable task) {
+    SessionContext previous = bound.get();
+    bind(context);
+    try {
+      task.run();
+    } finally {
+      bind(previous);
+    }
+  }
+
+  /** Unbinds the context of the current thread if it no longer holds a session or device. */
+  static void releaseIfEmpty() {
+    SessionContext context = bound.get();
+    if (context != null && context.isEmpty()) {
+      bound.remove();
+    }
+  }
+
+  private static void bind(SessionContext context) {
+    if (context == null) {
+      bound.remove();
+    } else {
+      bound.set(context);
+    }
+  }
+
+  /**
+   * Gets the driver of the session, without waiting for a pre-provisioned session.
+   *
+   * @return The driver, or null if none is bound yet.
+   */
+  public AppiumDriver getDriver() {
+    return driver;
+  }
+
+  /**
+   * Gets the device leased for the session.
+   *
+   * @return The device, or null if no device registry is configured.
+   */
+  public Device getDevice() {
+    return device;
+  }
+
+  /**
+   * Gets the test the session is created for.
+   *
+   * @return The test id, or null if none was set.
+   */
+  public String getTest() {
+    return test;
+  }
+
+  /**
+   * Names the test the session is created for. The {@link SessionTape} tags recorded sessions with
+   * it, so each test gets its own session back on replay whatever device it runs on.
+   *
+   * @param test The test id.
+   */
+  public void setTest(String test) {
+    this.test = test;
+  }
+
+  /**
+   * Checks whether the context holds neither a session nor a device.
+   *
+   * @return True if the context is empty.
+   */
+  public boolean isEmpty() {
+    return driver == null && session == null && device == null && provisioned == null;
+  }
+}
@@ -0,0 +1,89 @@
+package utils;
+
+import java.util.Objects;
+import org.openqa.selenium.Capabilities;
+
+/**
+ * Identifies the resolved capability set a pooled session was created with. Two sessions with the
+ * same key are interchangeable once the app under test has been reset.
+ */
+public final class SessionKey {
+  private final String platform;
+  private final String deviceName;
+  private final String app;
+  private final boolean noReset;
+
+  /**
+   * Creates a new session key.
+   *
+   * @param platform The platform ("android" or "ios").
+   * @param deviceName The device (UDID if known, otherwise device name) the session runs on.
+   * @param app The app path or identifier installed in the session.
+   * @param noReset Whether the session was created with noReset.
+   */
+  public SessionKey(String platform, String deviceName, String app, boolean noReset) {
+    this.platform = platform.toLowerCase();
+    this.deviceName = deviceName;
+    this.app = app;
+    this.noReset = noReset;
+  }
+
+  /**
+   * Builds a session key from the capabilities a driver is about to be created with.
+   *
+   * @param platform The platform ("android" or "ios").
+   * @param capabilities The resolved capabilities.
+   * @return The session key.
+   */
+  public static SessionKey of(String platform, Capabilities capabilities) {
+    Object noReset = capabilities.getCapability("appium:noReset");
+    Object udid = capabilities.getCapability("appium:udid");
+    return new SessionKey(
+        platform,
+        Objects.toString(
+            udid != null ? udid : capabilities.getCapability("appium:deviceName"), null),
+        Objects.toString(capabilities.getCapability("appium:app"), null),
+        Boolean.parseBoolean(Objects.toString(noReset, "false")));
+  }
+
+  public String getPlatform() {
+    return platform;
+  }
+
+  public String getDeviceName() {
+    return deviceName;
+  }
+
+  public String getApp() {
+    return app;
+  }
+
+  public boolean isNoReset() {
+    return noReset;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof SessionKey)) {
+      return false;
+    }
+    SessionKey other = (SessionKey) o;
+    return noReset == other.noReset
+        && platform.equals(other.platform)
+        && Objects.equals(deviceName, other.deviceName)
+        && Objects.equals(app, other.app);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(platform, deviceName, app, noReset);
+  }
+
+  @Override
+  public String toString() {
+    return String.format("%s[device=%s, app=%s, noReset=%s]", platform, deviceName, app, noReset);
+  }
+}
@@ -0,0 +1,244 @@
+package utils;
+
+import io.appium.java_client.AppiumDriver;
+import io.appium.java_client.InteractsWithApps;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps Appium sessions warm between tests. Sessions are keyed by their resolved capability set and
+ * are handed back to the pool after each test with a cheap app reset (terminate/activate) instead
+ * of a full {@code quit()}. Idle sessions are evicted after a timeout, and sessions that have seen
+ * too many failed tests are discarded.
+ */
+public class SessionPool {
+  private static final Logger logger = LoggerFactory.getLogger(SessionPool.class);
+  private static volatile SessionPool instance;
+
+  private final Map<SessionKey, Deque<PooledSession>> idleSessions = new ConcurrentHashMap<>();
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private final AtomicLong evictions = new AtomicLong();
+  private final AtomicBoolean shutDown = new AtomicBoolean();
+  private final long idleTimeoutMillis;
+  private final int maxFailures;
+  private final ScheduledExecutorService reaper;
+
+  /**
+   * Creates a pool with the given eviction settings.
+   *
+   * @param idleTimeoutSeconds How long a session may sit idle before it is quit.
+   * @param maxFailures The number of failed tests after which a session is discarded.
+   */
+  SessionPool(int idleTimeoutSeconds, int maxFailures) {
+    this.idleTimeoutMillis = TimeUnit.SECONDS.toMillis(idleTimeoutSeconds);
+    this.maxFailures = maxFailures;
+    this.reaper =
+        Executors.newSingleThreadScheduledExecutor(
+            runnable -> {
+              Thread thread = new Thread(runnable, "session-pool-reaper");
+              thread.setDaemon(true);
+              return thread;
+            });
+    long period = Math.max(1000, idleTimeoutMillis / 2);
+    reaper.scheduleAtFixedRate(this::evictExpired, period, period, TimeUnit.MILLISECONDS);
+    Runtime.getRuntime().addShutdownHook(new Thread(this::shutdown, "session-pool-shutdown"));
+  }
+
+  /**
+   * Returns the singleton instance of the SessionPool, configured from config.json.
+   *
+   * @return The singleton instance.
+   */
+  public static SessionPool getInstance() {
+    if (instance == null) {
+      synchronized (SessionPool.class) {
+        if (instance == null) {
+          ConfigReader config = ConfigReader.getInstance();
+          instance =
+              new SessionPool(
+                  config.getSessionPoolIdleTimeout(), config.getSessionPoolMaxFailures());
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Hands out a warm session for the given key, or creates a new one if none is idle.
+   *
+   * @param key The resolved capability set.
+   * @param appId The package or bundle id used to reset the app when the session is released.
+   * @param factory Creates a new driver on a pool miss.
+   * @return The leased session.
+   */
+  public PooledSession acquire(SessionKey key, String appId, Supplier<AppiumDriver> factory) {
+    Deque<PooledSession> idle = idleSessions.get(key);
+    PooledSession session;
+    while (idle != null && (session = idle.pollFirst()) != null) {
+      if (isExpired(session)) {
+        evict(session, "idle timeout");
+        continue;
+      }
+      hits.incrementAndGet();
+      logger.info("Reusing pooled session {}", session);
+      return session;
+    }
+
+    misses.incrementAndGet();
+    logger.info("No idle session for {}. Creating a new one.", key);
+    return new PooledSession(key, factory.get(), appId);
+  }
+
+  /**
+   * Takes ownership of a session that was created outside the pool, such as a pre-provisioned one.
+   * It counts as a miss, since it was not served from the idle sessions.
+   *
+   * @param key The resolved capability set.
+   * @param appId The package or bundle id used to reset the app when the session is released.
+   * @param driver The live driver.
+   * @return The leased session.
+   */
+  public PooledSession adopt(SessionKey key, String appId, AppiumDriver driver) {
+    misses.incrementAndGet();
+    return new PooledSession(key, driver, appId);
+  }
+
+  /**
+   * Checks if a warm session is idle for the given key.
+   *
+   * @param key The resolved capability set.
+   * @return True if an idle session is available.
+   */
+  public boolean hasIdle(SessionKey key) {
+    Deque<PooledSession> idle = idleSessions.get(key);
+    return idle != null && !idle.isEmpty();
+  }
+
+  /**
+   * Returns a session to the pool. The app under test is reset so the next test starts from a clean
+   * state; if the reset fails or the session has failed too often, it is quit instead.
+   *
+   * @param session The session to return.
+   * @param testPassed Whether the test that used the session passed.
+   */
+  public void release(PooledSession session, boolean testPassed) {
+    if (!testPassed && session.recordFailure() >= maxFailures) {
+      evict(session, "reached " + maxFailures + " failures");
+      return;
+    }
+    if (!resetApp(session)) {
+      evict(session, "app reset failed");
+      return;
+    }
+    session.markReleased();
+    idleSessions
+        .computeIfAbsent(session.getKey(), k -> new ConcurrentLinkedDeque<>())
+        .offerFirst(session);
+    logger.info("Session returned to pool: {}", session);
+  }
+
+  /**
+   * Quits a session and drops it from the pool for good.
+   *
+   * @param session The session to evict.
+   * @param reason Why the session is being evicted, for logging.
+   */
+  public void evict(PooledSession session, String reason) {
+    evictions.incrementAndGet();
+    logger.info("Evicting pooled session {}: {}", session, reason);
+    DriverManager.forgetSession(session.getDriver());
+    try {
+      session.getDriver().quit();
+    } catch (Exception e) {
+      logger.warn("Error while quitting evicted session {}", session, e);
+    }
+  }
+
+  /**
+   * Gets the fraction of acquisitions that were served by a warm session.
+   *
+   * @return The hit rate between 0 and 1.
+   */
+  public double getHitRate() {
+    long total = hits.get() + misses.get();
+    return total == 0 ? 0 : (double) hits.get() / total;
+  }
+
+  public long getHits() {
+    return hits.get();
+  }
+
+  public long getMisses() {
+    return misses.get();
+  }
+
+  public long getEvictions() {
+    return evictions.get();
+  }
+
+  /**
+   * Quits every idle session and logs the pool statistics. Only the first call has an effect, so
+   * the shutdown hook does nothing once the run has shut the pool down itself.
+   */
+  public void shutdown() {
+    if (!shutDown.compareAndSet(false, true)) {
+      return;
+    }
+    reaper.shutdownNow();
+    for (Deque<PooledSession> idle : idleSessions.values()) {
+      PooledSession session;
+      while ((session = idle.pollFirst()) != null) {
+        evict(session, "pool shutdown");
+      }
+    }
+    logger.info(
+        "Session pool stats: hits={}, misses={}, evictions={}, hit rate={}%",
+        hits.get(), misses.get(), evictions.get(), String.format("%.1f", getHitRate() * 100));
+  }
+
+  /** Evicts idle sessions past the idle timeout. Run by the reaper, and directly by tests. */
+  void evictExpired() {
+    for (Deque<PooledSession> idle : idleSessions.values()) {
+      Iterator<PooledSession> iterator = idle.iterator();
+      while (iterator.hasNext()) {
+        PooledSession session = iterator.next();
+        if (isExpired(session) && idle.removeFirstOccurrence(session)) {
+          evict(session, "idle timeout");
+        }
+      }
+    }
+  }
+
+  private boolean isExpired(PooledSession session) {
+    return System.currentTimeMillis() - session.getLastReleasedAt() > idleTimeoutMillis;
+  }
+
+  private boolean resetApp(PooledSession session) {
+    String appId = session.getAppId();
+    if (appId == null) {
+      logger.warn("No app id known for {}. Cannot reset app.", session);
+      return false;
+    }
+    try {
+      InteractsWithApps apps = (InteractsWithApps) session.getDriver();
+      apps.terminateApp(appId);
+      apps.activateApp(appId);
+      return true;
+    } catch (Exception e) {
+      logger.warn("Failed to reset app {} in session {}", appId, session, e);
+      return false;
+    }
+  }
+}
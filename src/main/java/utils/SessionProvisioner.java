@@ -0,0 +1,248 @@
+package utils;
+
+import io.appium.java_client.AppiumDriver;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates sessions for upcoming tests in the background while the current tests are still running,
+ * so session creation is taken off the critical path of the suite. Tracks how much provisioning
+ * time was hidden behind test execution and how much was still waited on.
+ */
+public class SessionProvisioner {
+  private static final Logger logger = LoggerFactory.getLogger(SessionProvisioner.class);
+  private static volatile SessionProvisioner instance;
+
+  private final Map<String, Deque<ProvisionedSession>> pending = new ConcurrentHashMap<>();
+  private final ExecutorService executor;
+  private final long shutdownTimeoutMillis;
+  private final AtomicLong adopted = new AtomicLong();
+  private final AtomicLong failed = new AtomicLong();
+  private final AtomicLong hiddenMillis = new AtomicLong();
+  private final AtomicLong waitedMillis = new AtomicLong();
+  private final AtomicBoolean shutDown = new AtomicBoolean();
+
+  /**
+   * Creates a provisioner that creates every session on a daemon thread of its own, a virtual
+   * thread when {@link SessionThreads} runs session flows on them.
+   */
+  SessionProvisioner() {
+    this(
+        ConfigReader.getInstance()
+            .getSnapshot()
+            .getSection("provisioning")
+            .getInt("shutdownTimeoutMs", 30000));
+  }
+
+  /**
+   * Creates a provisioner with the given shutdown timeout.
+   *
+   * @param shutdownTimeoutMillis How long {@link #shutdown()} waits for sessions still being
+   *     created.
+   */
+  SessionProvisioner(long shutdownTimeoutMillis) {
+    this.executor = SessionThreads.getInstance().newPerTaskExecutor("session-provisioner-");
+    this.shutdownTimeoutMillis = shutdownTimeoutMillis;
+    Runtime.getRuntime()
+        .addShutdownHook(new Thread(this::shutdown, "session-provisioner-shutdown"));
+  }
+
+  /**
+   * Returns the singleton instance of the SessionProvisioner.
+   *
+   * @return The singleton instance.
+   */
+  public static SessionProvisioner getInstance() {
+    if (instance == null) {
+      synchronized (SessionProvisioner.class) {
+        if (instance == null) {
+          instance = new SessionProvisioner();
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Starts creating a session in the background.
+   *
+   * @param spare The session to provision; its device must already be leased.
+   */
+  public void submit(ProvisionedSession spare) {
+    logger.info("Pre-provisioning session {}", spare);
+    spare.start(CompletableFuture.supplyAsync(spare.getFactory(), executor));
+    getPending(spare.getPlatform()).offerLast(spare);
+  }
+
+  /**
+   * Gets the number of sessions being provisioned or waiting to be used for a platform.
+   *
+   * @param platform The platform ("android" or "ios").
+   * @return The number of pending sessions.
+   */
+  public int getPendingCount(String platform) {
+    return getPending(platform).size();
+  }
+
+  /**
+   * Takes a pending session for a platform, preferring ones that are already created.
+   *
+   * @param platform The platform ("android" or "ios").
+   * @return The pending session, or null if none is pending.
+   */
+  public ProvisionedSession take(String platform) {
+    Deque<ProvisionedSession> spares = getPending(platform);
+    Iterator<ProvisionedSession> iterator = spares.iterator();
+    while (iterator.hasNext()) {
+      ProvisionedSession spare = iterator.next();
+      if (spare.isDone() && spares.removeFirstOccurrence(spare)) {
+        return spare;
+      }
+    }
+    return spares.pollFirst();
+  }
+
+  /**
+   * Waits for a pending session to be created, recording how much of its creation time was hidden.
+   *
+   * @param spare The pending session taken with {@link #take(String)}.
+   * @return The created driver.
+   * @throws RuntimeException If the session could not be created.
+   */
+  public AppiumDriver await(ProvisionedSession spare) {
+    long waitStart = System.currentTimeMillis();
+    try {
+      AppiumDriver driver = spare.getFuture().join();
+      long waited = System.currentTimeMillis() - waitStart;
+      long provisioning = spare.getCompletedAt() - spare.getStartedAt();
+      adopted.incrementAndGet();
+      waitedMillis.addAndGet(waited);
+      hiddenMillis.addAndGet(Math.max(0, provisioning - waited));
+      logger.info(
+          "Pre-provisioned session {} ready: created in {} ms, waited {} ms",
+          spare,
+          provisioning,
+          waited);
+      return driver;
+    } catch (CompletionException e) {
+      failed.incrementAndGet();
+      waitedMillis.addAndGet(System.currentTimeMillis() - waitStart);
+      throw e.getCause() instanceof RuntimeException
+          ? (RuntimeException) e.getCause()
+          : new RuntimeException(e.getCause());
+    }
+  }
+
+  /**
+   * Waits for a pending session like {@link #await(ProvisionedSession)}. If its background creation
+   * failed, the session is created again synchronously with the same factory, on the same device.
+   *
+   * @param spare The pending session taken with {@link #take(String)}.
+   * @return The created driver.
+   * @throws RuntimeException If the synchronous creation fails as well.
+   */
+  public AppiumDriver awaitOrCreate(ProvisionedSession spare) {
+    try {
+      return await(spare);
+    } catch (RuntimeException e) {
+      logger.warn("Pre-provisioning failed for {}. Creating session synchronously.", spare, e);
+      return spare.getFactory().get();
+    }
+  }
+
+  public long getAdoptedCount() {
+    return adopted.get();
+  }
+
+  public long getFailedCount() {
+    return failed.get();
+  }
+
+  /**
+   * Gets the total session creation time that overlapped with test execution.
+   *
+   * @return The hidden provisioning time in milliseconds.
+   */
+  public long getHiddenMillis() {
+    return hiddenMillis.get();
+  }
+
+  /**
+   * Gets the total time tests spent blocked on sessions that were not ready yet.
+   *
+   * @return The waited provisioning time in milliseconds.
+   */
+  public long getWaitedMillis() {
+    return waitedMillis.get();
+  }
+
+  /**
+   * Quits unused pre-provisioned sessions, returns their devices and logs the statistics. Sessions
+   * still being created are waited for up to {@code provisioning.shutdownTimeoutMs}, because this
+   * runs as a shutdown hook and a session created after the JVM exits would hold its device on the
+   * Appium server until the server's {@code newCommandTimeout}. Only the first call has an effect.
+   */
+  public void shutdown() {
+    if (!shutDown.compareAndSet(false, true)) {
+      return;
+    }
+    executor.shutdown();
+    List<ProvisionedSession> unused = new ArrayList<>();
+    for (Deque<ProvisionedSession> spares : pending.values()) {
+      ProvisionedSession spare;
+      while ((spare = spares.pollFirst()) != null) {
+        unused.add(spare);
+      }
+    }
+    try {
+      CompletableFuture.allOf(
+              unused.stream().map(ProvisionedSession::getFuture).toArray(CompletableFuture[]::new))
+          .get(shutdownTimeoutMillis, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      logger.warn(
+          "Pre-provisioned sessions still being created after {} ms", shutdownTimeoutMillis);
+    } catch (ExecutionException e) {
+      // Every session has finished; the failed ones have nothing to quit
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (ProvisionedSession spare : unused) {
+      CompletableFuture<AppiumDriver> future = spare.getFuture();
+      if (!future.isDone()) {
+        logger.warn("Abandoning pre-provisioned session {} that is still being created", spare);
+      } else if (!future.isCompletedExceptionally()) {
+        try {
+          future.join().quit();
+        } catch (RuntimeException e) {
+          logger.warn("Error while quitting pre-provisioned session {}", spare, e);
+        }
+      }
+      DeviceScheduler.getInstance().release(spare.getDevice());
+    }
+    logger.info(
+        "Provisioning stats: adopted={}, failed={}, hidden={} ms, waited={} ms",
+        adopted.get(),
+        failed.get(),
+        hiddenMillis.get(),
+        waitedMillis.get());
+  }
+
+  private Deque<ProvisionedSession> getPending(String platform) {
+    return pending.computeIfAbsent(platform.toLowerCase(), k -> new ConcurrentLinkedDeque<>());
+  }
+}
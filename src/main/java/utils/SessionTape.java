@@ -0,0 +1,574 @@
+package utils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import org.openqa.selenium.remote.http.ClientConfig;
+import org.openqa.selenium.remote.http.Contents;
+import org.openqa.selenium.remote.http.HttpClient;
+import org.openqa.selenium.remote.http.HttpMethod;
+import org.openqa.selenium.remote.http.HttpRequest;
+import org.openqa.selenium.remote.http.HttpResponse;
+import org.openqa.selenium.remote.http.WebSocket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Records the WebDriver traffic of a run into a compact append-only file, and replays it later
+ * without a device or Appium server. Every request made through the HTTP client of a driver from
+ * {@link DriverManager} is captured with its response, including page sources and screenshots.
+ *
+ * <p>Request and response bodies are stored once each as deflated blobs keyed by their SHA-256, so
+ * a page source or screenshot that repeats across commands and sessions costs one reference. In
+ * replay mode the whole file is loaded into memory and each request is answered with the next
+ * recorded response for the same method, path and body, in recording order; the last one is
+ * repeated once they run out. Each new session is tagged with the test it was created for (see
+ * {@link SessionContext#setTest}) and replayed to the same test, matched by its capabilities
+ * without the device-specific ones, so recorded session and element ids line up with the commands
+ * that follow even when the tests lease other devices than during the recording. Sessions created
+ * for no test, for example by the {@link SessionProvisioner}, are handed out in recording order.
+ *
+ * <p>Configured under {@code recording} in config.json: {@code mode} is {@code off}, {@code record}
+ * or {@code replay}, and {@code file} the tape. Recording truncates the tape first.
+ */
+public class SessionTape {
+  private static final Logger logger = LoggerFactory.getLogger(SessionTape.class);
+  private static final int MAGIC = 0x54415045; // "TAPE"
+  private static final int VERSION = 2;
+  private static final byte BLOB = 'B';
+  private static final byte EXCHANGE = 'X';
+  private static final int NO_BODY = -1;
+  private static final String NEW_SESSION = "POST /session";
+  // Capabilities set per leased device by DriverManager, which differ between runs
+  private static final String[] DEVICE_CAPABILITIES = {
+    "appium:deviceName", "appium:udid", "appium:systemPort", "appium:wdaLocalPort"
+  };
+  private static volatile SessionTape instance;
+
+  /** What the tape does with the traffic of new sessions. */
+  public enum Mode {
+    /** Sessions talk to the Appium server directly. */
+    OFF,
+    /** Sessions talk to the Appium server and every exchange is appended to the tape. */
+    RECORD,
+    /** Sessions are served from the tape and never reach a server. */
+    REPLAY
+  }
+
+  private final Mode mode;
+  private final Path file;
+  private final AtomicLong exchanges = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+
+  // Recording state, guarded by this
+  private DataOutputStream out;
+  private final Map<String, Integer> blobIds = new HashMap<>();
+  private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+  // Replay state, read-only once loaded
+  private final Map<String, Deque<Recorded>> responses = new HashMap<>();
+  private final List<RecordedSession> sessions = new ArrayList<>();
+
+  /**
+   * Creates a tape.
+   *
+   * @param mode What to do with the traffic.
+   * @param file The tape file.
+   * @throws UncheckedIOException If the tape cannot be created or read.
+   */
+  SessionTape(Mode mode, Path file) {
+    this.mode = mode;
+    this.file = file;
+    try {
+      if (mode == Mode.RECORD) {
+        openForRecording();
+      } else if (mode == Mode.REPLAY) {
+        load();
+      }
+    } catch (IOException e) {
+      throw new UncheckedIOException("Cannot open session tape " + file, e);
+    }
+  }
+
+  /**
+   * Returns the singleton instance of the SessionTape, configured from config.json.
+   *
+   * @return The singleton instance.
+   */
+  public static SessionTape getInstance() {
+    if (instance == null) {
+      synchronized (SessionTape.class) {
+        if (instance == null) {
+          ConfigSection recording =
+              ConfigReader.getInstance().getSnapshot().getSection("recording");
+          String mode = recording.getString("mode");
+          String file = recording.getString("file");
+          instance =
+              new SessionTape(
+                  mode != null ? Mode.valueOf(mode.toUpperCase(Locale.ROOT)) : Mode.OFF,
+                  Paths.get(file != null ? file : "recordings/session.tape"));
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Gets what the tape does with the traffic of new sessions.
+   *
+   * @return The mode.
+   */
+  public Mode getMode() {
+    return mode;
+  }
+
+  /**
+   * Gets the number of exchanges recorded or replayed so far.
+   *
+   * @return The number of exchanges.
+   */
+  public long getExchanges() {
+    return exchanges.get();
+  }
+
+  /**
+   * Gets the number of replayed requests that had no recorded response.
+   *
+   * @return The number of misses.
+   */
+  public long getMisses() {
+    return misses.get();
+  }
+
+  /**
+   * Applies the tape to the HTTP clients of new sessions.
+   *
+   * @param factory The factory that creates clients talking to the Appium server.
+   * @return The factory itself when off, a factory whose clients record through it, or a factory
+   *     whose clients replay the tape.
+   */
+  public HttpClient.Factory wrap(HttpClient.Factory factory) {
+    switch (mode) {
+      case RECORD:
+        return config -> new RecordingClient(factory.createClient(config));
+      case REPLAY:
+        return ReplayingClient::new;
+      default:
+        return factory;
+    }
+  }
+
+  /** Flushes and closes the tape when recording. */
+  public synchronized void close() {
+    if (out == null) {
+      return;
+    }
+    try {
+      out.close();
+      logger.info("Recorded {} exchange(s) to {}", exchanges.get(), file);
+    } catch (IOException e) {
+      logger.warn("Failed to close session tape {}: {}", file, e.getMessage());
+    }
+    out = null;
+  }
+
+  private void openForRecording() throws IOException {
+    Path parent = file.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+    out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+    out.writeInt(MAGIC);
+    out.writeInt(VERSION);
+    out.flush();
+    Runtime.getRuntime().addShutdownHook(new Thread(this::close, "session-tape-shutdown"));
+    logger.info("Recording sessions to {}", file);
+  }
+
+  /**
+   * Appends one exchange, writing the bodies as blobs first unless they are already on the tape.
+   * Flushed right away, so a run that dies keeps everything up to its last command.
+   */
+  private synchronized void append(
+      HttpMethod method, String uri, String tag, byte[] request, int status, byte[] response) {
+    if (out == null) {
+      return;
+    }
+    try {
+      int requestBlob = blob(request);
+      int responseBlob = blob(response);
+      out.writeByte(EXCHANGE);
+      out.writeUTF(method.name());
+      out.writeUTF(uri);
+      out.writeUTF(tag);
+      out.writeInt(requestBlob);
+      out.writeShort(status);
+      out.writeInt(responseBlob);
+      out.flush();
+      exchanges.incrementAndGet();
+    } catch (IOException e) {
+      logger.error("Failed to record to {}, recording stopped", file, e);
+      close();
+    }
+  }
+
+  private int blob(byte[] content) throws IOException {
+    if (content.length == 0) {
+      return NO_BODY;
+    }
+    String digest = digest(content);
+    Integer id = blobIds.get(digest);
+    if (id != null) {
+      return id;
+    }
+    id = blobIds.size();
+    byte[] compressed = deflate(content);
+    out.writeByte(BLOB);
+    out.writeInt(id);
+    out.writeInt(content.length);
+    out.writeInt(compressed.length);
+    out.write(compressed);
+    blobIds.put(digest, id);
+    return id;
+  }
+
+  private void load() throws IOException {
+    List<byte[]> blobs = new ArrayList<>();
+    int loaded = 0;
+    try (DataInputStream in =
+        new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+      if (in.readInt() != MAGIC) {
+        throw new IOException("Not a session tape: " + file);
+      }
+      int version = in.readInt();
+      if (version < 1 || version > VERSION) {
+        throw new IOException("Unsupported session tape version " + version + ": " + file);
+      }
+      while (true) {
+        int type = in.read();
+        if (type == -1) {
+          break;
+        }
+        if (type == BLOB) {
+          int id = in.readInt();
+          byte[] content = new byte[in.readInt()];
+          byte[] compressed = new byte[in.readInt()];
+          in.readFully(compressed);
+          inflate(compressed, content);
+          blobs.add(id, content);
+        } else if (type == EXCHANGE) {
+          String method = in.readUTF();
+          String uri = in.readUTF();
+          String tag = version > 1 ? in.readUTF() : "";
+          byte[] request = body(blobs, in.readInt());
+          int status = in.readUnsignedShort();
+          byte[] response = body(blobs, in.readInt());
+          if (NEW_SESSION.equals(method + " " + uri)) {
+            sessions.add(
+                new RecordedSession(tag, capabilities(request), new Recorded(status, response)));
+          } else {
+            responses
+                .computeIfAbsent(key(method, uri, request), k -> new ArrayDeque<>())
+                .add(new Recorded(status, response));
+          }
+          loaded++;
+        } else {
+          throw new IOException("Corrupt session tape " + file + " after " + loaded + " exchanges");
+        }
+      }
+    } catch (EOFException e) {
+      logger.warn("Session tape {} is truncated, replaying its first {} exchanges", file, loaded);
+    }
+    logger.info("Replaying {} exchange(s) from {}", loaded, file);
+  }
+
+  private static byte[] body(List<byte[]> blobs, int id) {
+    return id == NO_BODY ? new byte[0] : blobs.get(id);
+  }
+
+  private static String key(String method, String uri, byte[] request) {
+    return method + " " + uri + "\n" + new String(request, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Gets the capabilities of a new session request without the device-specific ones, as the key
+   * recorded sessions are matched by.
+   */
+  private static String capabilities(byte[] request) {
+    String body = new String(request, StandardCharsets.UTF_8);
+    try {
+      JsonElement json = JsonParser.parseString(body);
+      if (!json.isJsonObject()) {
+        return body;
+      }
+      JsonObject capabilities = json.getAsJsonObject().getAsJsonObject("capabilities");
+      if (capabilities != null) {
+        withoutDevice(capabilities.get("alwaysMatch"));
+        JsonElement firstMatch = capabilities.get("firstMatch");
+        if (firstMatch != null && firstMatch.isJsonArray()) {
+          for (JsonElement match : (JsonArray) firstMatch) {
+            withoutDevice(match);
+          }
+        }
+      }
+      withoutDevice(json.getAsJsonObject().get("desiredCapabilities"));
+      return json.toString();
+    } catch (JsonParseException | ClassCastException e) {
+      return body;
+    }
+  }
+
+  private static void withoutDevice(JsonElement capabilities) {
+    if (capabilities != null && capabilities.isJsonObject()) {
+      for (String name : DEVICE_CAPABILITIES) {
+        capabilities.getAsJsonObject().remove(name);
+      }
+    }
+  }
+
+  /**
+   * Claims the recorded session for a new session request: the next one recorded for the same test
+   * with the same capabilities, else the next unclaimed one with the same capabilities, preferring
+   * sessions recorded for no test, else the next unclaimed one at all. Once all are claimed, the
+   * last matching one is repeated.
+   */
+  private Recorded nextSession(String tag, byte[] body) {
+    String capabilities = capabilities(body);
+    synchronized (sessions) {
+      RecordedSession untagged = null;
+      RecordedSession matching = null;
+      RecordedSession unclaimed = null;
+      RecordedSession last = null;
+      for (RecordedSession session : sessions) {
+        boolean sameCapabilities = session.capabilities.equals(capabilities);
+        if (sameCapabilities || last == null) {
+          last = session;
+        }
+        if (session.claimed) {
+          continue;
+        }
+        if (sameCapabilities && !tag.isEmpty() && tag.equals(session.tag)) {
+          return session.claim();
+        }
+        if (sameCapabilities && session.tag.isEmpty() && untagged == null) {
+          untagged = session;
+        }
+        if (sameCapabilities && matching == null) {
+          matching = session;
+        }
+        if (unclaimed == null) {
+          unclaimed = session;
+        }
+      }
+      if (untagged != null) {
+        return untagged.claim();
+      }
+      if (matching != null) {
+        return matching.claim();
+      }
+      if (unclaimed != null) {
+        return unclaimed.claim();
+      }
+      return last != null ? last.response : null;
+    }
+  }
+
+  private Recorded next(HttpRequest request, byte[] body) {
+    String method = request.getMethod().name();
+    if (NEW_SESSION.equals(method + " " + request.getUri())) {
+      return nextSession(currentTest(), body);
+    }
+    Deque<Recorded> recorded = responses.get(key(method, request.getUri(), body));
+    if (recorded == null) {
+      return null;
+    }
+    synchronized (recorded) {
+      // Keep the last response, so a poll that outlives the recording sees the final state
+      return recorded.size() > 1 ? recorded.poll() : recorded.peek();
+    }
+  }
+
+  private byte[] deflate(byte[] content) {
+    deflater.reset();
+    deflater.setInput(content);
+    deflater.finish();
+    ByteArrayOutputStream compressed = new ByteArrayOutputStream(content.length / 2 + 64);
+    byte[] buffer = new byte[8192];
+    while (!deflater.finished()) {
+      compressed.write(buffer, 0, deflater.deflate(buffer));
+    }
+    return compressed.toByteArray();
+  }
+
+  private void inflate(byte[] compressed, byte[] content) throws IOException {
+    Inflater inflater = new Inflater();
+    try {
+      inflater.setInput(compressed);
+      int length = 0;
+      while (length < content.length && !inflater.finished()) {
+        length += inflater.inflate(content, length, content.length - length);
+      }
+      if (length != content.length) {
+        throw new IOException("Corrupt blob in session tape " + file);
+      }
+    } catch (DataFormatException e) {
+      throw new IOException("Corrupt blob in session tape " + file, e);
+    } finally {
+      inflater.end();
+    }
+  }
+
+  private static String digest(byte[] content) {
+    try {
+      MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+      StringBuilder hex = new StringBuilder(64);
+      for (byte b : sha256.digest(content)) {
+        hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+      }
+      return hex.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException("SHA-256 is not available", e);
+    }
+  }
+
+  private static HttpResponse response(int status, byte[] body) {
+    HttpResponse response = new HttpResponse();
+    response.setStatus(status);
+    response.setHeader("Content-Type", "application/json; charset=utf-8");
+    response.setContent(Contents.bytes(body));
+    return response;
+  }
+
+  /** A recorded response. */
+  private static final class Recorded {
+    private final int status;
+    private final byte[] body;
+
+    private Recorded(int status, byte[] body) {
+      this.status = status;
+      this.body = body;
+    }
+  }
+
+  private static String currentTest() {
+    SessionContext context = SessionContext.peek();
+    String test = context != null ? context.getTest() : null;
+    return test != null ? test : "";
+  }
+
+  /** A recorded new session, tagged with the test it was created for. */
+  private static final class RecordedSession {
+    private final String tag;
+    private final String capabilities;
+    private final Recorded response;
+    private boolean claimed;
+
+    private RecordedSession(String tag, String capabilities, Recorded response) {
+      this.tag = tag;
+      this.capabilities = capabilities;
+      this.response = response;
+    }
+
+    private Recorded claim() {
+      claimed = true;
+      return response;
+    }
+  }
+
+  /** A client that sends requests to the server and appends each exchange to the tape. */
+  private final class RecordingClient implements HttpClient {
+    private final HttpClient delegate;
+
+    private RecordingClient(HttpClient delegate) {
+      this.delegate = delegate;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) {
+      byte[] body = Contents.bytes(request.getContent());
+      String tag =
+          NEW_SESSION.equals(request.getMethod() + " " + request.getUri()) ? currentTest() : "";
+      HttpResponse response = delegate.execute(request);
+      byte[] content = Contents.bytes(response.getContent());
+      response.setContent(Contents.bytes(content));
+      append(request.getMethod(), request.getUri(), tag, body, response.getStatus(), content);
+      return response;
+    }
+
+    @Override
+    public WebSocket openSocket(HttpRequest request, WebSocket.Listener listener) {
+      return delegate.openSocket(request, listener);
+    }
+
+    @Override
+    public void close() {
+      delegate.close();
+    }
+  }
+
+  /** A client that answers every request from the tape. */
+  private final class ReplayingClient implements HttpClient {
+    private final ClientConfig config;
+
+    private ReplayingClient(ClientConfig config) {
+      this.config = config;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) {
+      Recorded recorded = next(request, Contents.bytes(request.getContent()));
+      if (recorded == null) {
+        misses.incrementAndGet();
+        String command = request.getMethod() + " " + request.getUri();
+        logger.warn("No recorded response for {}", command);
+        return response(
+            404,
+            ("{\"value\":{\"error\":\"unknown command\",\"message\":\"No recorded response for "
+                    + command
+                    + " on "
+                    + config.baseUri()
+                    + "\",\"stacktrace\":\"\"}}")
+                .getBytes(StandardCharsets.UTF_8));
+      }
+      exchanges.incrementAndGet();
+      return response(recorded.status, recorded.body);
+    }
+
+    @Override
+    public WebSocket openSocket(HttpRequest request, WebSocket.Listener listener) {
+      throw new UnsupportedOperationException("WebSockets cannot be replayed from a session tape");
+    }
+
+    @Override
+    public void close() {
+      // Nothing to release, the tape stays loaded for the other sessions
+    }
+  }
+}
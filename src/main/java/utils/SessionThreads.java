@@ -0,0 +1,140 @@
+package utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates the threads that run session flows: test methods, background session creation and any
+ * other work that spends its time blocked on Appium HTTP calls. In the opt-in virtual thread mode,
+ * these are virtual threads, so a blocked session flow no longer ties up a platform thread and its
+ * stack, and one JVM can drive many more devices at the same heap. The mode is enabled for TestNG's
+ * test methods by {@link VirtualThreadExecutorFactory} and for the framework's own threads by
+ * {@code execution.virtualThreads} in config.json.
+ *
+ * <p>Virtual threads need JDK 21. They are created by {@code VirtualThreads}, which is compiled
+ * from {@code src/main/java21} by the {@code jdk21} Maven profile and is loaded by name, so the
+ * rest of the framework still targets Java 11. If the mode is enabled but the JVM is older or the
+ * class was not built, platform threads are used and a warning is logged.
+ */
+public class SessionThreads {
+  private static final Logger logger = LoggerFactory.getLogger(SessionThreads.class);
+  private static final String VIRTUAL_THREADS = "utils.VirtualThreads";
+  private static volatile SessionThreads instance;
+
+  private final MethodHandle virtualFactory;
+  private final MethodHandle virtualExecutor;
+
+  /**
+   * Creates a thread source.
+   *
+   * @param virtual True to create virtual threads if the JVM supports them.
+   */
+  SessionThreads(boolean virtual) {
+    MethodHandle factory = null;
+    MethodHandle executor = null;
+    if (virtual) {
+      try {
+        Class<?> type = Class.forName(VIRTUAL_THREADS);
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        factory =
+            lookup.findStatic(
+                type, "factory", MethodType.methodType(ThreadFactory.class, String.class));
+        executor =
+            lookup.findStatic(
+                type,
+                "perTaskExecutor",
+                MethodType.methodType(ExecutorService.class, String.class));
+        logger.info("Session flows run on virtual threads");
+      } catch (ReflectiveOperationException | LinkageError e) {
+        logger.warn(
+            "Virtual threads need JDK 21 and a build with the jdk21 profile (running on Java {}). "
+                + "Using platform threads.",
+            System.getProperty("java.specification.version"));
+        factory = null;
+        executor = null;
+      }
+    }
+    this.virtualFactory = factory;
+    this.virtualExecutor = executor;
+  }
+
+  /**
+   * Returns the singleton instance of the SessionThreads, configured from config.json.
+   *
+   * @return The singleton instance.
+   */
+  public static SessionThreads getInstance() {
+    if (instance == null) {
+      synchronized (SessionThreads.class) {
+        if (instance == null) {
+          instance =
+              new SessionThreads(
+                  ConfigReader.getInstance()
+                      .getSnapshot()
+                      .getSection("execution")
+                      .getBoolean("virtualThreads", false));
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Checks whether session flows run on virtual threads.
+   *
+   * @return True if virtual threads are enabled and supported.
+   */
+  public boolean isVirtual() {
+    return virtualFactory != null;
+  }
+
+  /**
+   * Creates a thread factory for session flows. Platform threads are daemon threads, like virtual
+   * threads, so neither keeps the JVM alive.
+   *
+   * @param prefix The thread name prefix, followed by a sequence number.
+   * @return The thread factory.
+   */
+  public ThreadFactory factory(String prefix) {
+    if (virtualFactory != null) {
+      return (ThreadFactory) invoke(virtualFactory, prefix);
+    }
+    AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * Creates an executor that runs every task on a thread of its own. Virtual threads are never
+   * pooled; platform threads are cached and reused while idle.
+   *
+   * @param prefix The thread name prefix, followed by a sequence number.
+   * @return The executor.
+   */
+  public ExecutorService newPerTaskExecutor(String prefix) {
+    if (virtualExecutor != null) {
+      return (ExecutorService) invoke(virtualExecutor, prefix);
+    }
+    return Executors.newCachedThreadPool(factory(prefix));
+  }
+
+  private static Object invoke(MethodHandle handle, String prefix) {
+    try {
+      return handle.invoke(prefix);
+    } catch (RuntimeException | Error e) {
+      throw e;
+    } catch (Throwable e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
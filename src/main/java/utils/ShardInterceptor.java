@@ -0,0 +1,129 @@
+package utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.IMethodInstance;
+import org.testng.IMethodInterceptor;
+import org.testng.ITestContext;
+
+/**
+ * Splits the suite into K shards of roughly equal expected duration so that {@code mvn test
+ * -Dshard=i/K} on K nodes finish at about the same time. Tests are assigned longest first to the
+ * currently lightest shard, using the historical durations from {@link TestTimingStore}. Tests
+ * without history are assumed to take the median known duration. Without {@code -Dshard} the suite
+ * is left untouched.
+ */
+public class ShardInterceptor implements IMethodInterceptor {
+  private static final Logger logger = LoggerFactory.getLogger(ShardInterceptor.class);
+  private static final String SHARD_PROPERTY = "shard";
+  private static final long DEFAULT_DURATION_MILLIS = 60_000;
+
+  private final TestTimingStore timings;
+
+  /** Creates an interceptor that reads the durations of the shared {@link TestTimingStore}. */
+  public ShardInterceptor() {
+    this(null);
+  }
+
+  /**
+   * Creates an interceptor that reads the durations of the given store.
+   *
+   * @param timings The store, or null to use the shared one.
+   */
+  ShardInterceptor(TestTimingStore timings) {
+    this.timings = timings;
+  }
+
+  @Override
+  public List<IMethodInstance> intercept(List<IMethodInstance> methods, ITestContext context) {
+    String shard = System.getProperty(SHARD_PROPERTY);
+    if (shard == null || shard.isEmpty()) {
+      return methods;
+    }
+
+    String[] parts = shard.split("/");
+    if (parts.length != 2) {
+      throw new IllegalArgumentException("Invalid shard: " + shard + ". Expected format i/K.");
+    }
+    int index = Integer.parseInt(parts[0].trim());
+    int count = Integer.parseInt(parts[1].trim());
+    if (count < 1 || index < 1 || index > count) {
+      throw new IllegalArgumentException(
+          "Invalid shard: " + shard + ". Shard index must be between 1 and K.");
+    }
+
+    Map<String, Long> expected =
+        (timings != null ? timings : TestTimingStore.getInstance()).loadExpectedDurations();
+    long fallback = getMedian(expected);
+
+    List<IMethodInstance> ordered = new ArrayList<>(methods);
+    ordered.sort(
+        Comparator.comparingLong((IMethodInstance m) -> -getExpected(m, expected, fallback))
+            .thenComparing(m -> TestTimingStore.getTestId(m.getMethod())));
+
+    long[] loads = new long[count];
+    Set<IMethodInstance> selected = new HashSet<>();
+    for (IMethodInstance method : ordered) {
+      int lightest = 0;
+      for (int i = 1; i < count; i++) {
+        if (loads[i] < loads[lightest]) {
+          lightest = i;
+        }
+      }
+      loads[lightest] += getExpected(method, expected, fallback);
+      if (lightest == index - 1) {
+        selected.add(method);
+      }
+    }
+
+    List<IMethodInstance> shardMethods = new ArrayList<>();
+    for (IMethodInstance method : methods) {
+      if (selected.contains(method)) {
+        shardMethods.add(method);
+      }
+    }
+    logger.info(
+        "Running shard {}/{} of {}: {} of {} tests, expected {} ms (shard loads: {} ms)",
+        index,
+        count,
+        context.getName(),
+        shardMethods.size(),
+        methods.size(),
+        loads[index - 1],
+        Arrays.toString(loads));
+    return shardMethods;
+  }
+
+  /**
+   * Gets the expected duration of a test.
+   *
+   * @param method The test.
+   * @param expected The expected duration per test id.
+   * @param fallback The duration assumed for tests without history.
+   * @return The expected duration in milliseconds.
+   */
+  static long getExpected(IMethodInstance method, Map<String, Long> expected, long fallback) {
+    return expected.getOrDefault(TestTimingStore.getTestId(method.getMethod()), fallback);
+  }
+
+  /**
+   * Gets the median of the known durations, assumed for tests without history.
+   *
+   * @param expected The expected duration per test id.
+   * @return The median in milliseconds, or one minute if nothing is known.
+   */
+  static long getMedian(Map<String, Long> expected) {
+    if (expected.isEmpty()) {
+      return DEFAULT_DURATION_MILLIS;
+    }
+    long[] durations = expected.values().stream().mapToLong(Long::longValue).sorted().toArray();
+    return durations[durations.length / 2];
+  }
+}
@@ -0,0 +1,153 @@
+package utils;
+
+import exceptions.TransportException;
+import io.appium.java_client.AppiumClientConfig;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URL;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import org.openqa.selenium.remote.http.ClientConfig;
+import org.openqa.selenium.remote.http.HttpClient;
+import org.openqa.selenium.remote.http.HttpRequest;
+import org.openqa.selenium.remote.http.HttpResponse;
+import org.openqa.selenium.remote.http.WebSocket;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * HTTP client factory that shares one client, and so one connection pool and one set of I/O
+ * threads, between all sessions to the same Appium server. By default Selenium builds a new client
+ * for every session and closes it on quit, so each session pays for a fresh thread pool and new TCP
+ * connections. With the shared client, a new session reuses the connections left open by earlier
+ * ones.
+ *
+ * <p>Sessions cannot close the shared client; closing it is a no-op. The transport is configured
+ * under {@code http} in config.json: connect and read timeouts, the HTTP version, and the
+ * keep-alive time and size of the connection pool. The JDK client sends one request per connection
+ * at a time and does not pipeline, which matches WebDriver: a session never has two commands in
+ * flight.
+ */
+public class SharedHttpClientFactory implements HttpClient.Factory {
+  private static final Logger logger = LoggerFactory.getLogger(SharedHttpClientFactory.class);
+  private static volatile SharedHttpClientFactory instance;
+
+  private final HttpClient.Factory delegate;
+  private final Map<String, HttpClient> clients = new ConcurrentHashMap<>();
+
+  /**
+   * Creates a factory that shares the clients of another factory.
+   *
+   * @param delegate The factory that creates the shared clients.
+   */
+  SharedHttpClientFactory(HttpClient.Factory delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * Returns the singleton instance of the SharedHttpClientFactory. The connection pool settings
+   * from config.json are applied before the first client is created.
+   *
+   * @return The singleton instance.
+   */
+  public static SharedHttpClientFactory getInstance() {
+    if (instance == null) {
+      synchronized (SharedHttpClientFactory.class) {
+        if (instance == null) {
+          ConfigSection http = ConfigReader.getInstance().getSnapshot().getSection("http");
+          // Read once by the JDK client when its connection pool is first used
+          setDefault("jdk.httpclient.keepalive.timeout", http.getInt("keepAliveSeconds", 300));
+          setDefault("jdk.httpclient.connectionPoolSize", http.getInt("maxConnections", 0));
+          instance = new SharedHttpClientFactory(HttpClient.Factory.createDefault());
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Builds the client configuration for an Appium server from the {@code http} section of
+   * config.json.
+   *
+   * @param appiumUrl The Appium server URL.
+   * @return The client configuration.
+   */
+  public static AppiumClientConfig clientConfig(URL appiumUrl) {
+    ConfigSection http = ConfigReader.getInstance().getSnapshot().getSection("http");
+    AppiumClientConfig config =
+        AppiumClientConfig.defaultConfig()
+            .baseUrl(appiumUrl)
+            .connectionTimeout(Duration.ofMillis(http.getInt("connectTimeoutMs", 10000)))
+            .readTimeout(Duration.ofMillis(http.getInt("readTimeoutMs", 120000)));
+    // Selenium defaults to HTTP/1.1, which is what Appium speaks; ClientConfig is immutable
+    String version = http.getString("version");
+    return version != null ? AppiumClientConfig.fromClientConfig(config.version(version)) : config;
+  }
+
+  @Override
+  public HttpClient createClient(ClientConfig config) {
+    String key =
+        config.baseUri()
+            + "|"
+            + config.connectionTimeout()
+            + "|"
+            + config.readTimeout()
+            + "|"
+            + config.version();
+    return clients.computeIfAbsent(
+        key,
+        k -> {
+          logger.info("Creating shared HTTP client for {}", config.baseUri());
+          return new SharedClient(delegate.createClient(config), config.baseUri());
+        });
+  }
+
+  /**
+   * Closes all shared clients and their connections. Called once by {@code TestListener} at the end
+   * of the run, after the session pool and the provisioner have quit their sessions; a session that
+   * is still open afterwards can no longer send commands.
+   */
+  public void closeAll() {
+    clients.values().forEach(client -> ((SharedClient) client).delegate.close());
+    clients.clear();
+  }
+
+  private static void setDefault(String property, int value) {
+    if (System.getProperty(property) == null) {
+      System.setProperty(property, String.valueOf(value));
+    }
+  }
+
+  /** A client that ignores {@link #close()}, so one session cannot close it for the others. */
+  private static final class SharedClient implements HttpClient {
+    private final HttpClient delegate;
+    private final URI baseUri;
+
+    private SharedClient(HttpClient delegate, URI baseUri) {
+      this.delegate = delegate;
+      this.baseUri = baseUri;
+    }
+
+    @Override
+    public HttpResponse execute(HttpRequest request) {
+      try {
+        return delegate.execute(request);
+      } catch (UncheckedIOException e) {
+        // Selenium reports this as an unreachable server; keep the request that failed
+        throw new TransportException(
+            request.getMethod() + " " + request.getUri() + " to " + baseUri + " failed", e);
+      }
+    }
+
+    @Override
+    public WebSocket openSocket(HttpRequest request, WebSocket.Listener listener) {
+      return delegate.openSocket(request, listener);
+    }
+
+    @Override
+    public void close() {
+      logger.debug("Keeping shared HTTP client for {} open", baseUri);
+    }
+  }
+}
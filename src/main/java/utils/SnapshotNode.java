@@ -0,0 +1,124 @@
+package utils;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.openqa.selenium.Rectangle;
+
+/** A single element of a {@link PageSnapshot}, holding the attributes from the page source. */
+public final class SnapshotNode {
+  private static final Pattern ANDROID_BOUNDS =
+      Pattern.compile("\\[(-?\\d+),(-?\\d+)]\\[(-?\\d+),(-?\\d+)]");
+
+  private final int index;
+  private final int depth;
+  private final String tag;
+  private final Map<String, String> attributes;
+
+  /**
+   * Creates a new node.
+   *
+   * @param index The position of the node in document order.
+   * @param depth The nesting depth of the node (the root is 0).
+   * @param tag The element name (the class or element type).
+   * @param attributes The element's attributes.
+   */
+  SnapshotNode(int index, int depth, String tag, Map<String, String> attributes) {
+    this.index = index;
+    this.depth = depth;
+    this.tag = tag;
+    this.attributes = Collections.unmodifiableMap(attributes);
+  }
+
+  public int getIndex() {
+    return index;
+  }
+
+  public int getDepth() {
+    return depth;
+  }
+
+  public String getTag() {
+    return tag;
+  }
+
+  public Map<String, String> getAttributes() {
+    return attributes;
+  }
+
+  /**
+   * Gets an attribute value.
+   *
+   * @param name The attribute name.
+   * @return The attribute value, or null if the element does not have it.
+   */
+  public String getAttribute(String name) {
+    return attributes.get(name);
+  }
+
+  /**
+   * Gets the visible text: {@code text} on Android, {@code label} or {@code value} on iOS.
+   *
+   * @return The text, or null if the element has none.
+   */
+  public String getText() {
+    String text = attributes.get("text");
+    if (text == null) {
+      text = attributes.get("label");
+    }
+    if (text == null) {
+      text = attributes.get("value");
+    }
+    return text;
+  }
+
+  /**
+   * Checks whether the page source reports the element as displayed ({@code displayed} on Android,
+   * {@code visible} on iOS). Elements without either attribute are treated as displayed.
+   *
+   * @return True if the element is displayed.
+   */
+  public boolean isDisplayed() {
+    String displayed = attributes.get("displayed");
+    if (displayed == null) {
+      displayed = attributes.get("visible");
+    }
+    return displayed == null || Boolean.parseBoolean(displayed);
+  }
+
+  /**
+   * Gets the element's on-screen rectangle from the page source: {@code bounds="[x1,y1][x2,y2]"} on
+   * Android, {@code x}, {@code y}, {@code width} and {@code height} on iOS.
+   *
+   * @return The bounds, or null if the page source does not contain them.
+   */
+  public Rectangle getBounds() {
+    String bounds = attributes.get("bounds");
+    if (bounds != null) {
+      Matcher matcher = ANDROID_BOUNDS.matcher(bounds);
+      if (!matcher.matches()) {
+        return null;
+      }
+      int left = Integer.parseInt(matcher.group(1));
+      int top = Integer.parseInt(matcher.group(2));
+      int right = Integer.parseInt(matcher.group(3));
+      int bottom = Integer.parseInt(matcher.group(4));
+      return new Rectangle(left, top, bottom - top, right - left);
+    }
+    try {
+      return new Rectangle(
+          Integer.parseInt(attributes.get("x")),
+          Integer.parseInt(attributes.get("y")),
+          Integer.parseInt(attributes.get("height")),
+          Integer.parseInt(attributes.get("width")));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return tag + attributes;
+  }
+}
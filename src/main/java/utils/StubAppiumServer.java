@@ -0,0 +1,719 @@
+package utils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.appium.java_client.AppiumBy;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.imageio.ImageIO;
+import org.openqa.selenium.By;
+import org.openqa.selenium.Rectangle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * In-process stand-in for an Appium server, for exercising the framework without devices. It speaks
+ * the W3C WebDriver protocol for sessions, element lookup and interaction, actions, screenshots,
+ * page source and window size, and answers from scripted UI hierarchies: every screen is an XML
+ * page source, elements are found in it with the same readers the framework uses, and a click on a
+ * scripted element moves the session to another screen. A fixed latency (plus jitter) can be added
+ * to every command to model a real server.
+ *
+ * <p>Point the framework at it with {@code APPIUM_HOST}/{@code APPIUM_PORT}, or run it on its own:
+ *
+ * <pre>{@code
+ * java -cp ... utils.StubAppiumServer --port 4723 --latency-ms 20 --screen home.xml --screen list.xml
+ * }</pre>
+ *
+ * <p>Two live sessions on the same {@code appium:udid} or {@code appium:systemPort} are reported as
+ * collisions, as they would fail on a real device.
+ */
+public class StubAppiumServer {
+  private static final Logger logger = LoggerFactory.getLogger(StubAppiumServer.class);
+  private static final String ELEMENT_KEY = "element-6066-11e4-a52e-4f735466cecf";
+  private static final String DEFAULT_SCREEN =
+      "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+          + "<hierarchy rotation=\"0\">"
+          + "<android.widget.FrameLayout bounds=\"[0,0][1080,1920]\" displayed=\"true\">"
+          + "<android.widget.TextView resource-id=\"com.example.app:id/title\" text=\"Welcome\""
+          + " bounds=\"[40,100][1040,200]\" displayed=\"true\"/>"
+          + "<android.widget.EditText resource-id=\"com.example.app:id/username\" text=\"\""
+          + " bounds=\"[40,300][1040,400]\" displayed=\"true\"/>"
+          + "<android.widget.Button resource-id=\"com.example.app:id/login\" content-desc=\"login\""
+          + " text=\"Log in\" bounds=\"[40,500][1040,600]\" displayed=\"true\"/>"
+          + "</android.widget.FrameLayout>"
+          + "</hierarchy>";
+
+  static {
+    // Send headers and body without waiting for the client's delayed ACK
+    System.setProperty("sun.net.httpserver.nodelay", "true");
+  }
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final Map<String, Screen> screens = new ConcurrentHashMap<>();
+  private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+  private final Set<String> liveUdids = ConcurrentHashMap.newKeySet();
+  private final Set<String> livePorts = ConcurrentHashMap.newKeySet();
+  private final List<String> collisions = new CopyOnWriteArrayList<>();
+  private final AtomicInteger createdSessions = new AtomicInteger();
+  private final AtomicInteger maxConcurrentSessions = new AtomicInteger();
+  private final AtomicLong commands = new AtomicLong();
+  private final AtomicLong actions = new AtomicLong();
+  private volatile String initialScreen;
+  private volatile long latencyMicros;
+  private volatile long jitterMicros;
+  private volatile int windowWidth = 1080;
+  private volatile int windowHeight = 1920;
+  private volatile String screenshot;
+
+  /**
+   * Creates a server on a free local port. The default screen has a title, a text field and a login
+   * button; add screens with {@link #addScreen(String, String)}.
+   *
+   * @throws IOException If the server socket cannot be opened.
+   */
+  public StubAppiumServer() throws IOException {
+    this(0);
+  }
+
+  /**
+   * Creates a server on a local port.
+   *
+   * @param port The port, or 0 for a free one.
+   * @throws IOException If the server socket cannot be opened.
+   */
+  public StubAppiumServer(int port) throws IOException {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+    executor = Executors.newCachedThreadPool();
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    screens.put("default", new Screen(DEFAULT_SCREEN));
+    initialScreen = "default";
+    screenshot = Base64.getEncoder().encodeToString(renderScreenshot(270, 480));
+  }
+
+  public void start() {
+    server.start();
+    logger.info("Stub Appium server listening on {}", getUrl());
+  }
+
+  public void stop() {
+    server.stop(0);
+    executor.shutdownNow();
+  }
+
+  public int getPort() {
+    return server.getAddress().getPort();
+  }
+
+  public String getUrl() {
+    return "http://127.0.0.1:" + getPort();
+  }
+
+  /**
+   * Adds a screen. The first screen added becomes the screen new sessions start on.
+   *
+   * @param name The screen name.
+   * @param pageSource The screen's hierarchy, as returned by {@code getPageSource()}.
+   * @return This server.
+   */
+  public StubAppiumServer addScreen(String name, String pageSource) {
+    if (screens.size() == 1 && screens.containsKey("default")) {
+      initialScreen = name;
+    }
+    screens.put(name, new Screen(pageSource));
+    return this;
+  }
+
+  /**
+   * Scripts a navigation: clicking an element matching the locator on one screen moves the session
+   * to another screen.
+   *
+   * @param screen The screen the click happens on.
+   * @param target The locator of the clickable element (id, accessibility id, class name, XPath).
+   * @param nextScreen The screen shown after the click.
+   * @return This server.
+   */
+  public StubAppiumServer onClick(String screen, By target, String nextScreen) {
+    requireScreen(screen).transitions.put(target, nextScreen);
+    return this;
+  }
+
+  /**
+   * Sets the screen new sessions start on.
+   *
+   * @param screen The screen name.
+   * @return This server.
+   */
+  public StubAppiumServer startOn(String screen) {
+    requireScreen(screen);
+    initialScreen = screen;
+    return this;
+  }
+
+  /**
+   * Adds a delay to every command.
+   *
+   * @param latency The fixed delay.
+   * @param jitter The maximum random delay added on top.
+   * @return This server.
+   */
+  public StubAppiumServer setLatency(Duration latency, Duration jitter) {
+    latencyMicros = latency.toNanos() / 1000;
+    jitterMicros = jitter.toNanos() / 1000;
+    return this;
+  }
+
+  /**
+   * Sets the window size reported to clients.
+   *
+   * @param width The width in pixels.
+   * @param height The height in pixels.
+   * @return This server.
+   */
+  public StubAppiumServer setWindowSize(int width, int height) {
+    windowWidth = width;
+    windowHeight = height;
+    return this;
+  }
+
+  /**
+   * Sets the image returned for screenshots.
+   *
+   * @param png The screenshot as PNG bytes.
+   * @return This server.
+   */
+  public StubAppiumServer setScreenshot(byte[] png) {
+    screenshot = Base64.getEncoder().encodeToString(png);
+    return this;
+  }
+
+  public List<String> getCollisions() {
+    return collisions;
+  }
+
+  public int getCreatedSessions() {
+    return createdSessions.get();
+  }
+
+  public int getMaxConcurrentSessions() {
+    return maxConcurrentSessions.get();
+  }
+
+  public long getCommands() {
+    return commands.get();
+  }
+
+  public long getActions() {
+    return actions.get();
+  }
+
+  /**
+   * Gets the screen a session is on.
+   *
+   * @param sessionId The session id.
+   * @return The screen name, or null if the session does not exist.
+   */
+  public String getScreen(String sessionId) {
+    Session session = sessions.get(sessionId);
+    return session != null ? session.screen : null;
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    try {
+      String method = exchange.getRequestMethod();
+      String path = exchange.getRequestURI().getPath();
+      if (path.startsWith("/wd/hub")) {
+        path = path.substring("/wd/hub".length());
+      }
+      JsonObject body;
+      try (InputStream in = exchange.getRequestBody()) {
+        byte[] bytes = in.readAllBytes();
+        body =
+            bytes.length > 0
+                ? JsonParser.parseString(new String(bytes, StandardCharsets.UTF_8))
+                    .getAsJsonObject()
+                : new JsonObject();
+      }
+      commands.incrementAndGet();
+      delay();
+      route(exchange, method, path.split("/"), body);
+    } catch (RuntimeException e) {
+      logger.warn("Stub Appium server failed to handle {}", exchange.getRequestURI(), e);
+      error(exchange, 500, "unknown error", String.valueOf(e.getMessage()));
+    }
+  }
+
+  private void route(HttpExchange exchange, String method, String[] path, JsonObject body)
+      throws IOException {
+    // path: "", "session", id, command...
+    if (path.length == 2 && "status".equals(path[1])) {
+      JsonObject status = new JsonObject();
+      status.addProperty("ready", true);
+      status.addProperty("message", "stub");
+      value(exchange, status);
+      return;
+    }
+    if (path.length < 2 || !"session".equals(path[1])) {
+      error(exchange, 404, "unknown command", "Unknown endpoint");
+      return;
+    }
+    if (path.length == 2 && "POST".equals(method)) {
+      respond(exchange, 200, newSession(body));
+      return;
+    }
+    Session session = path.length > 2 ? sessions.get(path[2]) : null;
+    if (session == null) {
+      error(exchange, 404, "invalid session id", "Unknown session");
+      return;
+    }
+    if (path.length == 3) {
+      if ("DELETE".equals(method)) {
+        deleteSession(path[2]);
+      }
+      value(exchange, null);
+      return;
+    }
+
+    String command = path[3];
+    switch (command) {
+      case "source":
+        value(exchange, session.screen().source);
+        return;
+      case "screenshot":
+        value(exchange, screenshot);
+        return;
+      case "window":
+        value(exchange, windowRect());
+        return;
+      case "actions":
+        if ("POST".equals(method)) {
+          actions.incrementAndGet();
+        }
+        value(exchange, null);
+        return;
+      case "element":
+      case "elements":
+        if (path.length == 4) {
+          find(exchange, session, null, command.equals("elements"), body);
+        } else {
+          element(exchange, method, session, path, body);
+        }
+        return;
+      case "execute":
+        // terminateApp reports whether the app was running, and the client expects a boolean
+        boolean terminated =
+            body.has("script") && "mobile: terminateApp".equals(body.get("script").getAsString());
+        value(exchange, terminated ? true : null);
+        return;
+      default:
+        // timeouts, appium/* and other commands without a visible effect
+        value(exchange, null);
+    }
+  }
+
+  private void element(
+      HttpExchange exchange, String method, Session session, String[] path, JsonObject body)
+      throws IOException {
+    // path: "", "session", id, "element", elementId, command...
+    SnapshotNode node = session.resolve(path[4]);
+    if (node == null) {
+      error(
+          exchange,
+          404,
+          "stale element reference",
+          "The element is not attached to the current screen");
+      return;
+    }
+    String command = path.length > 5 ? path[5] : "";
+    switch (command) {
+      case "element":
+      case "elements":
+        find(exchange, session, node, command.equals("elements"), body);
+        return;
+      case "click":
+        session.click(node);
+        value(exchange, null);
+        return;
+      case "value":
+        session.typed.put(path[4], body.has("text") ? body.get("text").getAsString() : "");
+        value(exchange, null);
+        return;
+      case "clear":
+        session.typed.put(path[4], "");
+        value(exchange, null);
+        return;
+      case "text":
+        String typed = session.typed.get(path[4]);
+        value(exchange, typed != null ? typed : node.getText() != null ? node.getText() : "");
+        return;
+      case "displayed":
+        value(exchange, node.isDisplayed());
+        return;
+      case "enabled":
+        value(exchange, !"false".equals(node.getAttribute("enabled")));
+        return;
+      case "selected":
+        value(exchange, "true".equals(node.getAttribute("selected")));
+        return;
+      case "name":
+        value(exchange, node.getTag());
+        return;
+      case "attribute":
+        value(exchange, path.length > 6 ? node.getAttribute(path[6]) : null);
+        return;
+      case "rect":
+        value(exchange, rect(node));
+        return;
+      case "screenshot":
+        value(exchange, screenshot);
+        return;
+      default:
+        value(exchange, null);
+    }
+  }
+
+  private void find(
+      HttpExchange exchange, Session session, SnapshotNode parent, boolean all, JsonObject body)
+      throws IOException {
+    By locator = toBy(body.get("using").getAsString(), body.get("value").getAsString());
+    if (locator == null) {
+      error(exchange, 400, "invalid selector", "Unsupported locator strategy");
+      return;
+    }
+    Screen screen = session.screen();
+    List<SnapshotNode> matches = screen.snapshot.find(locator);
+    if (parent != null) {
+      List<SnapshotNode> descendants = new ArrayList<>();
+      int end = screen.subtreeEnd(parent);
+      for (SnapshotNode match : matches) {
+        if (match.getIndex() > parent.getIndex() && match.getIndex() < end) {
+          descendants.add(match);
+        }
+      }
+      matches = descendants;
+    }
+    if (all) {
+      JsonArray elements = new JsonArray();
+      for (SnapshotNode match : matches) {
+        elements.add(reference(session, match));
+      }
+      value(exchange, elements);
+    } else if (matches.isEmpty()) {
+      error(exchange, 404, "no such element", "No element matches " + locator);
+    } else {
+      value(exchange, reference(session, matches.get(0)));
+    }
+  }
+
+  private String newSession(JsonObject body) {
+    JsonObject capabilities = body.getAsJsonObject("capabilities");
+    JsonObject merged = new JsonObject();
+    if (capabilities != null && capabilities.has("alwaysMatch")) {
+      capabilities
+          .getAsJsonObject("alwaysMatch")
+          .entrySet()
+          .forEach(e -> merged.add(e.getKey(), e.getValue()));
+    }
+    if (capabilities != null && capabilities.has("firstMatch")) {
+      for (JsonElement match : capabilities.getAsJsonArray("firstMatch")) {
+        match.getAsJsonObject().entrySet().forEach(e -> merged.add(e.getKey(), e.getValue()));
+      }
+    }
+
+    String sessionId = UUID.randomUUID().toString();
+    String udid = getString(merged, "appium:udid");
+    String port = getString(merged, "appium:systemPort");
+    if (udid != null && !liveUdids.add(udid)) {
+      collisions.add("udid " + udid);
+    }
+    if (port != null && !livePorts.add(port)) {
+      collisions.add("systemPort " + port);
+    }
+    sessions.put(sessionId, new Session(merged, initialScreen));
+    createdSessions.incrementAndGet();
+    maxConcurrentSessions.accumulateAndGet(sessions.size(), Math::max);
+
+    JsonObject value = new JsonObject();
+    value.addProperty("sessionId", sessionId);
+    value.add("capabilities", merged);
+    JsonObject response = new JsonObject();
+    response.add("value", value);
+    return response.toString();
+  }
+
+  private void deleteSession(String sessionId) {
+    Session session = sessions.remove(sessionId);
+    if (session != null) {
+      String udid = getString(session.capabilities, "appium:udid");
+      String port = getString(session.capabilities, "appium:systemPort");
+      if (udid != null) {
+        liveUdids.remove(udid);
+      }
+      if (port != null) {
+        livePorts.remove(port);
+      }
+    }
+  }
+
+  private JsonObject reference(Session session, SnapshotNode node) {
+    JsonObject reference = new JsonObject();
+    reference.addProperty(ELEMENT_KEY, session.screen + ":" + node.getIndex());
+    return reference;
+  }
+
+  private JsonObject windowRect() {
+    JsonObject rect = new JsonObject();
+    rect.addProperty("x", 0);
+    rect.addProperty("y", 0);
+    rect.addProperty("width", windowWidth);
+    rect.addProperty("height", windowHeight);
+    return rect;
+  }
+
+  private static JsonObject rect(SnapshotNode node) {
+    Rectangle bounds = node.getBounds();
+    JsonObject rect = new JsonObject();
+    rect.addProperty("x", bounds != null ? bounds.getX() : 0);
+    rect.addProperty("y", bounds != null ? bounds.getY() : 0);
+    rect.addProperty("width", bounds != null ? bounds.getWidth() : 0);
+    rect.addProperty("height", bounds != null ? bounds.getHeight() : 0);
+    return rect;
+  }
+
+  private static By toBy(String using, String value) {
+    switch (using) {
+      case "id":
+        return By.id(value);
+      case "accessibility id":
+        return AppiumBy.accessibilityId(value);
+      case "class name":
+        return By.className(value);
+      case "xpath":
+        return By.xpath(value);
+      default:
+        return null;
+    }
+  }
+
+  private void delay() {
+    long micros = latencyMicros;
+    if (jitterMicros > 0) {
+      micros += ThreadLocalRandom.current().nextLong(jitterMicros + 1);
+    }
+    if (micros > 0) {
+      try {
+        Thread.sleep(micros / 1000, (int) (micros % 1000) * 1000);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  private Screen requireScreen(String name) {
+    Screen screen = screens.get(name);
+    if (screen == null) {
+      throw new IllegalArgumentException("Unknown screen: " + name);
+    }
+    return screen;
+  }
+
+  private static String getString(JsonObject object, String key) {
+    return object.has(key) ? object.get(key).getAsString() : null;
+  }
+
+  private static void value(HttpExchange exchange, Object value) throws IOException {
+    JsonObject response = new JsonObject();
+    if (value instanceof JsonElement) {
+      response.add("value", (JsonElement) value);
+    } else if (value instanceof Boolean) {
+      response.addProperty("value", (Boolean) value);
+    } else if (value != null) {
+      response.addProperty("value", value.toString());
+    } else {
+      response.add("value", null);
+    }
+    respond(exchange, 200, response.toString());
+  }
+
+  private static void error(HttpExchange exchange, int status, String error, String message)
+      throws IOException {
+    JsonObject value = new JsonObject();
+    value.addProperty("error", error);
+    value.addProperty("message", message);
+    value.addProperty("stacktrace", "");
+    JsonObject response = new JsonObject();
+    response.add("value", value);
+    respond(exchange, status, response.toString());
+  }
+
+  private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+    byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+    exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+    exchange.sendResponseHeaders(status, bytes.length);
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(bytes);
+    }
+  }
+
+  private static byte[] renderScreenshot(int width, int height) {
+    BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    Graphics2D graphics = image.createGraphics();
+    try {
+      graphics.setColor(Color.WHITE);
+      graphics.fillRect(0, 0, width, height);
+      graphics.setColor(Color.GRAY);
+      graphics.fillRect(10, 25, width - 20, 25);
+    } finally {
+      graphics.dispose();
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    try {
+      ImageIO.write(image, "png", out);
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+    return out.toByteArray();
+  }
+
+  /** A scripted screen: its page source, its nodes by index and its click transitions. */
+  private static final class Screen {
+    private final String source;
+    private final PageSnapshot snapshot;
+    private final List<SnapshotNode> nodes;
+    private final Map<By, String> transitions = new LinkedHashMap<>();
+
+    private Screen(String source) {
+      this.source = source;
+      this.snapshot = PageSnapshot.parse(source);
+      this.nodes = snapshot.find(By.xpath("//*"));
+    }
+
+    private SnapshotNode node(int index) {
+      return index >= 0 && index < nodes.size() ? nodes.get(index) : null;
+    }
+
+    /** Gets the index of the first node after the subtree of a node. */
+    private int subtreeEnd(SnapshotNode parent) {
+      int index = parent.getIndex() + 1;
+      while (index < nodes.size() && nodes.get(index).getDepth() > parent.getDepth()) {
+        index++;
+      }
+      return index;
+    }
+  }
+
+  /** A live session: its capabilities, the screen it is on and the text typed into fields. */
+  private final class Session {
+    private final JsonObject capabilities;
+    private final Map<String, String> typed = new ConcurrentHashMap<>();
+    private volatile String screen;
+
+    private Session(JsonObject capabilities, String screen) {
+      this.capabilities = capabilities;
+      this.screen = screen;
+    }
+
+    private Screen screen() {
+      return screens.get(screen);
+    }
+
+    /** Resolves an element id, or returns null if it belongs to a screen no longer shown. */
+    private SnapshotNode resolve(String elementId) {
+      int separator = elementId.lastIndexOf(':');
+      if (separator < 0 || !elementId.substring(0, separator).equals(screen)) {
+        return null;
+      }
+      try {
+        return screen().node(Integer.parseInt(elementId.substring(separator + 1)));
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+
+    private void click(SnapshotNode node) {
+      Screen current = screen();
+      synchronized (current.transitions) {
+        for (Map.Entry<By, String> transition : current.transitions.entrySet()) {
+          for (SnapshotNode target : current.snapshot.find(transition.getKey())) {
+            if (target.getIndex() == node.getIndex()) {
+              screen = transition.getValue();
+              typed.clear();
+              return;
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs the server until the process is stopped.
+   *
+   * @param args {@code --port N}, {@code --latency-ms N}, {@code --jitter-ms N} and any number of
+   *     {@code --screen file.xml}; the first screen is the start screen.
+   * @throws IOException If the server cannot be started or a screen cannot be read.
+   */
+  public static void main(String[] args) throws IOException {
+    int port = 4723;
+    long latency = 0;
+    long jitter = 0;
+    List<String> screenFiles = new ArrayList<>();
+    for (int i = 0; i + 1 < args.length; i += 2) {
+      switch (args[i]) {
+        case "--port":
+          port = Integer.parseInt(args[i + 1]);
+          break;
+        case "--latency-ms":
+          latency = Long.parseLong(args[i + 1]);
+          break;
+        case "--jitter-ms":
+          jitter = Long.parseLong(args[i + 1]);
+          break;
+        case "--screen":
+          screenFiles.add(args[i + 1]);
+          break;
+        default:
+          throw new IllegalArgumentException("Unknown option: " + args[i]);
+      }
+    }
+    StubAppiumServer server = new StubAppiumServer(port);
+    for (String file : screenFiles) {
+      String name = Paths.get(file).getFileName().toString().replaceFirst("\\.xml$", "");
+      server.addScreen(
+          name, new String(Files.readAllBytes(Paths.get(file)), StandardCharsets.UTF_8));
+    }
+    server.setLatency(Duration.ofMillis(latency), Duration.ofMillis(jitter));
+    server.start();
+  }
+}
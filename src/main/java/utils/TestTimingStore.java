@@ -0,0 +1,142 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.ITestNGMethod;
+import org.testng.ITestResult;
+
+/**
+ * Append-only store of historical test durations, kept in reports/test-timings.tsv by default
+ * ({@code timings.file} in config.json, or the {@code TEST_TIMINGS} environment variable or system
+ * property). Each line holds the timestamp, test id, duration in milliseconds and status of one
+ * test run. The store is read back to estimate how long each test is expected to take when sharding
+ * the suite.
+ */
+public class TestTimingStore {
+  private static final Logger logger = LoggerFactory.getLogger(TestTimingStore.class);
+  private static final int HISTORY_SIZE = 5;
+  private static volatile TestTimingStore instance;
+
+  private final Path file;
+
+  /**
+   * Creates a store backed by the given file.
+   *
+   * @param file The timings file.
+   */
+  TestTimingStore(Path file) {
+    this.file = file;
+  }
+
+  /**
+   * Returns the singleton instance of the TestTimingStore.
+   *
+   * @return The singleton instance.
+   */
+  public static TestTimingStore getInstance() {
+    if (instance == null) {
+      synchronized (TestTimingStore.class) {
+        if (instance == null) {
+          String file =
+              ConfigReader.getInstance().getSnapshot().getSection("timings").getString("file");
+          instance =
+              new TestTimingStore(Paths.get(file != null ? file : "reports/test-timings.tsv"));
+        }
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Gets the id under which a test method's durations are stored.
+   *
+   * @param method The test method.
+   * @return The test id in the form {@code className#methodName}.
+   */
+  public static String getTestId(ITestNGMethod method) {
+    return method.getRealClass().getName() + "#" + method.getMethodName();
+  }
+
+  /**
+   * Appends the duration of a finished test to the store.
+   *
+   * @param result The result of the finished test.
+   */
+  public void record(ITestResult result) {
+    long duration = result.getEndMillis() - result.getStartMillis();
+    String line =
+        String.format(
+            "%d\t%s\t%d\t%s%n",
+            result.getEndMillis(),
+            getTestId(result.getMethod()),
+            duration,
+            result.isSuccess() ? "PASS" : "FAIL");
+    synchronized (this) {
+      try {
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        Files.write(
+            file,
+            line.getBytes(StandardCharsets.UTF_8),
+            StandardOpenOption.CREATE,
+            StandardOpenOption.APPEND);
+      } catch (IOException e) {
+        logger.warn("Failed to record duration of {}: {}", result.getName(), e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * Loads the expected duration of every known test, averaged over its most recent runs.
+   *
+   * @return The expected duration in milliseconds per test id.
+   */
+  public Map<String, Long> loadExpectedDurations() {
+    Map<String, Deque<Long>> history = new HashMap<>();
+    List<String> lines;
+    synchronized (this) {
+      if (!Files.exists(file)) {
+        return new HashMap<>();
+      }
+      try {
+        lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+      } catch (IOException e) {
+        logger.warn("Failed to read test timings from {}: {}", file, e.getMessage());
+        return new HashMap<>();
+      }
+    }
+
+    for (String line : lines) {
+      String[] fields = line.split("\t");
+      if (fields.length < 3) {
+        continue;
+      }
+      try {
+        Deque<Long> durations = history.computeIfAbsent(fields[1], k -> new ArrayDeque<>());
+        durations.addLast(Long.parseLong(fields[2]));
+        if (durations.size() > HISTORY_SIZE) {
+          durations.removeFirst();
+        }
+      } catch (NumberFormatException e) {
+        logger.debug("Skipping malformed timing line: {}", line);
+      }
+    }
+
+    Map<String, Long> expected = new HashMap<>();
+    history.forEach(
+        (testId, durations) ->
+            expected.put(
+                testId, (long) durations.stream().mapToLong(Long::longValue).average().orElse(0)));
+    return expected;
+  }
+}
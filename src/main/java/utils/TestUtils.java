@@ -1,40 +1,31 @@
 package utils;
 
 import io.appium.java_client.AppiumDriver;
-import java.io.File;
-import java.text.SimpleDateFormat;
-import java.time.Duration;
-import java.util.Date;
-import org.apache.commons.io.FileUtils;
-import org.openqa.selenium.OutputType;
-import org.openqa.selenium.TakesScreenshot;
+import org.openqa.selenium.By;
 import org.openqa.selenium.WebElement;
-import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.WebDriverWait;
 
 public class TestUtils {
 
   public static void takeScreenshot(AppiumDriver driver, String fileName) {
     try {
-      File screenshot = ((TakesScreenshot) driver).getScreenshotAs(OutputType.FILE);
-      String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-      File destination = new File("screenshots/" + fileName + "_" + timestamp + ".png");
-      destination.getParentFile().mkdirs();
-      FileUtils.copyFile(screenshot, destination);
-      System.out.println("Screenshot saved: " + destination.getAbsolutePath());
+      ScreenshotService.getInstance().capture(driver, fileName);
+      System.out.println("Screenshot queued: " + fileName);
     } catch (Exception e) {
       System.err.println("Failed to take screenshot: " + e.getMessage());
     }
   }
 
   public static void waitForElement(AppiumDriver driver, WebElement element, int timeoutSeconds) {
-    WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(timeoutSeconds));
-    wait.until(ExpectedConditions.visibilityOf(element));
+    WaitHelper.waitForElementToBeVisible(driver, element, timeoutSeconds);
   }
 
   public static void clickElement(AppiumDriver driver, WebElement element) {
-    WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(10));
-    wait.until(ExpectedConditions.elementToBeClickable(element));
+    WaitHelper.waitForElementToBeClickable(driver, element, 10);
+    element.click();
+  }
+
+  public static void clickElement(AppiumDriver driver, By locator) {
+    WebElement element = WaitHelper.waitForElementToBeClickable(driver, locator, 10);
     element.click();
   }
 
@@ -43,8 +34,11 @@ public class TestUtils {
     element.sendKeys(text);
   }
 
+  public static void sendKeys(AppiumDriver driver, By locator, String text) {
+    sendKeys(ElementCache.getInstance().find(driver, locator), text);
+  }
+
   public static void scrollToElement(AppiumDriver driver, WebElement element) {
-    // Platform-specific scroll implementation would go here
-    // This is a placeholder
+    GestureHelper.scrollToElement(driver, element);
   }
 }
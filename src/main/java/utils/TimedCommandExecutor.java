@@ -0,0 +1,40 @@
+package utils;
+
+import io.appium.java_client.AppiumClientConfig;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.Command;
+import org.openqa.selenium.remote.Response;
+import org.openqa.selenium.remote.http.HttpClient;
+
+/**
+ * Appium command executor that times every command it sends, from the request leaving the client to
+ * the parsed response, and records it in the {@link CommandMetrics} of the session's platform and
+ * device. The histograms are looked up once per session, so the only per-command cost is two {@code
+ * nanoTime()} calls and the histogram update.
+ */
+public class TimedCommandExecutor extends SessionCommandExecutor {
+  private final CommandMetrics.Target metrics;
+
+  /**
+   * Creates an executor for a server.
+   *
+   * @param config The client configuration, including the Appium server URL.
+   * @param clientFactory The factory that creates the HTTP client.
+   * @param metrics The histograms the command latencies are recorded in.
+   */
+  public TimedCommandExecutor(
+      AppiumClientConfig config, HttpClient.Factory clientFactory, CommandMetrics.Target metrics) {
+    super(config, clientFactory);
+    this.metrics = metrics;
+  }
+
+  @Override
+  public Response execute(Command command) throws WebDriverException {
+    long start = System.nanoTime();
+    try {
+      return super.execute(command);
+    } finally {
+      metrics.record(command.getName(), System.nanoTime() - start);
+    }
+  }
+}
@@ -0,0 +1,103 @@
+package utils;
+
+import java.util.Comparator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.testng.IDynamicGraph;
+import org.testng.ISuite;
+import org.testng.ITestNGMethod;
+import org.testng.internal.thread.DefaultThreadPoolExecutorFactory;
+import org.testng.thread.IExecutorFactory;
+import org.testng.thread.ITestNGThreadPoolExecutor;
+import org.testng.thread.IThreadWorkerFactory;
+
+/**
+ * TestNG executor factory that runs parallel suites and test methods on virtual threads, so a test
+ * that waits for Appium no longer ties up a platform thread and the thread count can match a large
+ * device farm. Scheduling is left to TestNG's own executors; only their threads are replaced. Using
+ * the factory is the opt-in, it does not depend on {@code execution.virtualThreads}: TestNG creates
+ * its executors before any test has set up the configuration. On a JVM without virtual threads,
+ * TestNG keeps its platform threads.
+ *
+ * <p>TestNG takes the factory from its {@code -threadpoolfactoryclass} command line option, see the
+ * README. Methods with {@code threadPoolSize} and parallel data providers use TestNG pools that
+ * cannot be replaced and keep running on platform threads.
+ */
+public class VirtualThreadExecutorFactory implements IExecutorFactory {
+  private final IExecutorFactory delegate = new DefaultThreadPoolExecutorFactory();
+  private final SessionThreads threads;
+
+  /** Creates a factory using virtual threads if the JVM supports them. */
+  public VirtualThreadExecutorFactory() {
+    this(new SessionThreads(true));
+  }
+
+  /**
+   * Creates a factory using the given threads.
+   *
+   * @param threads The source of the worker threads.
+   */
+  VirtualThreadExecutorFactory(SessionThreads threads) {
+    this.threads = threads;
+  }
+
+  @Override
+  public ITestNGThreadPoolExecutor newSuiteExecutor(
+      String name,
+      IDynamicGraph<ISuite> graph,
+      IThreadWorkerFactory<ISuite> factory,
+      int corePoolSize,
+      int maximumPoolSize,
+      long keepAliveTime,
+      TimeUnit unit,
+      BlockingQueue<Runnable> workQueue,
+      Comparator<ISuite> comparator) {
+    return onSessionThreads(
+        delegate.newSuiteExecutor(
+            name,
+            graph,
+            factory,
+            corePoolSize,
+            maximumPoolSize,
+            keepAliveTime,
+            unit,
+            workQueue,
+            comparator),
+        "TestNG-suites-");
+  }
+
+  @Override
+  public ITestNGThreadPoolExecutor newTestMethodExecutor(
+      String name,
+      IDynamicGraph<ITestNGMethod> graph,
+      IThreadWorkerFactory<ITestNGMethod> factory,
+      int corePoolSize,
+      int maximumPoolSize,
+      long keepAliveTime,
+      TimeUnit unit,
+      BlockingQueue<Runnable> workQueue,
+      Comparator<ITestNGMethod> comparator) {
+    return onSessionThreads(
+        delegate.newTestMethodExecutor(
+            name,
+            graph,
+            factory,
+            corePoolSize,
+            maximumPoolSize,
+            keepAliveTime,
+            unit,
+            workQueue,
+            comparator),
+        "TestNG-methods-");
+  }
+
+  private ITestNGThreadPoolExecutor onSessionThreads(
+      ITestNGThreadPoolExecutor executor, String prefix) {
+    // No worker has started yet; they are created once TestNG runs the executor
+    if (threads.isVirtual() && executor instanceof ThreadPoolExecutor) {
+      ((ThreadPoolExecutor) executor).setThreadFactory(threads.factory(prefix));
+    }
+    return executor;
+  }
+}
@@ -2,15 +2,21 @@ package utils;
 
 import io.appium.java_client.AppiumDriver;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import org.openqa.selenium.By;
+import org.openqa.selenium.WebDriver;
 import org.openqa.selenium.WebElement;
 import org.openqa.selenium.support.ui.ExpectedCondition;
 import org.openqa.selenium.support.ui.ExpectedConditions;
-import org.openqa.selenium.support.ui.WebDriverWait;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-/** Utility class for handling explicit waits. */
+/**
+ * Utility class for handling explicit waits. Waits are run by {@link AdaptiveWait}, which polls
+ * with backoff and suspends the implicit wait while waiting.
+ */
 public class WaitHelper {
   private static final Logger logger = LoggerFactory.getLogger(WaitHelper.class);
 
@@ -33,8 +39,8 @@ public class WaitHelper {
   public static void waitForElementToBeVisible(
       AppiumDriver driver, WebElement element, int timeoutInSeconds) {
     try {
-      WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(timeoutInSeconds));
-      wait.until(ExpectedConditions.visibilityOf(element));
+      AdaptiveWait.until(
+          driver, ExpectedConditions.visibilityOf(element), Duration.ofSeconds(timeoutInSeconds));
     } catch (Exception e) {
       logger.error("Element not visible within {} seconds", timeoutInSeconds, e);
       throw e;
@@ -61,8 +67,11 @@ public class WaitHelper {
   public static void waitForElementToBeVisible(
       AppiumDriver driver, By locator, int timeoutInSeconds) {
     try {
-      WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(timeoutInSeconds));
-      wait.until(ExpectedConditions.visibilityOfElementLocated(locator));
+      AdaptiveWait.untilLocated(
+          driver,
+          locator,
+          ExpectedConditions.visibilityOfElementLocated(locator),
+          Duration.ofSeconds(timeoutInSeconds));
     } catch (Exception e) {
       logger.error(
           "Element with locator {} not visible within {} seconds", locator, timeoutInSeconds, e);
@@ -90,8 +99,10 @@ public class WaitHelper {
   public static void waitForElementToBeClickable(
       AppiumDriver driver, WebElement element, int timeoutInSeconds) {
     try {
-      WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(timeoutInSeconds));
-      wait.until(ExpectedConditions.elementToBeClickable(element));
+      AdaptiveWait.until(
+          driver,
+          ExpectedConditions.elementToBeClickable(element),
+          Duration.ofSeconds(timeoutInSeconds));
     } catch (Exception e) {
       logger.error("Element not clickable within {} seconds", timeoutInSeconds, e);
       throw e;
@@ -108,6 +119,39 @@ public class WaitHelper {
     waitForElementToBeClickable(driver, element, getDefaultTimeout());
   }
 
+  /**
+   * Waits for an element located by a locator to be clickable using a custom timeout. The element
+   * is taken from the {@link ElementCache}, so an element found before is checked without another
+   * find, and one that went stale is found again.
+   *
+   * @param driver The Appium driver.
+   * @param locator The locator of the element.
+   * @param timeoutInSeconds The custom timeout in seconds.
+   * @return The clickable element.
+   */
+  public static WebElement waitForElementToBeClickable(
+      AppiumDriver driver, By locator, int timeoutInSeconds) {
+    try {
+      return AdaptiveWait.until(
+          driver, clickable(driver, locator), Duration.ofSeconds(timeoutInSeconds));
+    } catch (Exception e) {
+      logger.error(
+          "Element with locator {} not clickable within {} seconds", locator, timeoutInSeconds, e);
+      throw e;
+    }
+  }
+
+  /**
+   * Waits for an element located by a locator to be clickable using the default timeout.
+   *
+   * @param driver The Appium driver.
+   * @param locator The locator of the element.
+   * @return The clickable element.
+   */
+  public static WebElement waitForElementToBeClickable(AppiumDriver driver, By locator) {
+    return waitForElementToBeClickable(driver, locator, getDefaultTimeout());
+  }
+
   /**
    * Waits for an element to be invisible using a custom timeout.
    *
@@ -118,8 +162,8 @@ public class WaitHelper {
   public static void waitForElementToBeInvisible(
       AppiumDriver driver, WebElement element, int timeoutInSeconds) {
     try {
-      WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(timeoutInSeconds));
-      wait.until(ExpectedConditions.invisibilityOf(element));
+      AdaptiveWait.until(
+          driver, ExpectedConditions.invisibilityOf(element), Duration.ofSeconds(timeoutInSeconds));
     } catch (Exception e) {
       logger.error("Element still visible after {} seconds", timeoutInSeconds, e);
       throw e;
@@ -146,8 +190,11 @@ public class WaitHelper {
   public static void waitForPresenceOfElement(
       AppiumDriver driver, By locator, int timeoutInSeconds) {
     try {
-      WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(timeoutInSeconds));
-      wait.until(ExpectedConditions.presenceOfElementLocated(locator));
+      AdaptiveWait.untilLocated(
+          driver,
+          locator,
+          ExpectedConditions.presenceOfElementLocated(locator),
+          Duration.ofSeconds(timeoutInSeconds));
     } catch (Exception e) {
       logger.error(
           "Element with locator {} not present within {} seconds", locator, timeoutInSeconds, e);
@@ -176,8 +223,10 @@ public class WaitHelper {
   public static boolean waitForElementToDisappear(
       AppiumDriver driver, By locator, int timeoutInSeconds) {
     try {
-      WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(timeoutInSeconds));
-      return wait.until(ExpectedConditions.invisibilityOfElementLocated(locator));
+      return AdaptiveWait.until(
+          driver,
+          ExpectedConditions.invisibilityOfElementLocated(locator),
+          Duration.ofSeconds(timeoutInSeconds));
     } catch (Exception e) {
       logger.warn(
           "Element with locator {} still present after {} seconds", locator, timeoutInSeconds);
@@ -195,11 +244,174 @@ public class WaitHelper {
   public static <T> void customWait(
       AppiumDriver driver, int timeoutInSeconds, ExpectedCondition<T> condition) {
     try {
-      WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(timeoutInSeconds));
-      wait.until(condition);
+      AdaptiveWait.until(driver, condition, Duration.ofSeconds(timeoutInSeconds));
     } catch (Exception e) {
       logger.error("Custom wait condition not met within {} seconds", timeoutInSeconds, e);
       throw e;
     }
   }
+
+  /**
+   * Waits until any one of several locators finds an element, evaluating all of them in each poll
+   * cycle. When every locator has an XPath equivalent, a cycle costs a single find call for the
+   * union of the locators; the matching locator is only resolved once something was found.
+   *
+   * @param driver The Appium driver.
+   * @param timeoutInSeconds The custom timeout in seconds.
+   * @param locators The locators to wait for, in order of preference.
+   * @return The first locator (in the given order) that found an element.
+   */
+  public static LocatorMatch waitForAny(AppiumDriver driver, int timeoutInSeconds, By... locators) {
+    try {
+      return AdaptiveWait.until(
+          driver, anyPresent(driver, locators), Duration.ofSeconds(timeoutInSeconds));
+    } catch (Exception e) {
+      logger.error(
+          "None of {} present within {} seconds", Arrays.toString(locators), timeoutInSeconds, e);
+      throw e;
+    }
+  }
+
+  /**
+   * Waits until any one of several locators finds an element using the default timeout.
+   *
+   * @param driver The Appium driver.
+   * @param locators The locators to wait for, in order of preference.
+   * @return The first locator (in the given order) that found an element.
+   */
+  public static LocatorMatch waitForAny(AppiumDriver driver, By... locators) {
+    return waitForAny(driver, getDefaultTimeout(), locators);
+  }
+
+  /**
+   * Waits until every one of several locators finds an element. Each poll cycle stops at the first
+   * locator that finds nothing, and the next cycle starts with that locator, so a cycle usually
+   * costs a single find call until the last missing element appears.
+   *
+   * @param driver The Appium driver.
+   * @param timeoutInSeconds The custom timeout in seconds.
+   * @param locators The locators to wait for.
+   * @return One match per locator, in the given order.
+   */
+  public static List<LocatorMatch> waitForAll(
+      AppiumDriver driver, int timeoutInSeconds, By... locators) {
+    try {
+      return AdaptiveWait.until(
+          driver, allPresent(driver, locators), Duration.ofSeconds(timeoutInSeconds));
+    } catch (Exception e) {
+      logger.error(
+          "Not all of {} present within {} seconds",
+          Arrays.toString(locators),
+          timeoutInSeconds,
+          e);
+      throw e;
+    }
+  }
+
+  /**
+   * Waits until every one of several locators finds an element using the default timeout.
+   *
+   * @param driver The Appium driver.
+   * @param locators The locators to wait for.
+   * @return One match per locator, in the given order.
+   */
+  public static List<LocatorMatch> waitForAll(AppiumDriver driver, By... locators) {
+    return waitForAll(driver, getDefaultTimeout(), locators);
+  }
+
+  private static ExpectedCondition<WebElement> clickable(AppiumDriver driver, By locator) {
+    ElementCache cache = ElementCache.getInstance();
+    return new ExpectedCondition<WebElement>() {
+      @Override
+      public WebElement apply(WebDriver ignored) {
+        WebElement element = cache.find(driver, locator);
+        return element.isDisplayed() && element.isEnabled() ? element : null;
+      }
+
+      @Override
+      public String toString() {
+        return "element to be clickable: " + locator;
+      }
+    };
+  }
+
+  private static ExpectedCondition<LocatorMatch> anyPresent(AppiumDriver driver, By[] locators) {
+    requireLocators(locators);
+    By union = unionOf(driver, locators);
+    return new ExpectedCondition<LocatorMatch>() {
+      @Override
+      public LocatorMatch apply(WebDriver ignored) {
+        if (union != null && driver.findElements(union).isEmpty()) {
+          return null;
+        }
+        for (int i = 0; i < locators.length; i++) {
+          List<WebElement> found = driver.findElements(locators[i]);
+          if (!found.isEmpty()) {
+            return new LocatorMatch(i, locators[i], found.get(0));
+          }
+        }
+        return null;
+      }
+
+      @Override
+      public String toString() {
+        return "any of " + Arrays.toString(locators);
+      }
+    };
+  }
+
+  private static ExpectedCondition<List<LocatorMatch>> allPresent(
+      AppiumDriver driver, By[] locators) {
+    requireLocators(locators);
+    return new ExpectedCondition<List<LocatorMatch>>() {
+      private int firstToCheck;
+
+      @Override
+      public List<LocatorMatch> apply(WebDriver ignored) {
+        LocatorMatch[] matches = new LocatorMatch[locators.length];
+        for (int n = 0; n < locators.length; n++) {
+          int i = (firstToCheck + n) % locators.length;
+          List<WebElement> found = driver.findElements(locators[i]);
+          if (found.isEmpty()) {
+            firstToCheck = i;
+            return null;
+          }
+          matches[i] = new LocatorMatch(i, locators[i], found.get(0));
+        }
+        return Arrays.asList(matches);
+      }
+
+      @Override
+      public String toString() {
+        return "all of " + Arrays.toString(locators);
+      }
+    };
+  }
+
+  /**
+   * Builds a single XPath locator matching any of the given locators.
+   *
+   * @return The union locator, or null if there is only one locator or one has no XPath form.
+   */
+  private static By unionOf(AppiumDriver driver, By[] locators) {
+    if (locators.length < 2) {
+      return null;
+    }
+    boolean ios = Locators.isIos(driver);
+    List<String> expressions = new ArrayList<>(locators.length);
+    for (By locator : locators) {
+      String expression = Locators.toXPath(locator, ios);
+      if (expression == null) {
+        return null;
+      }
+      expressions.add(expression);
+    }
+    return By.xpath(Locators.union(expressions));
+  }
+
+  private static void requireLocators(By[] locators) {
+    if (locators == null || locators.length == 0) {
+      throw new IllegalArgumentException("At least one locator is required");
+    }
+  }
 }
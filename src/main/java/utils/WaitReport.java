@@ -0,0 +1,59 @@
+package utils;
+
+/** Outcome of a single explicit wait: how often the condition was polled and how long it took. */
+public final class WaitReport {
+  private final String description;
+  private final int polls;
+  private final long elapsedMillis;
+  private final boolean satisfied;
+  private final boolean serverSide;
+
+  /**
+   * Creates a new report.
+   *
+   * @param description What was waited for.
+   * @param polls The number of client-side polls (round-trips) made.
+   * @param elapsedMillis The wall time of the wait.
+   * @param satisfied Whether the condition was met before the timeout.
+   * @param serverSide Whether the wait was delegated to the Appium server.
+   */
+  WaitReport(
+      String description, int polls, long elapsedMillis, boolean satisfied, boolean serverSide) {
+    this.description = description;
+    this.polls = polls;
+    this.elapsedMillis = elapsedMillis;
+    this.satisfied = satisfied;
+    this.serverSide = serverSide;
+  }
+
+  public String getDescription() {
+    return description;
+  }
+
+  public int getPolls() {
+    return polls;
+  }
+
+  public long getElapsedMillis() {
+    return elapsedMillis;
+  }
+
+  public boolean isSatisfied() {
+    return satisfied;
+  }
+
+  public boolean isServerSide() {
+    return serverSide;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(
+        "%s: %s after %d poll(s) in %d ms%s",
+        description,
+        satisfied ? "met" : "timed out",
+        polls,
+        elapsedMillis,
+        serverSide ? " (server-side)" : "");
+  }
+}
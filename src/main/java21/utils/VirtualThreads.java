@@ -0,0 +1,33 @@
+package utils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates virtual threads for {@link SessionThreads}. Compiled for Java 21 by the {@code jdk21}
+ * Maven profile and only loaded by name, so the rest of the framework can keep targeting Java 11.
+ */
+final class VirtualThreads {
+  private VirtualThreads() {}
+
+  /**
+   * Creates a factory for named virtual threads.
+   *
+   * @param prefix The thread name prefix, followed by a sequence number.
+   * @return The thread factory.
+   */
+  static ThreadFactory factory(String prefix) {
+    return Thread.ofVirtual().name(prefix, 1).factory();
+  }
+
+  /**
+   * Creates an executor that starts a new virtual thread for every task.
+   *
+   * @param prefix The thread name prefix, followed by a sequence number.
+   * @return The executor.
+   */
+  static ExecutorService perTaskExecutor(String prefix) {
+    return Executors.newThreadPerTaskExecutor(factory(prefix));
+  }
+}
@@ -2,27 +2,72 @@ package com.example;
 
 import io.appium.java_client.AppiumDriver;
 import java.net.MalformedURLException;
+import java.util.Arrays;
+import org.testng.IHookCallBack;
+import org.testng.IHookable;
+import org.testng.ITestResult;
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Parameters;
 import utils.DriverManager;
+import utils.FailureClassifier;
+import utils.SessionContext;
+import utils.TestTimingStore;
 
-public class BaseTest {
-  protected AppiumDriver driver;
+public class BaseTest implements IHookable {
+  private static final String SESSION_FAILURE = "sessionFailure";
 
+  /**
+   * Creates the session of the test. If that fails because of the infrastructure, the failure is
+   * reported by the test itself instead: TestNG skips a test whose setup failed without asking its
+   * retry analyzer, so the test could not be retried on a new session.
+   *
+   * @param platform The platform to create the session for.
+   * @param result The result of the test about to run.
+   * @throws MalformedURLException If the Appium URL is invalid.
+   */
   @BeforeMethod
   @Parameters({"platform"})
-  public void setUp(String platform) throws MalformedURLException {
-    DriverManager.initializeDriver(platform);
-    driver = DriverManager.getDriver();
+  public void setUp(String platform, ITestResult result) throws MalformedURLException {
+    // Lets a replayed run hand every test the session recorded for it
+    String test = TestTimingStore.getTestId(result.getMethod());
+    Object[] parameters = result.getParameters();
+    SessionContext.current()
+        .setTest(parameters.length == 0 ? test : test + Arrays.toString(parameters));
+    try {
+      DriverManager.initializeDriver(platform);
+    } catch (RuntimeException e) {
+      if (!FailureClassifier.classify(e).isInfrastructure()) {
+        throw e;
+      }
+      result.setAttribute(SESSION_FAILURE, e);
+    }
   }
 
-  @AfterMethod
-  public void tearDown() {
-    DriverManager.quitDriver();
+  @Override
+  public void run(IHookCallBack callBack, ITestResult result) {
+    Object failure = result.getAttribute(SESSION_FAILURE);
+    if (failure != null) {
+      result.removeAttribute(SESSION_FAILURE);
+      result.setThrowable((Throwable) failure);
+      result.setStatus(ITestResult.FAILURE);
+      return;
+    }
+    callBack.runTestMethod(result);
   }
 
+  @AfterMethod(alwaysRun = true)
+  public void tearDown(ITestResult result) {
+    DriverManager.releaseDriver(result.isSuccess());
+  }
+
+  /**
+   * Gets the driver of the current test thread. Test classes are shared between worker threads when
+   * running with parallel="methods", so the driver must not be cached in a field.
+   *
+   * @return The Appium driver.
+   */
   public AppiumDriver getDriver() {
-    return driver;
+    return DriverManager.getDriver();
   }
 }
@@ -13,7 +13,7 @@ public class ExampleTest extends BaseTest {
   @Test(description = "Verify app launches successfully")
   public void testAppLaunch() {
     // Wait for app to load
-    WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(20));
+    WebDriverWait wait = new WebDriverWait(getDriver(), Duration.ofSeconds(20));
 
     // Example: Verify an element is displayed
     // Replace with your actual element locator
@@ -24,13 +24,13 @@ public class ExampleTest extends BaseTest {
                   AppiumBy.id("com.example.app:id/main_screen")));
       Assert.assertTrue(element.isDisplayed(), "App did not launch successfully");
     } catch (Exception e) {
-      Assert.fail("Failed to launch app: " + e.getMessage());
+      Assert.fail("Failed to launch app: " + e.getMessage(), e);
     }
   }
 
   @Test(description = "Example test with actions")
   public void testBasicInteraction() {
-    WebDriverWait wait = new WebDriverWait(driver, Duration.ofSeconds(15));
+    WebDriverWait wait = new WebDriverWait(getDriver(), Duration.ofSeconds(15));
 
     try {
       // Example: Find and click a button
@@ -45,7 +45,7 @@ public class ExampleTest extends BaseTest {
                   AppiumBy.xpath("//android.widget.TextView[@text='Expected Result']")));
       Assert.assertTrue(resultText.isDisplayed(), "Expected result not displayed");
     } catch (Exception e) {
-      Assert.fail("Test interaction failed: " + e.getMessage());
+      Assert.fail("Test interaction failed: " + e.getMessage(), e);
     }
   }
 }
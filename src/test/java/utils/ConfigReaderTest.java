@@ -0,0 +1,58 @@
+package utils;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/**
+ * Reloads a configuration file after edits and verifies that broken edits are rejected while the
+ * previous snapshot stays active.
+ */
+public class ConfigReaderTest {
+  private static final String CONFIG =
+      "{\"android\": {\"platformName\": \"Android\"},"
+          + " \"appiumServer\": {\"host\": \"127.0.0.1\", \"port\": \"%d\"},"
+          + " \"testSettings\": {\"implicitWait\": 5, \"explicitWait\": %d}}";
+
+  @Test
+  public void testRejectedReloadKeepsSnapshot() throws IOException {
+    Path file = Files.createTempFile("config", ".json");
+    try {
+      write(file, String.format(CONFIG, 4723, 20));
+      ConfigReader reader = new ConfigReader(file);
+      ConfigSnapshot loaded = reader.getSnapshot();
+      Assert.assertEquals(loaded.getAppiumUrl(), "http://127.0.0.1:4723");
+
+      write(file, "{\"android\": {\"platformName\": ");
+      Assert.assertFalse(reader.reload(), "Published malformed JSON");
+      Assert.assertSame(reader.getSnapshot(), loaded);
+
+      write(file, String.format(CONFIG, 4723, 0));
+      Assert.assertFalse(reader.reload(), "Published a zero explicit wait");
+      Assert.assertSame(reader.getSnapshot(), loaded);
+
+      write(
+          file,
+          String.format(CONFIG, 4723, 20)
+              .replaceFirst("}$", ", \"frameRecorder\": {\"frames\": 0}}"));
+      Assert.assertFalse(reader.reload(), "Published a frame recorder without frames");
+      Assert.assertSame(reader.getSnapshot(), loaded);
+
+      write(file, String.format(CONFIG, 4724, 30));
+      Assert.assertTrue(reader.reload(), "Rejected a valid edit");
+      Assert.assertNotSame(reader.getSnapshot(), loaded);
+      Assert.assertEquals(reader.getSnapshot().getAppiumUrl(), "http://127.0.0.1:4724");
+      Assert.assertEquals(reader.getExplicitWait(), 30);
+      reader.close();
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+}
@@ -0,0 +1,144 @@
+package utils;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.testng.Assert;
+import org.testng.TestNG;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.testng.xml.XmlClass;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+
+/**
+ * Drives {@link DriverManager} from many TestNG worker threads against a {@link StubAppiumServer}
+ * and verifies that the device leases never hand the same device or system port to two live
+ * sessions.
+ */
+public class DeviceSchedulerTest {
+  private static final int DEVICES = 16;
+  private static final int THREADS = 24;
+
+  private final Set<String> udidsInUse = ConcurrentHashMap.newKeySet();
+  private final Set<Integer> portsInUse = ConcurrentHashMap.newKeySet();
+  private StubAppiumServer server;
+
+  @BeforeClass
+  public void startServer() throws IOException {
+    server = new StubAppiumServer();
+    server.start();
+    System.setProperty("configFile", writeConfig(server.getPort()).toString());
+  }
+
+  @AfterClass(alwaysRun = true)
+  public void stopServer() {
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  @Test(invocationCount = THREADS * 4, threadPoolSize = THREADS)
+  public void testDeviceLeasesDoNotCollide() throws Exception {
+    DriverManager.initializeDriver("android");
+    try {
+      Device device = DriverManager.getDevice();
+      Assert.assertNotNull(device, "No device leased");
+      Assert.assertTrue(udidsInUse.add(device.getUdid()), "Device leased twice: " + device);
+      Assert.assertTrue(
+          portsInUse.add(device.getSystemPort()), "Port leased twice: " + device.getSystemPort());
+      Thread.sleep(20);
+      udidsInUse.remove(device.getUdid());
+      portsInUse.remove(device.getSystemPort());
+    } finally {
+      DriverManager.releaseDriver(true);
+    }
+  }
+
+  @Test(dependsOnMethods = "testDeviceLeasesDoNotCollide")
+  public void testServerSawNoCollisions() {
+    Assert.assertTrue(server.getCollisions().isEmpty(), "Collisions: " + server.getCollisions());
+    Assert.assertEquals(server.getCreatedSessions(), THREADS * 4);
+    Assert.assertTrue(server.getMaxConcurrentSessions() <= DEVICES);
+    Assert.assertTrue(server.getMaxConcurrentSessions() > 1, "Sessions never ran in parallel");
+  }
+
+  @Test(dependsOnMethods = "testServerSawNoCollisions")
+  public void testSessionFlowsOnSessionThreads() {
+    SessionThreads threads = new SessionThreads(true);
+    int before = server.getCreatedSessions();
+    SessionFlow.reset();
+
+    XmlSuite suite = new XmlSuite();
+    suite.setName("Session flows");
+    suite.setParallel(XmlSuite.ParallelMode.METHODS);
+    suite.setThreadCount(DEVICES);
+    XmlTest test = new XmlTest(suite);
+    test.setName("Flows");
+    test.setXmlClasses(Collections.singletonList(new XmlClass(SessionFlow.class)));
+    TestNG testng = new TestNG(false);
+    testng.setXmlSuites(Collections.singletonList(suite));
+    testng.setExecutorFactory(new VirtualThreadExecutorFactory(threads));
+    testng.setOutputDirectory("target/session-flows");
+    testng.run();
+
+    Assert.assertEquals(testng.getStatus(), 0, "A session flow failed");
+    Assert.assertEquals(SessionFlow.passed.get(), SessionFlow.FLOWS);
+    Assert.assertEquals(server.getCreatedSessions() - before, SessionFlow.FLOWS);
+    Assert.assertTrue(server.getCollisions().isEmpty(), "Collisions: " + server.getCollisions());
+    if (threads.isVirtual()) {
+      Assert.assertEquals(
+          SessionFlow.onSessionThreads.get(), SessionFlow.FLOWS, "Flows ran on TestNG threads");
+    }
+  }
+
+  private static Path writeConfig(int port) throws IOException {
+    JsonObject android = new JsonObject();
+    android.addProperty("platformName", "Android");
+    android.addProperty("deviceName", "Android Emulator");
+    android.addProperty("automationName", "UiAutomator2");
+    android.addProperty("appPackage", "com.example.app");
+    android.addProperty("appActivity", "com.example.app.MainActivity");
+
+    JsonObject appiumServer = new JsonObject();
+    appiumServer.addProperty("host", "127.0.0.1");
+    appiumServer.addProperty("port", String.valueOf(port));
+
+    JsonObject testSettings = new JsonObject();
+    testSettings.addProperty("implicitWait", 0);
+    testSettings.addProperty("deviceLeaseTimeout", 60);
+
+    JsonObject sessionPool = new JsonObject();
+    sessionPool.addProperty("enabled", false);
+
+    JsonArray androidDevices = new JsonArray();
+    for (int i = 0; i < DEVICES; i++) {
+      JsonObject device = new JsonObject();
+      device.addProperty("deviceName", "Android Emulator " + i);
+      device.addProperty("udid", "emulator-" + (5554 + i * 2));
+      device.addProperty("systemPort", 8200 + i);
+      androidDevices.add(device);
+    }
+    JsonObject devices = new JsonObject();
+    devices.add("android", androidDevices);
+
+    JsonObject config = new JsonObject();
+    config.add("android", android);
+    config.add("appiumServer", appiumServer);
+    config.add("testSettings", testSettings);
+    config.add("sessionPool", sessionPool);
+    config.add("devices", devices);
+
+    Path file = Files.createTempFile("config", ".json");
+    file.toFile().deleteOnExit();
+    Files.write(file, config.toString().getBytes(StandardCharsets.UTF_8));
+    return file;
+  }
+}
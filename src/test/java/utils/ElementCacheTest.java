@@ -0,0 +1,98 @@
+package utils;
+
+import io.appium.java_client.AppiumBy;
+import io.appium.java_client.android.AndroidDriver;
+import io.appium.java_client.android.options.UiAutomator2Options;
+import java.io.IOException;
+import java.net.URL;
+import org.openqa.selenium.By;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebElement;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Finds elements through the {@link ElementCache} on a {@link StubAppiumServer} whose login button
+ * moves to another screen, so cached elements go stale.
+ */
+public class ElementCacheTest {
+  private static final String LIST_SCREEN =
+      "<hierarchy>"
+          + "<android.widget.TextView resource-id=\"com.example.app:id/title\" text=\"Items\""
+          + " bounds=\"[0,0][1080,120]\"/>"
+          + "</hierarchy>";
+
+  private StubAppiumServer server;
+  private AndroidDriver driver;
+
+  @BeforeClass
+  public void startServer() throws IOException {
+    server = new StubAppiumServer();
+    server.addScreen("list", LIST_SCREEN).startOn("default");
+    server.onClick("default", By.id("login"), "list");
+    server.start();
+  }
+
+  @AfterClass(alwaysRun = true)
+  public void stopServer() {
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  @BeforeMethod
+  public void createSession() throws IOException {
+    driver = new AndroidDriver(new URL(server.getUrl()), new UiAutomator2Options());
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void quitSession() {
+    if (driver != null) {
+      ElementCache.getInstance().invalidate(driver);
+      driver.quit();
+    }
+  }
+
+  @Test
+  public void testReusesAndRecoversElements() {
+    ElementCache cache = ElementCache.getInstance();
+    long hits = cache.getHits();
+    long misses = cache.getMisses();
+    long recoveries = cache.getRecoveries();
+
+    WebElement title = cache.find(driver, By.id("title"));
+    long commands = server.getCommands();
+    Assert.assertSame(cache.find(driver, By.id("title")), title);
+    Assert.assertEquals(server.getCommands(), commands);
+    Assert.assertEquals(title.getText(), "Welcome");
+
+    TestUtils.sendKeys(driver, By.id("username"), "alice");
+    TestUtils.clickElement(driver, AppiumBy.accessibilityId("login"));
+    // The old title went stale with the screen change and is found again with its locator
+    Assert.assertEquals(title.getText(), "Items");
+    Assert.assertThrows(
+        StaleElementReferenceException.class,
+        () -> cache.find(driver, By.id("username")).getText());
+
+    Assert.assertEquals(cache.getHits() - hits, 2);
+    Assert.assertEquals(cache.getMisses() - misses, 3);
+    Assert.assertEquals(cache.getRecoveries() - recoveries, 1);
+  }
+
+  @Test
+  public void testInvalidateDropsSession() {
+    ElementCache cache = ElementCache.getInstance();
+    WebElement title = cache.find(driver, By.id("title"));
+    long misses = cache.getMisses();
+    cache.invalidate(driver);
+
+    long commands = server.getCommands();
+    Assert.assertNotSame(cache.find(driver, By.id("title")), title);
+    Assert.assertEquals(server.getCommands() - commands, 1);
+    Assert.assertEquals(cache.getMisses() - misses, 1);
+  }
+}
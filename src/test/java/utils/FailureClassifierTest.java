@@ -0,0 +1,137 @@
+package utils;
+
+import static exceptions.FailureCategory.SESSION_CREATION;
+import static exceptions.FailureCategory.SESSION_LOST;
+import static exceptions.FailureCategory.TEST;
+import static exceptions.FailureCategory.TRANSPORT;
+
+import io.appium.java_client.AppiumClientConfig;
+import io.appium.java_client.MobileCommand;
+import io.appium.java_client.android.AndroidDriver;
+import io.appium.java_client.android.options.UiAutomator2Options;
+import io.appium.java_client.remote.AppiumCommandExecutor;
+import java.io.IOException;
+import java.net.URL;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.http.HttpClient;
+import org.openqa.selenium.remote.http.HttpMethod;
+import org.openqa.selenium.remote.http.HttpRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Classifies the failures a test sees against a {@link StubAppiumServer}: failures of the test
+ * itself, a session deleted on the server, a server that went away, and a session that cannot be
+ * created.
+ */
+public class FailureClassifierTest {
+  private static final Logger logger = LoggerFactory.getLogger(FailureClassifierTest.class);
+
+  private StubAppiumServer server;
+  private SharedHttpClientFactory clients;
+
+  @BeforeClass
+  public void startServer() throws IOException {
+    server = new StubAppiumServer();
+    server.start();
+  }
+
+  @AfterClass(alwaysRun = true)
+  public void stopServer() {
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  @BeforeMethod
+  public void createClients() {
+    clients = new SharedHttpClientFactory(HttpClient.Factory.createDefault());
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void closeClients() {
+    clients.closeAll();
+  }
+
+  @Test
+  public void testTestFailures() throws IOException {
+    Assert.assertEquals(FailureClassifier.classify(new AssertionError("wrong title")), TEST);
+    AndroidDriver driver = driver(server.getUrl());
+    try {
+      driver.findElement(By.id("missing"));
+      Assert.fail("Found a missing element");
+    } catch (NoSuchElementException e) {
+      Assert.assertEquals(FailureClassifier.classify(e), TEST);
+    } finally {
+      driver.quit();
+    }
+  }
+
+  @Test
+  public void testLostSession() throws IOException {
+    AndroidDriver driver = driver(server.getUrl());
+    // The session is gone on the server, as after a driver crash
+    try (HttpClient raw =
+        HttpClient.Factory.createDefault().createClient(new URL(server.getUrl()))) {
+      raw.execute(new HttpRequest(HttpMethod.DELETE, "/session/" + driver.getSessionId()));
+    }
+    try {
+      driver.getPageSource();
+      Assert.fail("Used a deleted session");
+    } catch (WebDriverException e) {
+      Assert.assertEquals(FailureClassifier.classify(e), SESSION_LOST);
+      Assert.assertEquals(
+          FailureClassifier.classify(new AssertionError("Failed: " + e.getMessage(), e)),
+          SESSION_LOST);
+    } finally {
+      quitQuietly(driver);
+    }
+  }
+
+  @Test
+  public void testStoppedServer() throws IOException {
+    StubAppiumServer crashing = new StubAppiumServer();
+    crashing.start();
+    String url = crashing.getUrl();
+    AndroidDriver orphan = driver(url);
+    crashing.stop();
+    try {
+      orphan.getPageSource();
+      Assert.fail("Reached a stopped server");
+    } catch (WebDriverException e) {
+      Assert.assertEquals(FailureClassifier.classify(e), TRANSPORT);
+    } finally {
+      quitQuietly(orphan);
+    }
+    try {
+      driver(url);
+      Assert.fail("Created a session on a stopped server");
+    } catch (WebDriverException e) {
+      Assert.assertEquals(FailureClassifier.classify(e), SESSION_CREATION);
+    }
+  }
+
+  private AndroidDriver driver(String url) throws IOException {
+    AppiumClientConfig config = AppiumClientConfig.defaultConfig().baseUrl(new URL(url));
+    return new AndroidDriver(
+        new AppiumCommandExecutor(MobileCommand.commandRepository, null, clients, config),
+        new UiAutomator2Options());
+  }
+
+  /** Quits a driver whose session or server is already gone, which fails on the server side. */
+  private static void quitQuietly(AndroidDriver driver) {
+    try {
+      driver.quit();
+    } catch (WebDriverException e) {
+      logger.debug("Quit a session that was already gone: {}", e.getMessage());
+    }
+  }
+}
@@ -0,0 +1,87 @@
+package utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.stream.Collectors;
+import org.openqa.selenium.By;
+import org.testng.Assert;
+import org.testng.annotations.DataProvider;
+import org.testng.annotations.Test;
+
+/**
+ * Checks that the streaming XPath subset of {@link HierarchyReader} finds the same elements as the
+ * DOM evaluator it replaces, and that everything outside the subset is left to the DOM.
+ */
+public class HierarchyReaderTest {
+  private static final String SOURCE =
+      "<hierarchy>"
+          + "<android.widget.FrameLayout resource-id=\"com.example.app:id/root\">"
+          + "<android.widget.TextView resource-id=\"com.example.app:id/title\" text=\"Items\""
+          + " enabled=\"true\"/>"
+          + "<android.widget.EditText resource-id=\"com.example.app:id/search\" text=\"Search items\""
+          + " enabled=\"true\"/>"
+          + "<android.widget.ListView resource-id=\"com.example.app:id/list\">"
+          + "<android.widget.TextView resource-id=\"com.example.app:id/item\" text=\"First item\""
+          + " content-desc=\"item-1\" enabled=\"true\"/>"
+          + "<android.widget.TextView resource-id=\"com.example.app:id/item\" text=\"Second item\""
+          + " content-desc=\"item-2\" enabled=\"false\"/>"
+          + "<android.widget.Button resource-id=\"com.example.app:id/more\" text=\"More\""
+          + " enabled=\"true\"/>"
+          + "</android.widget.ListView>"
+          + "</android.widget.FrameLayout>"
+          + "</hierarchy>";
+
+  @DataProvider
+  public Object[][] streamable() {
+    return new Object[][] {
+      {"//android.widget.TextView[@text='Items']"},
+      {"//android.widget.TextView[@resource-id=\"com.example.app:id/item\"]"},
+      {"//*[contains(@text, 'item')]"},
+      {"//*[starts-with(@content-desc, 'item-')]"},
+      {"//android.widget.TextView[contains(@text, 'item') and @enabled='true']"},
+      {"//*[@enabled='true' and starts-with(@resource-id, 'com.example.app:id/')]"},
+      {"//*"},
+      {"//android.widget.Button"},
+      {"//android.widget.TextView[@text='Missing']"}
+    };
+  }
+
+  @Test(dataProvider = "streamable")
+  public void testStreamingMatchesDom(String expression) {
+    HierarchyReader.ElementMatcher matcher = HierarchyReader.matcherFor(By.xpath(expression));
+    Assert.assertNotNull(matcher, expression + " is not streamed");
+    List<SnapshotNode> streamed =
+        HierarchyReader.find(SOURCE.getBytes(StandardCharsets.UTF_8), matcher, Integer.MAX_VALUE);
+    List<SnapshotNode> dom = PageSnapshot.parse(SOURCE).evaluateXPath(expression);
+    Assert.assertEquals(indexes(streamed), indexes(dom), expression);
+    for (int i = 0; i < dom.size(); i++) {
+      Assert.assertEquals(streamed.get(i).getDepth(), dom.get(i).getDepth(), expression);
+      Assert.assertEquals(streamed.get(i).getAttributes(), dom.get(i).getAttributes(), expression);
+    }
+  }
+
+  @DataProvider
+  public Object[][] domOnly() {
+    return new Object[][] {
+      {"//android.widget.TextView[1]"},
+      {"//*[@text='Items' or @text='More']"},
+      {"//android.widget.TextView[@enabled='true'][@resource-id='com.example.app:id/item']"},
+      {"//android.widget.ListView//android.widget.TextView"},
+      {"//android.widget.ListView[@resource-id='com.example.app:id/list']/android.widget.Button"},
+      {"/hierarchy/android.widget.FrameLayout"}
+    };
+  }
+
+  @Test(dataProvider = "domOnly")
+  public void testOutsideSubsetFallsBackToDom(String expression) {
+    Assert.assertNull(HierarchyReader.matcherFor(By.xpath(expression)), expression + " streamed");
+    PageSnapshot snapshot = PageSnapshot.parse(SOURCE);
+    Assert.assertFalse(snapshot.find(By.xpath(expression)).isEmpty(), expression);
+    Assert.assertEquals(
+        indexes(snapshot.find(By.xpath(expression))), indexes(snapshot.evaluateXPath(expression)));
+  }
+
+  private static List<Integer> indexes(List<SnapshotNode> nodes) {
+    return nodes.stream().map(SnapshotNode::getIndex).collect(Collectors.toList());
+  }
+}
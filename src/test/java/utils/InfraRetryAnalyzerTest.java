@@ -0,0 +1,138 @@
+package utils;
+
+import com.example.BaseTest;
+import io.appium.java_client.android.AndroidDriver;
+import io.appium.java_client.android.options.UiAutomator2Options;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.URL;
+import java.util.Collections;
+import java.util.List;
+import org.openqa.selenium.NoSuchSessionException;
+import org.testng.Assert;
+import org.testng.ITestResult;
+import org.testng.SkipException;
+import org.testng.TestListenerAdapter;
+import org.testng.TestNG;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+import org.testng.xml.XmlClass;
+import org.testng.xml.XmlSuite;
+import org.testng.xml.XmlTest;
+
+/**
+ * Checks when {@link InfraRetryAnalyzer} retries a failed test: only after infrastructure failures,
+ * at most {@code maxRetriesPerTest} times per test and within the suite budget, and always on a new
+ * session. A nested TestNG run checks that a session that cannot be created in {@link BaseTest}
+ * fails the test in a way the analyzer retries, instead of skipping it.
+ */
+public class InfraRetryAnalyzerTest {
+  private StubAppiumServer server;
+
+  @BeforeClass
+  public void startServer() throws IOException {
+    server = new StubAppiumServer();
+    server.start();
+  }
+
+  @AfterClass(alwaysRun = true)
+  public void stopServer() {
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void detachSession() {
+    SessionContext.detach();
+  }
+
+  @Test
+  public void testRetriesInfrastructureFailureOnNewSession() throws IOException {
+    RetryBudget budget = new RetryBudget(true, 1, 10);
+    InfraRetryAnalyzer analyzer = new InfraRetryAnalyzer(() -> budget);
+    SessionContext context = SessionContext.current();
+    context.driver = new AndroidDriver(new URL(server.getUrl()), new UiAutomator2Options());
+    String sessionId = context.driver.getSessionId().toString();
+
+    Throwable lost = new NoSuchSessionException("gone");
+    Assert.assertTrue(analyzer.retry(lost, "Tests#testLogin", "suite"));
+    Assert.assertNull(context.driver, "Kept the broken session");
+    Assert.assertNull(server.getScreen(sessionId), "Broken session is still open");
+    Assert.assertEquals(budget.getUsed("suite"), 1);
+
+    // The retry failed the same way
+    Assert.assertFalse(
+        analyzer.retry(lost, "Tests#testLogin", "suite"), "Retried beyond maxRetriesPerTest");
+    Assert.assertEquals(budget.getUsed("suite"), 1);
+    Assert.assertEquals(budget.getDenied(), 0);
+  }
+
+  @Test
+  public void testNeverRetriesTestFailures() {
+    RetryBudget budget = new RetryBudget(true, 1, 10);
+    InfraRetryAnalyzer analyzer = new InfraRetryAnalyzer(() -> budget);
+    Assert.assertFalse(analyzer.retry(new AssertionError("title"), "Tests#testLogin", "suite"));
+    Assert.assertEquals(budget.getUsed("suite"), 0);
+  }
+
+  @Test
+  public void testRefusesRetriesBeyondSuiteBudget() {
+    RetryBudget budget = new RetryBudget(true, 1, 2);
+    Throwable lost = new NoSuchSessionException("gone");
+    Assert.assertTrue(new InfraRetryAnalyzer(() -> budget).retry(lost, "Tests#a", "suite"));
+    Assert.assertTrue(new InfraRetryAnalyzer(() -> budget).retry(lost, "Tests#b", "suite"));
+    Assert.assertFalse(
+        new InfraRetryAnalyzer(() -> budget).retry(lost, "Tests#c", "suite"),
+        "Retried beyond the suite budget");
+    Assert.assertTrue(new InfraRetryAnalyzer(() -> budget).retry(lost, "Tests#a", "other"));
+    Assert.assertEquals(budget.getUsed("suite"), 2);
+    Assert.assertEquals(budget.getUsed("other"), 1);
+    Assert.assertEquals(budget.getDenied(), 1);
+  }
+
+  @Test
+  public void testSessionFailureInSetUpIsRetried() throws IOException {
+    URL appiumUrl = new URL(ConfigReader.getInstance().getAppiumUrl());
+    if (isListening(appiumUrl)) {
+      throw new SkipException("An Appium server is listening at " + appiumUrl);
+    }
+    UnreachableServerFlow.runs.set(0);
+    XmlSuite suite = new XmlSuite();
+    suite.setName("Infra Retry Suite");
+    suite.addListener(InfraRetryTransformer.class.getName());
+    XmlTest test = new XmlTest(suite);
+    test.setName("Unreachable Server");
+    test.setParameters(Collections.singletonMap("platform", "android"));
+    test.setXmlClasses(Collections.singletonList(new XmlClass(UnreachableServerFlow.class)));
+    TestNG testng = new TestNG(false);
+    testng.setXmlSuites(Collections.singletonList(suite));
+    testng.setOutputDirectory("target/infra-retry");
+    TestListenerAdapter results = new TestListenerAdapter();
+    testng.addListener(results);
+    testng.run();
+
+    Assert.assertEquals(UnreachableServerFlow.runs.get(), 0, "Ran a test without a session");
+    Assert.assertTrue(results.getConfigurationFailures().isEmpty(), "setUp failed");
+    List<ITestResult> retried = results.getSkippedTests();
+    Assert.assertEquals(retried.size(), 1);
+    Assert.assertTrue(retried.get(0).wasRetried(), "Skipped instead of retried");
+    List<ITestResult> failed = results.getFailedTests();
+    Assert.assertEquals(failed.size(), 1);
+    Assert.assertTrue(
+        FailureClassifier.classify(failed.get(0).getThrowable()).isInfrastructure(),
+        "Failed with " + failed.get(0).getThrowable());
+  }
+
+  private static boolean isListening(URL url) {
+    try (Socket socket = new Socket()) {
+      socket.connect(new InetSocketAddress(url.getHost(), url.getPort()), 1000);
+      return true;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+}
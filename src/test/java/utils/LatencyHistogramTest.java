@@ -0,0 +1,61 @@
+package utils;
+
+import java.util.concurrent.TimeUnit;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/** Checks the bucket arithmetic of {@link LatencyHistogram} against known distributions. */
+public class LatencyHistogramTest {
+  private static final double RESOLUTION = 1.0 / 32;
+
+  @Test
+  public void testPercentilesWithinResolution() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (long micros = 1; micros <= 100_000; micros++) {
+      histogram.record(TimeUnit.MICROSECONDS.toNanos(micros));
+    }
+    Assert.assertEquals(histogram.getCount(), 100_000);
+    Assert.assertEquals(histogram.getMeanMillis(), 50.0005, 1e-9);
+    Assert.assertEquals(histogram.getMaxMillis(), 100.0);
+    for (double percentile : new double[] {50, 95, 99}) {
+      double exact = percentile;
+      double reported = histogram.getPercentileMillis(percentile);
+      Assert.assertTrue(reported >= exact, "p" + percentile + " below its rank: " + reported);
+      Assert.assertTrue(
+          reported <= exact * (1 + RESOLUTION), "p" + percentile + " off by more: " + reported);
+    }
+  }
+
+  @Test
+  public void testBucketBoundary() {
+    // 0..63 µs are counted one by one; from 64 µs on, buckets are two wide
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(63));
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(64));
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(65));
+    histogram.record(TimeUnit.MICROSECONDS.toNanos(66));
+    Assert.assertEquals(histogram.getPercentileMillis(25), 0.063);
+    Assert.assertEquals(histogram.getPercentileMillis(50), 0.065);
+    Assert.assertEquals(histogram.getPercentileMillis(75), 0.065);
+    // The top bucket reaches 67 µs, but nothing above the maximum is reported
+    Assert.assertEquals(histogram.getPercentileMillis(100), 0.066);
+  }
+
+  @Test
+  public void testClampsOutOfRangeValues() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    histogram.record(-5);
+    histogram.record(Long.MAX_VALUE);
+    Assert.assertEquals(histogram.getCount(), 2);
+    Assert.assertEquals(histogram.getPercentileMillis(50), 0.0);
+    Assert.assertEquals(histogram.getMaxMillis(), LatencyHistogram.MAX_MICROS / 1000.0);
+    Assert.assertEquals(histogram.getPercentileMillis(100), LatencyHistogram.MAX_MICROS / 1000.0);
+  }
+
+  @Test
+  public void testEmpty() {
+    LatencyHistogram histogram = new LatencyHistogram();
+    Assert.assertEquals(histogram.getPercentileMillis(99), 0.0);
+    Assert.assertEquals(histogram.getMeanMillis(), 0.0);
+  }
+}
@@ -0,0 +1,116 @@
+package utils;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Streams records from many producer threads into a {@link ResultsSink} and checks that every
+ * record arrives whole, exactly once and in order per producer, and that closing the sink writes
+ * what is still queued.
+ */
+public class ResultsSinkTest {
+  private static final int PRODUCERS = 16;
+  private static final int RECORDS = 10_000;
+
+  private ResultsSink sink;
+
+  @AfterMethod(alwaysRun = true)
+  public void closeSink() {
+    if (sink != null) {
+      sink.close();
+      sink = null;
+    }
+  }
+
+  @Test
+  public void testConcurrentProducers() throws Exception {
+    Path file = Files.createTempFile("results", ".jsonl");
+    sink = new ResultsSink(file);
+    CountDownLatch start = new CountDownLatch(1);
+    ExecutorService producers = Executors.newFixedThreadPool(PRODUCERS);
+    try {
+      Future<?>[] done = new Future<?>[PRODUCERS];
+      for (int p = 0; p < PRODUCERS; p++) {
+        int producer = p;
+        done[p] =
+            producers.submit(
+                () -> {
+                  start.await();
+                  for (int i = 0; i < RECORDS; i++) {
+                    JsonObject record = new JsonObject();
+                    record.addProperty("event", "test");
+                    record.addProperty("producer", producer);
+                    record.addProperty("seq", i);
+                    sink.emit(record);
+                  }
+                  return null;
+                });
+      }
+      start.countDown();
+      for (Future<?> producer : done) {
+        producer.get(60, TimeUnit.SECONDS);
+      }
+      Assert.assertTrue(sink.drain(Duration.ofSeconds(30)), "Records left unwritten");
+
+      List<String> lines = Files.readAllLines(file, StandardCharsets.UTF_8);
+      Assert.assertEquals(lines.size(), PRODUCERS * RECORDS);
+      Assert.assertEquals(sink.getWritten(), PRODUCERS * RECORDS);
+      AtomicInteger[] next = new AtomicInteger[PRODUCERS];
+      for (int p = 0; p < PRODUCERS; p++) {
+        next[p] = new AtomicInteger();
+      }
+      for (String line : lines) {
+        JsonObject record = JsonParser.parseString(line).getAsJsonObject();
+        Assert.assertTrue(record.has("ts") && record.has("run"), line);
+        int producer = record.get("producer").getAsInt();
+        Assert.assertEquals(
+            record.get("seq").getAsInt(),
+            next[producer].getAndIncrement(),
+            "Out of order: " + line);
+      }
+      for (int p = 0; p < PRODUCERS; p++) {
+        Assert.assertEquals(next[p].get(), RECORDS, "Records of producer " + p);
+      }
+    } finally {
+      producers.shutdownNow();
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testCloseWritesQueuedRecords() throws Exception {
+    Path file = Files.createTempFile("results", ".jsonl");
+    sink = new ResultsSink(file);
+    try {
+      for (int i = 0; i < RECORDS; i++) {
+        JsonObject record = new JsonObject();
+        record.addProperty("seq", i);
+        sink.emit(record);
+      }
+      sink.close();
+      Assert.assertEquals(sink.getWritten(), RECORDS);
+      Assert.assertEquals(Files.readAllLines(file, StandardCharsets.UTF_8).size(), RECORDS);
+
+      // Records emitted after close are discarded instead of queued
+      sink.emit(new JsonObject());
+      Assert.assertTrue(sink.drain(Duration.ofSeconds(1)));
+      Assert.assertEquals(Files.readAllLines(file, StandardCharsets.UTF_8).size(), RECORDS);
+    } finally {
+      Files.delete(file);
+    }
+  }
+}
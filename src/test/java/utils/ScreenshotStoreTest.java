@@ -0,0 +1,104 @@
+package utils;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.imageio.ImageIO;
+import org.testng.Assert;
+import org.testng.annotations.Test;
+
+/** Stores screenshots in a temporary {@link ScreenshotStore} and checks the objects and index. */
+public class ScreenshotStoreTest {
+
+  @Test
+  public void testIdenticalImagesStoredOnce() throws IOException {
+    Path root = Files.createTempDirectory("screenshots");
+    try {
+      ScreenshotStore store = new ScreenshotStore(root, 0, "png", 0.8f);
+      byte[] first = png(0x336699);
+      byte[] second = png(0x993366);
+      // All three captures land within the same second
+      Path stored = store.store("ExampleTest#testLogin", first);
+      Path again = store.store("ExampleTest#testLogin", first.clone());
+      Path other = store.store("ExampleTest#testLogin", second);
+
+      Assert.assertEquals(again, stored);
+      Assert.assertNotEquals(other, stored);
+      Assert.assertEquals(objects(root).size(), 2);
+      Assert.assertEquals(Files.readAllBytes(stored), first);
+      Assert.assertEquals(store.getStored(), 2);
+      Assert.assertEquals(store.getDuplicates(), 1);
+
+      List<JsonObject> index = index(root);
+      Assert.assertEquals(index.size(), 3);
+      Assert.assertFalse(index.get(0).get("duplicate").getAsBoolean());
+      Assert.assertTrue(index.get(1).get("duplicate").getAsBoolean());
+      Assert.assertFalse(index.get(2).get("duplicate").getAsBoolean());
+      Assert.assertEquals(
+          index.get(1).get("file").getAsString(), "objects/" + stored.getFileName());
+      Assert.assertEquals(index.get(2).get("file").getAsString(), "objects/" + other.getFileName());
+    } finally {
+      delete(root);
+    }
+  }
+
+  @Test
+  public void testReencodedImageKeepsSourceHash() throws IOException {
+    Path root = Files.createTempDirectory("screenshots");
+    try {
+      ScreenshotStore store = new ScreenshotStore(root, 8, "jpg", 0.6f);
+      byte[] png = png(0x336699);
+      Path stored = store.store("ExampleTest#testLogin", png);
+
+      Assert.assertTrue(stored.getFileName().toString().endsWith(".jpg"), stored.toString());
+      Assert.assertEquals(ImageIO.read(stored.toFile()).getWidth(), 8);
+      JsonObject entry = index(root).get(0);
+      String source = entry.get("sourceSha256").getAsString();
+      Assert.assertEquals(stored.getFileName().toString(), source + ".jpg");
+      Assert.assertNotEquals(Files.readAllBytes(stored), png);
+    } finally {
+      delete(root);
+    }
+  }
+
+  private static byte[] png(int rgb) throws IOException {
+    BufferedImage image = new BufferedImage(32, 16, BufferedImage.TYPE_INT_RGB);
+    for (int x = 0; x < image.getWidth(); x++) {
+      for (int y = 0; y < image.getHeight(); y++) {
+        image.setRGB(x, y, rgb + x);
+      }
+    }
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    ImageIO.write(image, "png", out);
+    return out.toByteArray();
+  }
+
+  private static List<Path> objects(Path root) throws IOException {
+    try (Stream<Path> files = Files.list(root.resolve("objects"))) {
+      return files.collect(Collectors.toList());
+    }
+  }
+
+  private static List<JsonObject> index(Path root) throws IOException {
+    return Files.readAllLines(root.resolve("index.jsonl"), StandardCharsets.UTF_8).stream()
+        .map(line -> JsonParser.parseString(line).getAsJsonObject())
+        .collect(Collectors.toList());
+  }
+
+  private static void delete(Path root) throws IOException {
+    try (Stream<Path> files = Files.walk(root)) {
+      for (Path file : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+        Files.delete(file);
+      }
+    }
+  }
+}
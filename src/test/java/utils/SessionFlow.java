@@ -0,0 +1,46 @@
+package utils;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.Assert;
+import org.testng.annotations.Factory;
+import org.testng.annotations.Test;
+
+/**
+ * Test flows that each use a session of their own. Not part of a suite file: {@link
+ * DeviceSchedulerTest} runs them in a nested TestNG suite on the threads of {@link SessionThreads}.
+ */
+public class SessionFlow {
+  static final int FLOWS = 32;
+  static final AtomicInteger passed = new AtomicInteger();
+  static final AtomicInteger onSessionThreads = new AtomicInteger();
+
+  static void reset() {
+    passed.set(0);
+    onSessionThreads.set(0);
+  }
+
+  @Factory
+  public static Object[] flows() {
+    Object[] flows = new Object[FLOWS];
+    for (int i = 0; i < FLOWS; i++) {
+      flows[i] = new SessionFlow();
+    }
+    return flows;
+  }
+
+  @Test
+  public void run() throws Exception {
+    if (Thread.currentThread().getName().startsWith("TestNG-methods-")) {
+      onSessionThreads.incrementAndGet();
+    }
+    DriverManager.initializeDriver("android");
+    try {
+      Assert.assertNotNull(DriverManager.getDevice(), "No device leased");
+      Assert.assertTrue(DriverManager.getDriver().getPageSource().contains("hierarchy"));
+    } finally {
+      DriverManager.releaseDriver(true);
+    }
+    Assert.assertNull(SessionContext.peek(), "Released session is still bound");
+    passed.incrementAndGet();
+  }
+}
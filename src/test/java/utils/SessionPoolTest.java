@@ -0,0 +1,150 @@
+package utils;
+
+import io.appium.java_client.AppiumDriver;
+import io.appium.java_client.android.AndroidDriver;
+import io.appium.java_client.android.options.UiAutomator2Options;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Leases, returns and evicts sessions on a {@link StubAppiumServer} through a {@link SessionPool},
+ * and checks the pool's accounting and that evicted sessions are quit on the server.
+ */
+public class SessionPoolTest {
+  private static final String APP_ID = "com.example.app";
+  private static final SessionKey KEY =
+      new SessionKey("android", "emulator-5554", "app.apk", false);
+
+  private StubAppiumServer server;
+
+  @BeforeClass
+  public void startServer() throws IOException {
+    server = new StubAppiumServer();
+    server.start();
+  }
+
+  @AfterClass(alwaysRun = true)
+  public void stopServer() {
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  @Test
+  public void testReusesIdleSession() {
+    SessionPool pool = new SessionPool(60, 3);
+    try {
+      PooledSession first = pool.acquire(KEY, APP_ID, this::newDriver);
+      Assert.assertFalse(pool.hasIdle(KEY));
+      pool.release(first, true);
+      Assert.assertTrue(pool.hasIdle(KEY));
+
+      PooledSession second =
+          pool.acquire(
+              KEY,
+              APP_ID,
+              () -> {
+                throw new AssertionError("Created a session while one was idle");
+              });
+      Assert.assertSame(second, first);
+      Assert.assertFalse(pool.hasIdle(KEY));
+      pool.release(second, true);
+
+      SessionKey otherDevice = new SessionKey("android", "emulator-5556", "app.apk", false);
+      PooledSession other = pool.acquire(otherDevice, APP_ID, this::newDriver);
+      Assert.assertNotSame(other, first);
+      Assert.assertTrue(pool.hasIdle(KEY), "Handed out a session created for another device");
+      pool.release(other, true);
+
+      Assert.assertEquals(pool.getHits(), 1);
+      Assert.assertEquals(pool.getMisses(), 2);
+      Assert.assertEquals(pool.getHitRate(), 1.0 / 3, 1e-9);
+      Assert.assertEquals(pool.getEvictions(), 0);
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testEvictsAfterMaxFailures() {
+    SessionPool pool = new SessionPool(60, 2);
+    try {
+      PooledSession session = pool.acquire(KEY, APP_ID, this::newDriver);
+      String sessionId = session.getDriver().getSessionId().toString();
+      pool.release(session, false);
+      Assert.assertTrue(pool.hasIdle(KEY), "Evicted after the first failure");
+      Assert.assertSame(pool.acquire(KEY, APP_ID, this::newDriver), session);
+
+      pool.release(session, false);
+      Assert.assertEquals(session.getFailures(), 2);
+      Assert.assertFalse(pool.hasIdle(KEY));
+      Assert.assertEquals(pool.getEvictions(), 1);
+      Assert.assertNull(server.getScreen(sessionId), "Evicted session is still open");
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testReapsIdleSessions() throws InterruptedException {
+    SessionPool pool = new SessionPool(0, 3);
+    try {
+      PooledSession session = pool.acquire(KEY, APP_ID, this::newDriver);
+      String sessionId = session.getDriver().getSessionId().toString();
+      pool.release(session, true);
+      Thread.sleep(10);
+
+      pool.evictExpired();
+      Assert.assertFalse(pool.hasIdle(KEY));
+      Assert.assertEquals(pool.getEvictions(), 1);
+      Assert.assertNull(server.getScreen(sessionId), "Reaped session is still open");
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testEvictsWhenAppResetFails() {
+    SessionPool pool = new SessionPool(60, 3);
+    try {
+      PooledSession session = pool.acquire(KEY, null, this::newDriver);
+      String sessionId = session.getDriver().getSessionId().toString();
+      pool.release(session, true);
+      Assert.assertFalse(pool.hasIdle(KEY), "Pooled a session whose app cannot be reset");
+      Assert.assertEquals(pool.getEvictions(), 1);
+      Assert.assertNull(server.getScreen(sessionId), "Evicted session is still open");
+    } finally {
+      pool.shutdown();
+    }
+  }
+
+  @Test
+  public void testShutdownRunsOnce() {
+    SessionPool pool = new SessionPool(60, 3);
+    PooledSession session = pool.acquire(KEY, APP_ID, this::newDriver);
+    String sessionId = session.getDriver().getSessionId().toString();
+    pool.release(session, true);
+
+    pool.shutdown();
+    Assert.assertFalse(pool.hasIdle(KEY));
+    Assert.assertEquals(pool.getEvictions(), 1);
+    Assert.assertNull(server.getScreen(sessionId), "Idle session survived the shutdown");
+
+    // A second shutdown, such as the shutdown hook after the run has shut the pool down, is a no-op
+    pool.shutdown();
+    Assert.assertEquals(pool.getEvictions(), 1);
+  }
+
+  private AppiumDriver newDriver() {
+    try {
+      return new AndroidDriver(new URL(server.getUrl()), new UiAutomator2Options());
+    } catch (MalformedURLException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
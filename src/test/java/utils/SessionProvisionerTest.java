@@ -0,0 +1,229 @@
+package utils;
+
+import exceptions.SessionCreationException;
+import io.appium.java_client.AppiumDriver;
+import io.appium.java_client.android.AndroidDriver;
+import io.appium.java_client.android.options.UiAutomator2Options;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.Test;
+
+/**
+ * Pre-provisions sessions on a {@link StubAppiumServer} with a {@link SessionProvisioner} and
+ * checks the hidden and waited time, the synchronous fallback after a failed background creation,
+ * and that shutdown quits the sessions no test claimed.
+ */
+public class SessionProvisionerTest {
+  private static final SessionKey KEY =
+      new SessionKey("android", "emulator-5554", "app.apk", false);
+  private static final long CREATION_MILLIS = 300;
+
+  private final List<AppiumDriver> created = new CopyOnWriteArrayList<>();
+  private final List<String> createdIds = new CopyOnWriteArrayList<>();
+  private StubAppiumServer server;
+
+  @BeforeClass
+  public void startServer() throws IOException {
+    server = new StubAppiumServer();
+    server.start();
+  }
+
+  @AfterClass(alwaysRun = true)
+  public void stopServer() {
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void quitSessions() {
+    for (AppiumDriver driver : created) {
+      // A quit driver has no session id
+      if (driver.getSessionId() != null) {
+        driver.quit();
+      }
+    }
+    created.clear();
+    createdIds.clear();
+  }
+
+  @Test
+  public void testReadySessionHidesCreationTime() throws InterruptedException {
+    SessionProvisioner provisioner = new SessionProvisioner(5000);
+    try {
+      ProvisionedSession spare = spare(slowFactory(new CountDownLatch(0)));
+      provisioner.submit(spare);
+      // The test before keeps running while the session is created
+      awaitDone(spare);
+
+      Assert.assertSame(provisioner.take("android"), spare);
+      Assert.assertNotNull(provisioner.await(spare));
+      Assert.assertEquals(provisioner.getAdoptedCount(), 1);
+      Assert.assertTrue(
+          provisioner.getHiddenMillis() >= CREATION_MILLIS,
+          "Hidden " + provisioner.getHiddenMillis() + " ms");
+      Assert.assertTrue(
+          provisioner.getWaitedMillis() < provisioner.getHiddenMillis(),
+          "Waited " + provisioner.getWaitedMillis() + " ms for a ready session");
+    } finally {
+      provisioner.shutdown();
+    }
+  }
+
+  @Test
+  public void testPendingSessionIsWaitedFor() {
+    SessionProvisioner provisioner = new SessionProvisioner(5000);
+    try {
+      CountDownLatch gate = new CountDownLatch(1);
+      ProvisionedSession spare = spare(slowFactory(gate));
+      provisioner.submit(spare);
+      Assert.assertSame(provisioner.take("android"), spare);
+      Assert.assertFalse(spare.isDone());
+
+      gate.countDown();
+      Assert.assertNotNull(provisioner.await(spare));
+      Assert.assertTrue(
+          provisioner.getWaitedMillis() >= CREATION_MILLIS,
+          "Waited " + provisioner.getWaitedMillis() + " ms");
+      Assert.assertTrue(
+          provisioner.getHiddenMillis() < provisioner.getWaitedMillis(),
+          "Hidden " + provisioner.getHiddenMillis() + " ms of a session nobody waited for");
+    } finally {
+      provisioner.shutdown();
+    }
+  }
+
+  @Test
+  public void testFailedProvisioningFallsBackToSynchronousCreation() throws InterruptedException {
+    SessionProvisioner provisioner = new SessionProvisioner(5000);
+    CountDownLatch gate = new CountDownLatch(1);
+    try {
+      ProvisionedSession pending = spare(slowFactory(gate));
+      AtomicInteger attempts = new AtomicInteger();
+      ProvisionedSession failing =
+          spare(
+              () -> {
+                if (attempts.incrementAndGet() == 1) {
+                  throw new SessionCreationException("Device went offline");
+                }
+                return newDriver();
+              });
+      provisioner.submit(pending);
+      provisioner.submit(failing);
+      awaitDone(failing);
+
+      // A finished session is taken before an older one still being created, even a failed one
+      Assert.assertSame(provisioner.take("android"), failing);
+      AppiumDriver driver = provisioner.awaitOrCreate(failing);
+      Assert.assertEquals(attempts.get(), 2);
+      Assert.assertNotNull(server.getScreen(driver.getSessionId().toString()));
+      Assert.assertEquals(provisioner.getFailedCount(), 1);
+      Assert.assertEquals(provisioner.getAdoptedCount(), 0);
+      Assert.assertEquals(provisioner.getPendingCount("android"), 1);
+    } finally {
+      gate.countDown();
+      provisioner.shutdown();
+    }
+  }
+
+  @Test
+  public void testShutdownQuitsUnclaimedSessions() throws InterruptedException {
+    SessionProvisioner provisioner = new SessionProvisioner(5000);
+    CountDownLatch gate = new CountDownLatch(1);
+    ProvisionedSession ready = spare(slowFactory(new CountDownLatch(0)));
+    ProvisionedSession creating = spare(slowFactory(gate));
+    provisioner.submit(ready);
+    provisioner.submit(creating);
+    awaitDone(ready);
+
+    releaseLater(gate, 200);
+    provisioner.shutdown();
+    Assert.assertEquals(
+        createdIds.size(), 2, "Shutdown did not wait for the session being created");
+    for (String sessionId : createdIds) {
+      Assert.assertNull(server.getScreen(sessionId), "Unclaimed session is still open");
+    }
+    Assert.assertEquals(provisioner.getPendingCount("android"), 0);
+  }
+
+  @Test
+  public void testShutdownGivesUpAfterTimeout() throws InterruptedException {
+    SessionProvisioner provisioner = new SessionProvisioner(200);
+    CountDownLatch gate = new CountDownLatch(1);
+    ProvisionedSession abandoned = spare(slowFactory(gate));
+    try {
+      provisioner.submit(abandoned);
+      long start = System.nanoTime();
+      provisioner.shutdown();
+      long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      Assert.assertTrue(millis >= 200, "Gave up after " + millis + " ms");
+      Assert.assertTrue(millis < 5000, "Waited " + millis + " ms past the timeout");
+    } finally {
+      // Let the abandoned session finish, so that it is quit after the test
+      gate.countDown();
+      awaitDone(abandoned);
+    }
+  }
+
+  private ProvisionedSession spare(Supplier<AppiumDriver> factory) {
+    return new ProvisionedSession("android", null, KEY, "com.example.app", factory);
+  }
+
+  /** Creates a session that takes at least {@link #CREATION_MILLIS} and waits for the gate. */
+  private Supplier<AppiumDriver> slowFactory(CountDownLatch gate) {
+    return () -> {
+      try {
+        Thread.sleep(CREATION_MILLIS);
+        gate.await(10, TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return newDriver();
+    };
+  }
+
+  private AppiumDriver newDriver() {
+    try {
+      AppiumDriver driver = new AndroidDriver(new URL(server.getUrl()), new UiAutomator2Options());
+      created.add(driver);
+      createdIds.add(driver.getSessionId().toString());
+      return driver;
+    } catch (MalformedURLException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  private static void releaseLater(CountDownLatch gate, long millis) {
+    Thread releaser =
+        new Thread(
+            () -> {
+              try {
+                Thread.sleep(millis);
+              } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+              }
+              gate.countDown();
+            });
+    releaser.setDaemon(true);
+    releaser.start();
+  }
+
+  private static void awaitDone(ProvisionedSession spare) throws InterruptedException {
+    long deadline = System.currentTimeMillis() + 10000;
+    while (!spare.isDone() && System.currentTimeMillis() < deadline) {
+      Thread.sleep(10);
+    }
+    Assert.assertTrue(spare.isDone(), "Session was not created in time");
+  }
+}
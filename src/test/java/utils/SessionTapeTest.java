@@ -0,0 +1,284 @@
+package utils;
+
+import io.appium.java_client.AppiumBy;
+import io.appium.java_client.AppiumClientConfig;
+import io.appium.java_client.MobileCommand;
+import io.appium.java_client.android.AndroidDriver;
+import io.appium.java_client.android.options.UiAutomator2Options;
+import io.appium.java_client.remote.AppiumCommandExecutor;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import org.openqa.selenium.By;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.WebDriverException;
+import org.openqa.selenium.remote.http.HttpClient;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Records sessions on a {@link StubAppiumServer} to a {@link SessionTape} and replays them without
+ * the server: single and parallel sessions, truncated and corrupt tapes, and bodies shared between
+ * sessions.
+ */
+public class SessionTapeTest {
+  private static final String LIST_SCREEN =
+      "<hierarchy>"
+          + "<android.widget.TextView resource-id=\"com.example.app:id/title\" text=\"Items\""
+          + " bounds=\"[0,0][1080,120]\"/>"
+          + "</hierarchy>";
+
+  private StubAppiumServer server;
+  private Path file;
+
+  @BeforeClass
+  public void startServer() throws IOException {
+    server = new StubAppiumServer();
+    server.addScreen("list", LIST_SCREEN).startOn("default");
+    server.onClick("default", By.id("login"), "list");
+    server.start();
+  }
+
+  @AfterClass(alwaysRun = true)
+  public void stopServer() {
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  @BeforeMethod
+  public void createTapeFile() throws IOException {
+    file = Files.createTempFile("session", ".tape");
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void deleteTapeFile() throws IOException {
+    Files.deleteIfExists(file);
+  }
+
+  @Test
+  public void testRecordAndReplay() throws IOException {
+    SessionTape recording = new SessionTape(SessionTape.Mode.RECORD, file);
+    AndroidDriver recorded = tapeDriver(recording);
+    String sessionId = recorded.getSessionId().toString();
+    recorded.findElement(By.id("username")).sendKeys("alice");
+    String text = recorded.findElement(By.id("username")).getText();
+    recorded.findElement(AppiumBy.accessibilityId("login")).click();
+    String source = recorded.getPageSource();
+    byte[] screenshot = recorded.getScreenshotAs(OutputType.BYTES);
+    recorded.quit();
+    recording.close();
+
+    long commands = server.getCommands();
+    SessionTape replay = new SessionTape(SessionTape.Mode.REPLAY, file);
+    AndroidDriver replayed = tapeDriver(replay);
+    Assert.assertEquals(replayed.getSessionId().toString(), sessionId);
+    replayed.findElement(By.id("username")).sendKeys("alice");
+    Assert.assertEquals(replayed.findElement(By.id("username")).getText(), text);
+    replayed.findElement(AppiumBy.accessibilityId("login")).click();
+    Assert.assertEquals(replayed.getPageSource(), source);
+    Assert.assertEquals(replayed.getScreenshotAs(OutputType.BYTES), screenshot);
+    Assert.assertThrows(() -> replayed.findElement(By.id("never-recorded")));
+    replayed.quit();
+    Assert.assertEquals(server.getCommands(), commands);
+    Assert.assertEquals(replay.getMisses(), 1);
+  }
+
+  @Test
+  public void testReplayParallelSessions() throws Exception {
+    UiAutomator2Options first =
+        new UiAutomator2Options().setUdid("emulator-5554").setSystemPort(8200);
+    UiAutomator2Options second =
+        new UiAutomator2Options().setUdid("emulator-5556").setSystemPort(8201);
+    SessionTape recording = new SessionTape(SessionTape.Mode.RECORD, file);
+    Map<String, String> recorded = runTests(recording, first, second, false);
+    recording.close();
+
+    // The tests start in the other order and lease each other's devices this time
+    long commands = server.getCommands();
+    SessionTape replay = new SessionTape(SessionTape.Mode.REPLAY, file);
+    Map<String, String> replayed = runTests(replay, second, first, true);
+    Assert.assertEquals(replayed, recorded);
+    Assert.assertEquals(replay.getMisses(), 0);
+    Assert.assertEquals(server.getCommands(), commands);
+  }
+
+  @Test
+  public void testReplaysTruncatedTape() throws IOException {
+    SessionTape recording = new SessionTape(SessionTape.Mode.RECORD, file);
+    AndroidDriver recorded = tapeDriver(recording);
+    String source = recorded.getPageSource();
+    // Every exchange is flushed, so this is where the next record starts
+    long complete = Files.size(file);
+    recorded.findElement(By.id("title"));
+    recorded.quit();
+    recording.close();
+    // The run died while writing the findElement exchange
+    try (FileChannel tape = FileChannel.open(file, StandardOpenOption.WRITE)) {
+      tape.truncate(complete + 10);
+    }
+
+    long commands = server.getCommands();
+    SessionTape replay = new SessionTape(SessionTape.Mode.REPLAY, file);
+    AndroidDriver replayed = tapeDriver(replay);
+    Assert.assertEquals(replayed.getPageSource(), source);
+    Assert.assertThrows(WebDriverException.class, () -> replayed.findElement(By.id("title")));
+    Assert.assertEquals(replay.getMisses(), 1);
+    Assert.assertEquals(server.getCommands(), commands);
+  }
+
+  @Test
+  public void testRejectsCorruptRecordType() throws IOException {
+    SessionTape recording = new SessionTape(SessionTape.Mode.RECORD, file);
+    tapeDriver(recording).quit();
+    recording.close();
+    Files.write(file, new byte[] {'Z', 0, 0, 0, 0}, StandardOpenOption.APPEND);
+
+    UncheckedIOException e =
+        Assert.expectThrows(
+            UncheckedIOException.class, () -> new SessionTape(SessionTape.Mode.REPLAY, file));
+    Assert.assertTrue(
+        e.getCause().getMessage().startsWith("Corrupt session tape"), e.getCause().getMessage());
+  }
+
+  @Test
+  public void testStoresRepeatedBodiesOnce() throws IOException {
+    SessionTape recording = new SessionTape(SessionTape.Mode.RECORD, file);
+    AndroidDriver first = tapeDriver(recording);
+    AndroidDriver second = tapeDriver(recording);
+    long start = Files.size(file);
+    String source = first.getPageSource();
+    long firstSource = Files.size(file) - start;
+    start = Files.size(file);
+    Assert.assertEquals(second.getPageSource(), source);
+    long secondSource = Files.size(file) - start;
+    first.quit();
+    second.quit();
+    recording.close();
+
+    // The second session refers to the page source blob the first one wrote
+    Assert.assertTrue(
+        secondSource + source.length() / 4 < firstSource,
+        "Page source took " + firstSource + " then " + secondSource + " bytes");
+    SessionTape replay = new SessionTape(SessionTape.Mode.REPLAY, file);
+    AndroidDriver replayedFirst = tapeDriver(replay);
+    AndroidDriver replayedSecond = tapeDriver(replay);
+    Assert.assertEquals(replayedFirst.getPageSource(), source);
+    Assert.assertEquals(replayedSecond.getPageSource(), source);
+    replayedFirst.quit();
+    replayedSecond.quit();
+    Assert.assertEquals(replay.getMisses(), 0);
+  }
+
+  /**
+   * Runs a typing and a navigating test in parallel through a tape, each on its own device, and
+   * returns the session and the text each test saw.
+   */
+  private Map<String, String> runTests(
+      SessionTape tape,
+      UiAutomator2Options typingDevice,
+      UiAutomator2Options navigatingDevice,
+      boolean navigatingFirst)
+      throws Exception {
+    CountDownLatch firstCreated = new CountDownLatch(1);
+    CyclicBarrier done = new CyclicBarrier(2);
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      Future<String> typing =
+          executor.submit(
+              () ->
+                  runTest(
+                      tape,
+                      "typing",
+                      typingDevice,
+                      navigatingFirst ? firstCreated : null,
+                      firstCreated,
+                      done,
+                      test -> {
+                        test.findElement(By.id("username")).sendKeys("alice");
+                        return test.findElement(By.id("username")).getText();
+                      }));
+      Future<String> navigating =
+          executor.submit(
+              () ->
+                  runTest(
+                      tape,
+                      "navigating",
+                      navigatingDevice,
+                      navigatingFirst ? null : firstCreated,
+                      firstCreated,
+                      done,
+                      test -> {
+                        test.findElement(AppiumBy.accessibilityId("login")).click();
+                        return test.findElement(By.id("title")).getText();
+                      }));
+      Map<String, String> seen = new HashMap<>();
+      seen.put("typing", typing.get(30, TimeUnit.SECONDS));
+      seen.put("navigating", navigating.get(30, TimeUnit.SECONDS));
+      return seen;
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private String runTest(
+      SessionTape tape,
+      String test,
+      UiAutomator2Options device,
+      CountDownLatch awaitCreated,
+      CountDownLatch created,
+      CyclicBarrier done,
+      Function<AndroidDriver, String> steps)
+      throws Exception {
+    SessionContext.current().setTest(test);
+    try {
+      if (awaitCreated != null) {
+        awaitCreated.await(10, TimeUnit.SECONDS);
+      }
+      AndroidDriver session =
+          driver(server.getUrl(), tape.wrap(HttpClient.Factory.createDefault()), device);
+      created.countDown();
+      try {
+        return session.getSessionId() + " " + steps.apply(session);
+      } finally {
+        // Both sessions stay open until both tests are done
+        done.await(10, TimeUnit.SECONDS);
+        session.quit();
+      }
+    } finally {
+      SessionContext.detach();
+    }
+  }
+
+  private AndroidDriver tapeDriver(SessionTape tape) throws IOException {
+    return driver(server.getUrl(), tape.wrap(HttpClient.Factory.createDefault()));
+  }
+
+  private static AndroidDriver driver(String url, HttpClient.Factory clients) throws IOException {
+    return driver(url, clients, new UiAutomator2Options());
+  }
+
+  private static AndroidDriver driver(
+      String url, HttpClient.Factory clients, UiAutomator2Options options) throws IOException {
+    AppiumClientConfig config = AppiumClientConfig.defaultConfig().baseUrl(new URL(url));
+    return new AndroidDriver(
+        new AppiumCommandExecutor(MobileCommand.commandRepository, null, clients, config), options);
+  }
+}
@@ -0,0 +1,161 @@
+package utils;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.testng.Assert;
+import org.testng.IMethodInstance;
+import org.testng.ITestContext;
+import org.testng.ITestNGMethod;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Shards a suite with known and unknown test durations and checks that the shards partition the
+ * suite and carry about the same expected time.
+ */
+public class ShardInterceptorTest {
+  private static final int SHARDS = 3;
+  private static final long[] DURATIONS = {
+    45_000, 12_000, 3_000, 30_000, 8_000, 1_000, 22_000, 5_000, 17_000, 2_000, 9_000, 40_000
+  };
+  private static final int UNKNOWN = 3;
+
+  @AfterMethod(alwaysRun = true)
+  public void clearShard() {
+    System.clearProperty("shard");
+  }
+
+  @Test
+  public void testShardsPartitionAndBalanceSuite() throws IOException {
+    Path file = Files.createTempFile("timings", ".tsv");
+    try {
+      List<IMethodInstance> methods = new ArrayList<>();
+      StringBuilder tsv = new StringBuilder();
+      for (int i = 0; i < DURATIONS.length + UNKNOWN; i++) {
+        IMethodInstance method = method("test" + i);
+        methods.add(method);
+        if (i < DURATIONS.length) {
+          String id = TestTimingStore.getTestId(method.getMethod());
+          // The expected duration is the average of the recent runs
+          tsv.append("1\t").append(id).append('\t').append(DURATIONS[i] - 500).append("\tPASS\n");
+          tsv.append("2\t").append(id).append('\t').append(DURATIONS[i] + 500).append("\tPASS\n");
+        }
+      }
+      Files.write(file, tsv.toString().getBytes(StandardCharsets.UTF_8));
+      TestTimingStore store = new TestTimingStore(file);
+      Map<String, Long> expected = store.loadExpectedDurations();
+      long median = ShardInterceptor.getMedian(expected);
+      Assert.assertEquals(median, 12_000);
+      for (IMethodInstance method : methods.subList(DURATIONS.length, methods.size())) {
+        Assert.assertEquals(ShardInterceptor.getExpected(method, expected, median), median);
+      }
+
+      ShardInterceptor interceptor = new ShardInterceptor(store);
+      Set<IMethodInstance> seen = new HashSet<>();
+      long[] totals = new long[SHARDS];
+      long longest = 0;
+      for (int shard = 1; shard <= SHARDS; shard++) {
+        System.setProperty("shard", shard + "/" + SHARDS);
+        List<IMethodInstance> selected = interceptor.intercept(methods, context());
+        Assert.assertFalse(selected.isEmpty(), "Shard " + shard + " is empty");
+        int previous = -1;
+        for (IMethodInstance method : selected) {
+          Assert.assertTrue(seen.add(method), method + " runs on two shards");
+          // Each shard keeps the suite's order
+          Assert.assertTrue(methods.indexOf(method) > previous);
+          previous = methods.indexOf(method);
+          long duration = ShardInterceptor.getExpected(method, expected, median);
+          totals[shard - 1] += duration;
+          longest = Math.max(longest, duration);
+        }
+      }
+      Assert.assertEquals(seen, new HashSet<>(methods), "Shards do not cover the suite");
+      long max = Math.max(totals[0], Math.max(totals[1], totals[2]));
+      long min = Math.min(totals[0], Math.min(totals[1], totals[2]));
+      // Longest-first onto the lightest shard never leaves a gap wider than the longest test
+      Assert.assertTrue(max - min <= longest, "Unbalanced shards: " + max + " vs " + min);
+      Assert.assertTrue(max - min <= 5_000, "Unbalanced shards: " + max + " vs " + min);
+    } finally {
+      Files.delete(file);
+    }
+  }
+
+  @Test
+  public void testNoShardKeepsSuite() {
+    List<IMethodInstance> methods = new ArrayList<>();
+    methods.add(method("first"));
+    methods.add(method("second"));
+    Assert.assertSame(new ShardInterceptor().intercept(methods, context()), methods);
+  }
+
+  private static IMethodInstance method(String name) {
+    ITestNGMethod method =
+        proxy(
+            ITestNGMethod.class,
+            name,
+            call -> {
+              switch (call) {
+                case "getRealClass":
+                  return ShardInterceptorTest.class;
+                case "getMethodName":
+                  return name;
+                default:
+                  throw new UnsupportedOperationException(call);
+              }
+            });
+    return proxy(
+        IMethodInstance.class,
+        name,
+        call -> {
+          if (call.equals("getMethod")) {
+            return method;
+          }
+          throw new UnsupportedOperationException(call);
+        });
+  }
+
+  private static ITestContext context() {
+    return proxy(
+        ITestContext.class,
+        "context",
+        call -> {
+          if (call.equals("getName")) {
+            return "Sharded Tests";
+          }
+          throw new UnsupportedOperationException(call);
+        });
+  }
+
+  /** Implements the methods a test needs of a TestNG interface, with identity equality. */
+  private static <T> T proxy(Class<T> type, String name, Answer answer) {
+    return type.cast(
+        Proxy.newProxyInstance(
+            type.getClassLoader(),
+            new Class<?>[] {type},
+            (self, method, args) -> {
+              switch (method.getName()) {
+                case "equals":
+                  return self == args[0];
+                case "hashCode":
+                  return System.identityHashCode(self);
+                case "toString":
+                  return name;
+                default:
+                  return answer.call(method.getName());
+              }
+            }));
+  }
+
+  @FunctionalInterface
+  private interface Answer {
+    Object call(String method);
+  }
+}
@@ -0,0 +1,188 @@
+package utils;
+
+import io.appium.java_client.AppiumBy;
+import io.appium.java_client.android.AndroidDriver;
+import io.appium.java_client.android.options.UiAutomator2Options;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import org.openqa.selenium.By;
+import org.openqa.selenium.NoSuchElementException;
+import org.openqa.selenium.OutputType;
+import org.openqa.selenium.StaleElementReferenceException;
+import org.openqa.selenium.WebElement;
+import org.openqa.selenium.remote.http.HttpClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.testng.Assert;
+import org.testng.annotations.AfterClass;
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeClass;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+/**
+ * Runs the framework helpers against a {@link StubAppiumServer} with a scripted two-screen app, and
+ * measures how many commands per second the framework can push through it. The minimum rate can be
+ * changed with {@code -Dstub.minCommandsPerSecond=N}.
+ */
+public class StubAppiumServerTest {
+  private static final Logger logger = LoggerFactory.getLogger(StubAppiumServerTest.class);
+  private static final String LIST_SCREEN =
+      "<hierarchy>"
+          + "<android.widget.FrameLayout bounds=\"[0,0][1080,1920]\">"
+          + "<android.widget.TextView resource-id=\"com.example.app:id/title\" text=\"Items\""
+          + " bounds=\"[0,0][1080,120]\"/>"
+          + "<android.widget.ListView resource-id=\"com.example.app:id/list\""
+          + " bounds=\"[0,0][1080,1920]\">"
+          + "<android.widget.TextView resource-id=\"com.example.app:id/item\" text=\"First\""
+          + " bounds=\"[0,0][1080,200]\"/>"
+          + "<android.widget.TextView resource-id=\"com.example.app:id/item\" text=\"Second\""
+          + " bounds=\"[0,200][1080,400]\"/>"
+          + "</android.widget.ListView>"
+          + "</android.widget.FrameLayout>"
+          + "</hierarchy>";
+  private static final int WARMUP_COMMANDS = 3600;
+  private static final int COMMANDS = 4800;
+  // A loopback command costs about 1 ms of CPU in the Selenium client, the JDK HTTP client and the
+  // stub together, so one core manages about 1000 commands/s and more cores scale with sessions
+  private static final int MIN_COMMANDS_PER_SECOND =
+      Integer.getInteger("stub.minCommandsPerSecond", 500);
+
+  private StubAppiumServer server;
+  private AndroidDriver driver;
+
+  @BeforeClass
+  public void startServer() throws IOException {
+    server = new StubAppiumServer();
+    server.addScreen("list", LIST_SCREEN).startOn("default");
+    server.onClick("default", By.id("login"), "list");
+    server.start();
+  }
+
+  @AfterClass(alwaysRun = true)
+  public void stopServer() {
+    if (server != null) {
+      server.stop();
+    }
+  }
+
+  @BeforeMethod
+  public void createSession() throws IOException {
+    SessionCommandExecutor executor =
+        new SessionCommandExecutor(
+            SharedHttpClientFactory.clientConfig(new URL(server.getUrl())),
+            HttpClient.Factory.createDefault());
+    driver = new AndroidDriver(executor, new UiAutomator2Options());
+    executor.bind(driver);
+  }
+
+  @AfterMethod(alwaysRun = true)
+  public void quitSession() {
+    if (driver != null) {
+      PageSnapshotCache.getInstance().invalidate(driver);
+      driver.quit();
+    }
+  }
+
+  @Test
+  public void testScriptedNavigation() {
+    WebElement username = driver.findElement(By.id("username"));
+    TestUtils.sendKeys(username, "alice");
+    Assert.assertEquals(username.getText(), "alice");
+
+    LocatorMatch match =
+        WaitHelper.waitForAny(driver, 2, By.id("missing"), AppiumBy.accessibilityId("login"));
+    Assert.assertEquals(match.getIndex(), 1);
+    GestureHelper.tap(driver, match.getElement());
+    TestUtils.clickElement(driver, match.getElement());
+
+    Assert.assertEquals(server.getScreen(driver.getSessionId().toString()), "list");
+    Assert.assertThrows(StaleElementReferenceException.class, username::getText);
+    List<WebElement> items = driver.findElement(By.id("list")).findElements(By.id("item"));
+    Assert.assertEquals(items.size(), 2);
+    Assert.assertEquals(items.get(1).getText(), "Second");
+    Assert.assertEquals(items.get(1).getRect().getY(), 200);
+    Assert.assertEquals(PageSnapshotCache.getInstance().get(driver).find(By.id("item")).size(), 2);
+    Assert.assertThrows(NoSuchElementException.class, () -> driver.findElement(By.id("login")));
+    Assert.assertTrue(driver.getScreenshotAs(OutputType.BYTES).length > 0);
+    Assert.assertEquals(server.getActions(), 1);
+  }
+
+  @Test
+  public void testScreenChangingCommandsInvalidateSnapshot() {
+    PageSnapshotCache snapshots = PageSnapshotCache.getInstance();
+    snapshots.get(driver);
+    long fetches = snapshots.getFetches();
+
+    // Neither a lookup nor a query changes the screen
+    driver.findElement(By.id("username")).getText();
+    snapshots.get(driver);
+    Assert.assertEquals(snapshots.getFetches(), fetches);
+
+    // Commands sent by the test itself, not by a framework helper
+    driver.findElement(By.id("username")).sendKeys("alice");
+    snapshots.get(driver);
+    Assert.assertEquals(snapshots.getFetches(), fetches + 1);
+    driver.executeScript("mobile: hideKeyboard");
+    snapshots.get(driver);
+    Assert.assertEquals(snapshots.getFetches(), fetches + 2);
+    driver.findElement(AppiumBy.accessibilityId("login")).click();
+    Assert.assertEquals(snapshots.get(driver).find(By.id("item")).size(), 2);
+    Assert.assertEquals(snapshots.getFetches(), fetches + 3);
+  }
+
+  @Test
+  public void testCommandThroughput() throws Exception {
+    int sessions = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    List<AndroidDriver> drivers = new ArrayList<>();
+    drivers.add(driver);
+    ExecutorService executor = Executors.newFixedThreadPool(sessions);
+    try {
+      for (int i = 1; i < sessions; i++) {
+        drivers.add(new AndroidDriver(new URL(server.getUrl()), new UiAutomator2Options()));
+      }
+      // The first thousands of commands in a JVM run several times slower, until they are compiled
+      runCommands(executor, drivers, WARMUP_COMMANDS);
+      long commands = server.getCommands();
+      long start = System.nanoTime();
+      runCommands(executor, drivers, COMMANDS);
+      long millis = Math.max(1, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      long rate = COMMANDS * 1000L / millis;
+      logger.info(
+          "{} commands on {} sessions in {} ms ({} commands/s)", COMMANDS, sessions, millis, rate);
+      Assert.assertEquals(server.getCommands() - commands, COMMANDS);
+      Assert.assertTrue(
+          rate >= MIN_COMMANDS_PER_SECOND,
+          rate + " commands/s, expected at least " + MIN_COMMANDS_PER_SECOND);
+    } finally {
+      executor.shutdownNow();
+      for (AndroidDriver session : drivers.subList(1, drivers.size())) {
+        session.quit();
+      }
+    }
+  }
+
+  /** Sends the commands as findElement calls, split evenly over the sessions. */
+  private static void runCommands(
+      ExecutorService executor, List<AndroidDriver> drivers, int commands) throws Exception {
+    List<Future<?>> running = new ArrayList<>();
+    for (AndroidDriver session : drivers) {
+      running.add(
+          executor.submit(
+              () -> {
+                for (int i = 0; i < commands / drivers.size(); i++) {
+                  session.findElement(By.id("title"));
+                }
+              }));
+    }
+    for (Future<?> done : running) {
+      done.get(60, TimeUnit.SECONDS);
+    }
+  }
+}
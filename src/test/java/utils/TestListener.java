@@ -1,22 +1,24 @@
 package utils;
 
-import java.io.File;
-import java.text.SimpleDateFormat;
-import java.util.Date;
-import org.apache.commons.io.FileUtils;
-import org.openqa.selenium.OutputType;
-import org.openqa.selenium.TakesScreenshot;
+import java.time.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.testng.IExecutionListener;
+import org.testng.ISuite;
+import org.testng.ISuiteListener;
 import org.testng.ITestContext;
 import org.testng.ITestListener;
 import org.testng.ITestResult;
 
 /**
  * TestNG listener for logging test events and taking screenshots on failure. Handles test lifecycle
- * events including start, success, failure, and skip.
+ * events including start, success, failure, and skip. Test durations are recorded in the {@link
+ * TestTimingStore} so later runs can be sharded by expected duration, and every event is streamed
+ * to the {@link ResultsSink} as JSON. Command latencies cover the whole suite and are reported once
+ * it has finished. When the whole run is over, the sessions kept open by the pool and the
+ * provisioner are quit and the shared HTTP clients and the results file are closed.
  */
-public class TestListener implements ITestListener {
+public class TestListener implements ITestListener, ISuiteListener, IExecutionListener {
   private static final Logger logger = LoggerFactory.getLogger(TestListener.class);
 
   @Override
@@ -24,6 +26,7 @@ public class TestListener implements ITestListener {
     logger.info("========================================");
     logger.info("TEST STARTED: {}", result.getName());
     logger.info("========================================");
+    ResultsSink.getInstance().testStarted(result);
   }
 
   @Override
@@ -32,6 +35,8 @@ public class TestListener implements ITestListener {
     logger.info("TEST PASSED: {}", result.getName());
     logger.info("Duration: {} ms", result.getEndMillis() - result.getStartMillis());
     logger.info("========================================");
+    TestTimingStore.getInstance().record(result);
+    recordResult(result);
   }
 
   @Override
@@ -39,15 +44,20 @@ public class TestListener implements ITestListener {
     logger.error("========================================");
     logger.error("TEST FAILED: {}", result.getName());
     logger.error("Duration: {} ms", result.getEndMillis() - result.getStartMillis());
+    TestTimingStore.getInstance().record(result);
 
     Throwable throwable = result.getThrowable();
     if (throwable != null) {
       logger.error("Error Message: {}", throwable.getMessage());
+      logger.error("Failure Category: {}", FailureClassifier.classify(throwable));
       logger.error("Stack Trace: ", throwable);
     }
 
-    // Take screenshot on failure
-    takeScreenshot(result.getName());
+    // Take screenshot on failure, and keep the frames leading up to it if they are recorded
+    String testId = TestTimingStore.getTestId(result.getMethod());
+    takeScreenshot(testId);
+    flushFrames(testId);
+    recordResult(result);
 
     logger.error("========================================");
   }
@@ -55,12 +65,13 @@ public class TestListener implements ITestListener {
   @Override
   public void onTestSkipped(ITestResult result) {
     logger.warn("========================================");
-    logger.warn("TEST SKIPPED: {}", result.getName());
+    logger.warn(result.wasRetried() ? "TEST RETRIED: {}" : "TEST SKIPPED: {}", result.getName());
 
     Throwable throwable = result.getThrowable();
     if (throwable != null) {
       logger.warn("Skip Reason: {}", throwable.getMessage());
     }
+    recordResult(result);
 
     logger.warn("========================================");
   }
@@ -74,20 +85,80 @@ public class TestListener implements ITestListener {
 
   @Override
   public void onFinish(ITestContext context) {
+    ScreenshotService.getInstance().drain(Duration.ofSeconds(30));
+    ResultsSink.getInstance().suiteFinished(context);
+    ResultsSink.getInstance().drain(Duration.ofSeconds(10));
     logger.info("========================================");
     logger.info("TEST SUITE FINISHED: {}", context.getName());
     logger.info("Total Tests: {}", context.getAllTestMethods().length);
     logger.info("Passed: {}", context.getPassedTests().size());
     logger.info("Failed: {}", context.getFailedTests().size());
     logger.info("Skipped: {}", context.getSkippedTests().size());
+    GeometryCache geometry = GeometryCache.getInstance();
+    logger.info(
+        "Geometry round-trips: {} made, {} saved", geometry.getCalls(), geometry.getSavedCalls());
+    ElementCache elements = ElementCache.getInstance();
+    logger.info(
+        "Element cache: {} hits, {} misses, {} stale elements re-resolved",
+        elements.getHits(),
+        elements.getMisses(),
+        elements.getRecoveries());
+    RetryBudget retries = RetryBudget.getInstance();
+    logger.info(
+        "Infrastructure retries: {} of {} used, {} refused",
+        retries.getUsed(context.getSuite().getName()),
+        retries.getSuiteBudget(),
+        retries.getDenied());
     logger.info("========================================");
   }
 
+  @Override
+  public void onFinish(ISuite suite) {
+    CommandMetrics.getInstance().report();
+  }
+
+  @Override
+  public void onExecutionFinish() {
+    // The shutdown hooks run concurrently, so quit the sessions before closing their clients here
+    SessionProvisioner.getInstance().shutdown();
+    SessionPool.getInstance().shutdown();
+    SharedHttpClientFactory.getInstance().closeAll();
+    ResultsSink.getInstance().close();
+  }
+
   /**
-   * Takes a screenshot and saves it to the reports/screenshots directory. Uses DriverManager to
-   * access the current driver instance.
+   * Streams the outcome of a test to the {@link ResultsSink}.
    *
-   * @param testName The name of the test to use in the screenshot filename.
+   * @param result The result of the finished test.
+   */
+  private void recordResult(ITestResult result) {
+    try {
+      ResultsSink.getInstance()
+          .testFinished(result, DriverManager.getDevice(), DriverManager.getCurrentDriver());
+    } catch (Exception e) {
+      logger.error("Failed to record result: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Writes the frames the {@link FrameRecorder} kept for the current session, if recording is
+   * enabled.
+   *
+   * @param testName The test the frames are written under.
+   */
+  private void flushFrames(String testName) {
+    try {
+      FrameRecorder.getInstance().flush(DriverManager.getDriver(), testName);
+    } catch (Exception e) {
+      logger.error("Failed to write recorded frames: {}", e.getMessage());
+    }
+  }
+
+  /**
+   * Takes a screenshot and queues it for the screenshot store (reports/screenshots by default).
+   * Uses DriverManager to access the current driver instance.
+   *
+   * @param testName The test the screenshot is indexed under.
    */
   private void takeScreenshot(String testName) {
     try {
@@ -97,18 +168,11 @@ public class TestListener implements ITestListener {
         return;
       }
 
-      TakesScreenshot screenshot = (TakesScreenshot) DriverManager.getDriver();
-      File source = screenshot.getScreenshotAs(OutputType.FILE);
-
-      String timestamp = new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date());
-      String fileName = testName + "_" + timestamp + ".png";
-      String destination = "reports/screenshots/" + fileName;
-
-      File destFile = new File(destination);
-      destFile.getParentFile().mkdirs();
-
-      FileUtils.copyFile(source, destFile);
-      logger.info("Screenshot saved to: {}", destination);
+      // Only the capture runs on the test thread; the image is stored in the background
+      ScreenshotService.getInstance()
+          .capture(DriverManager.getDriver(), testName)
+          .thenAccept(file -> ResultsSink.getInstance().screenshot(testName, file));
+      logger.info("Screenshot queued for {}", testName);
     } catch (Exception e) {
       logger.error("Failed to take screenshot: {}", e.getMessage());
       logger.debug("Screenshot error details: ", e);
@@ -0,0 +1,18 @@
+package utils;
+
+import com.example.BaseTest;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.testng.annotations.Test;
+
+/**
+ * A test that cannot get a session, since no Appium server runs at the configured URL. Not part of
+ * a suite file: {@link InfraRetryAnalyzerTest} runs it in a nested TestNG suite.
+ */
+public class UnreachableServerFlow extends BaseTest {
+  static final AtomicInteger runs = new AtomicInteger();
+
+  @Test
+  public void run() {
+    runs.incrementAndGet();
+  }
+}